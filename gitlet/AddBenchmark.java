@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/** Measures how the hash-and-store phase of a batch add scales with
+ * threads: it writes FILES generated files of SIZE bytes, then for each
+ * pool size hashes every file and stores it as a blob in a scratch object
+ * store, as Gitlet.addBlobs does, and reports files per second.
+ * Usage: java gitlet.AddBenchmark [FILES [SIZE]]
+ *  @author Grace Chen
+ */
+class AddBenchmark {
+
+    /** run the benchmark.
+     * @param args the number and size of the files. */
+    public static void main(String[] args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : FILES;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : SIZE;
+        File work = Files.createTempDirectory("gitlet-add").toFile();
+        File[] samples = new File[files];
+        Random random = new Random(files);
+        byte[] content = new byte[size];
+        for (int i = 0; i < files; i += 1) {
+            random.nextBytes(content);
+            samples[i] = new File(work, "f" + i);
+            Files.write(samples[i].toPath(), content);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d files of %d bytes, %d cores%n",
+                files, size, cores);
+        System.out.printf("%8s %12s %8s%n", "threads", "files/s", "speedup");
+        double base = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            double rate = run(samples, threads);
+            if (threads == 1) {
+                base = rate;
+            }
+            System.out.printf("%8d %12.0f %7.2fx%n", threads, rate,
+                    rate / base);
+        }
+        deleteTree(work);
+    }
+
+    /** hash and store every sample on a pool of some size.
+     * @param samples the files.
+     * @param threads the pool size.
+     * @return files stored per second.
+     * @throws IOException if a scratch store cannot be made. */
+    private static double run(File[] samples, int threads)
+        throws IOException {
+        File root = Files.createTempDirectory("gitlet-bench").toFile();
+        ObjectStore store = new ObjectStore(root);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        pool.submit(() -> IntStream.range(0, samples.length).parallel()
+                .forEach(i -> store(store, samples[i]))).join();
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+        deleteTree(root);
+        return samples.length / (nanos / 1e9);
+    }
+
+    /** hash a file and store it as a raw blob.
+     * @param store the object store.
+     * @param f the file. */
+    private static void store(ObjectStore store, File f) {
+        String header = "blob " + f.length() + "\0";
+        String id = Utils.sha1(header, f);
+        try {
+            store.write(ObjectStore.Kind.BLOB, id,
+                    header.getBytes(StandardCharsets.UTF_8),
+                    FileChannel.open(f.toPath(), StandardOpenOption.READ));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** delete a directory and everything under it.
+     * @param file the directory or file to delete. */
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** default number of files. */
+    private static final int FILES = 5000;
+
+    /** default size of each file. */
+    private static final int SIZE = 16 << 10;
+}
@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The compact binary format of commits, the staging area and the stat
+ * cache, in place
+ * of Java serialization, which spends most of its bytes and time on
+ * class descriptors.
+ *
+ * A record is two magic bytes naming what it holds, a version byte, and
+ * then its fields, each a varint tag, a varint length and that many bytes
+ * of payload. Integers are varints, zigzagged when they may be negative;
+ * strings are UTF-8; object IDs are their Pack.ID_BYTES binary bytes.
+ * Lists of paths are sorted and front-coded: each path is the length of
+ * the prefix it shares with the one before, then the rest of it, so that
+ * the directories of a path are stored once. A reader skips the fields it
+ * does not know, so fields can be added and reordered without breaking
+ * older records, and a record is told from a Java-serialized object,
+ * which starts with 0xACED, by its magic.
+ *  @author Grace Chen
+ */
+class Binary {
+
+    /** the version of the format written. */
+    static final int VERSION = 1;
+
+    /** check whether some bytes are a record of some kind.
+     * @param bytes the bytes.
+     * @param magic the two magic bytes of the kind.
+     * @return whether they start with MAGIC. */
+    static boolean isRecord(byte[] bytes, String magic) {
+        return bytes.length >= 3 && bytes[0] == magic.charAt(0)
+            && bytes[1] == magic.charAt(1);
+    }
+
+    /** Builds a record, field by field. */
+    static class Writer {
+
+        /** a record of some kind.
+         * @param magic the two magic bytes of the kind. */
+        Writer(String magic) {
+            _out.write(magic.charAt(0));
+            _out.write(magic.charAt(1));
+            _out.write(VERSION);
+        }
+
+        /** add an integer field.
+         * @param tag the field.
+         * @param value its value, which may be negative.
+         * @return this writer. */
+        Writer number(int tag, long value) {
+            _field.reset();
+            varint(_field, (value << 1) ^ (value >> 63));
+            return end(tag);
+        }
+
+        /** add a string field, unless it is null.
+         * @param tag the field.
+         * @param value its value, or null.
+         * @return this writer. */
+        Writer string(int tag, String value) {
+            if (value != null) {
+                _field.reset();
+                _field.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+                end(tag);
+            }
+            return this;
+        }
+
+        /** add an object ID field, unless it is null.
+         * @param tag the field.
+         * @param id the ID, or null.
+         * @return this writer. */
+        Writer id(int tag, String id) {
+            if (id != null) {
+                _field.reset();
+                _field.writeBytes(Pack.fromHex(id));
+                end(tag);
+            }
+            return this;
+        }
+
+        /** add a field listing integers.
+         * @param tag the field.
+         * @param values the integers, which may be negative.
+         * @return this writer. */
+        Writer numbers(int tag, long[] values) {
+            _field.reset();
+            varint(_field, values.length);
+            for (long value : values) {
+                varint(_field, (value << 1) ^ (value >> 63));
+            }
+            return end(tag);
+        }
+
+        /** add a field listing object IDs: their number, then their
+         * bytes one after another.
+         * @param tag the field.
+         * @param ids the IDs.
+         * @return this writer. */
+        Writer ids(int tag, Collection<String> ids) {
+            _field.reset();
+            varint(_field, ids.size());
+            for (String id : ids) {
+                _field.writeBytes(Pack.fromHex(id));
+            }
+            return end(tag);
+        }
+
+        /** add a field listing paths.
+         * @param tag the field.
+         * @param paths the paths, sorted.
+         * @return this writer. */
+        Writer paths(int tag, Collection<String> paths) {
+            _field.reset();
+            writePaths(paths);
+            return end(tag);
+        }
+
+        /** add a field mapping paths to object IDs: the paths, as paths
+         * writes them, followed by their IDs in the same order.
+         * @param tag the field.
+         * @param files the map, sorted by path.
+         * @return this writer. */
+        Writer files(int tag, Map<String, String> files) {
+            _field.reset();
+            writePaths(files.keySet());
+            for (String id : files.values()) {
+                _field.writeBytes(Pack.fromHex(id));
+            }
+            return end(tag);
+        }
+
+        /** the record.
+         * @return its bytes. */
+        byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+
+        /** write sorted paths, front-coded, into the current field.
+         * @param paths the paths. */
+        private void writePaths(Collection<String> paths) {
+            varint(_field, paths.size());
+            byte[] last = new byte[0];
+            for (String path : paths) {
+                byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                int shared = Arrays.mismatch(last, bytes);
+                if (shared < 0) {
+                    shared = bytes.length;
+                }
+                varint(_field, shared);
+                varint(_field, bytes.length - shared);
+                _field.write(bytes, shared, bytes.length - shared);
+                last = bytes;
+            }
+        }
+
+        /** append the current field to the record.
+         * @param tag the field.
+         * @return this writer. */
+        private Writer end(int tag) {
+            varint(_out, tag);
+            varint(_out, _field.size());
+            _out.write(_field.toByteArray(), 0, _field.size());
+            return this;
+        }
+
+        /** write a varint, seven bits a byte, lowest first.
+         * @param out where to write it.
+         * @param value the value, as unsigned. */
+        private static void varint(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        /** the record so far. */
+        private final ByteArrayOutputStream _out =
+            new ByteArrayOutputStream();
+
+        /** the payload of the field being written. */
+        private final ByteArrayOutputStream _field =
+            new ByteArrayOutputStream();
+    }
+
+    /** Reads the fields of a record in turn. */
+    static class Reader {
+
+        /** a reader of a record.
+         * @param bytes the record.
+         * @param magic the two magic bytes of the kind it should be. */
+        Reader(byte[] bytes, String magic) {
+            if (!isRecord(bytes, magic)) {
+                throw new IllegalArgumentException("not a " + magic
+                        + " record");
+            }
+            if (bytes[2] > VERSION) {
+                throw Utils.error("Record written by a newer Gitlet.");
+            }
+            _bytes = bytes;
+            _pos = 3;
+            _end = 3;
+        }
+
+        /** move to the next field, skipping what is left of this one.
+         * @return whether there is one. */
+        boolean next() {
+            _pos = _end;
+            if (_pos >= _bytes.length) {
+                return false;
+            }
+            _tag = (int) varint();
+            int length = (int) varint();
+            _end = _pos + length;
+            if (length < 0 || _end > _bytes.length) {
+                throw new IllegalArgumentException("truncated record");
+            }
+            return true;
+        }
+
+        /** accessor for the tag of the current field.
+         * @return the tag. */
+        int tag() {
+            return _tag;
+        }
+
+        /** read the current field as an integer.
+         * @return its value. */
+        long number() {
+            long zigzag = varint();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        /** read the current field as a string.
+         * @return its value. */
+        String string() {
+            return new String(_bytes, _pos, _end - _pos,
+                    StandardCharsets.UTF_8);
+        }
+
+        /** read the current field as an object ID.
+         * @return the ID in hexadecimal. */
+        String id() {
+            return Pack.toHex(Arrays.copyOfRange(_bytes, _pos,
+                    _pos + Pack.ID_BYTES));
+        }
+
+        /** read the current field as a list of integers.
+         * @return the integers. */
+        long[] numbers() {
+            long[] result = new long[(int) varint()];
+            for (int i = 0; i < result.length; i += 1) {
+                long zigzag = varint();
+                result[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            return result;
+        }
+
+        /** read the current field as a list of object IDs.
+         * @return the IDs in hexadecimal. */
+        List<String> ids() {
+            int n = (int) varint();
+            List<String> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i += 1) {
+                result.add(Pack.toHex(Arrays.copyOfRange(_bytes, _pos,
+                        _pos + Pack.ID_BYTES)));
+                _pos += Pack.ID_BYTES;
+            }
+            return result;
+        }
+
+        /** read the current field as a list of paths.
+         * @return the paths. */
+        List<String> paths() {
+            int n = (int) varint();
+            List<String> result = new ArrayList<>(n);
+            byte[] last = new byte[0];
+            for (int i = 0; i < n; i += 1) {
+                int shared = (int) varint();
+                int rest = (int) varint();
+                byte[] bytes = Arrays.copyOf(last, shared + rest);
+                System.arraycopy(_bytes, _pos, bytes, shared, rest);
+                _pos += rest;
+                result.add(new String(bytes, StandardCharsets.UTF_8));
+                last = bytes;
+            }
+            return result;
+        }
+
+        /** read the current field as a map of paths to object IDs.
+         * @return the map, in the order of the paths. */
+        LinkedHashMap<String, String> files() {
+            List<String> paths = paths();
+            LinkedHashMap<String, String> result = new LinkedHashMap<>();
+            for (String path : paths) {
+                result.put(path, Pack.toHex(Arrays.copyOfRange(_bytes,
+                        _pos, _pos + Pack.ID_BYTES)));
+                _pos += Pack.ID_BYTES;
+            }
+            return result;
+        }
+
+        /** read a varint at the current position.
+         * @return its value, as unsigned. */
+        private long varint() {
+            long result = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                byte b = _bytes[_pos++];
+                result |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("bad varint");
+        }
+
+        /** the record. */
+        private final byte[] _bytes;
+
+        /** the position of the next byte to read. */
+        private int _pos;
+
+        /** the end of the current field. */
+        private int _end;
+
+        /** the tag of the current field. */
+        private int _tag;
+    }
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of the binary record format, and of the commits and staging
+ * areas written in it.
+ *  @author Grace Chen
+ */
+public class BinaryTest {
+
+    /** a made-up object ID.
+     * @param name what the object stands for.
+     * @return its ID. */
+    private static String id(String name) {
+        return Utils.sha1("blob ", name);
+    }
+
+    @Test
+    public void fieldsRoundTrip() {
+        Map<String, String> files = new TreeMap<>();
+        files.put("a/b/c.txt", id("c"));
+        files.put("a/b/d.txt", id("d"));
+        files.put("\u00e9t\u00e9", id("e"));
+        byte[] bytes = new Binary.Writer("XX")
+            .number(1, -5)
+            .number(2, Long.MAX_VALUE)
+            .string(3, "h\u00e9llo")
+            .string(3, null)
+            .id(4, id("x"))
+            .id(4, null)
+            .paths(5, List.of("", "a", "a/b", "a/c", "b"))
+            .files(6, files)
+            .ids(7, List.of(id("p"), id("q")))
+            .numbers(8, new long[] {0, -1, 1L << 40})
+            .toByteArray();
+        assertTrue(Binary.isRecord(bytes, "XX"));
+        assertFalse(Binary.isRecord(bytes, "GC"));
+        Binary.Reader in = new Binary.Reader(bytes, "XX");
+        assertTrue(in.next());
+        assertEquals(1, in.tag());
+        assertEquals(-5, in.number());
+        assertTrue(in.next());
+        assertEquals(Long.MAX_VALUE, in.number());
+        assertTrue(in.next());
+        assertEquals("h\u00e9llo", in.string());
+        assertTrue(in.next());
+        assertEquals(4, in.tag());
+        assertEquals(id("x"), in.id());
+        assertTrue(in.next());
+        assertEquals(List.of("", "a", "a/b", "a/c", "b"), in.paths());
+        assertTrue(in.next());
+        assertEquals(files, in.files());
+        assertTrue(in.next());
+        assertEquals(List.of(id("p"), id("q")), in.ids());
+        assertTrue(in.next());
+        assertArrayEquals(new long[] {0, -1, 1L << 40}, in.numbers());
+        assertFalse(in.next());
+    }
+
+    @Test
+    public void unreadFieldsAreSkipped() {
+        byte[] bytes = new Binary.Writer("XX")
+            .paths(1, List.of("a", "b"))
+            .string(2, "skipped")
+            .number(3, 7)
+            .toByteArray();
+        Binary.Reader in = new Binary.Reader(bytes, "XX");
+        assertTrue(in.next());
+        assertTrue(in.next());
+        assertTrue(in.next());
+        assertEquals(3, in.tag());
+        assertEquals(7, in.number());
+    }
+
+    @Test
+    public void otherRecordsAreRefused() {
+        byte[] bytes = new Binary.Writer("XX").number(1, 1).toByteArray();
+        try {
+            new Binary.Reader(bytes, "GC");
+            fail("read a record of the wrong kind");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains("GC"));
+        }
+        bytes[2] = Binary.VERSION + 1;
+        try {
+            new Binary.Reader(bytes, "XX");
+            fail("read a record of a newer version");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().contains("newer"));
+        }
+        byte[] truncated = new Binary.Writer("XX").string(1, "abc")
+            .toByteArray();
+        Binary.Reader in = new Binary.Reader(
+                Arrays.copyOf(truncated, truncated.length - 1),
+                "XX");
+        try {
+            in.next();
+            fail("read a truncated field");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("truncated record", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void serializedObjectsAreNotRecords() {
+        assertFalse(Binary.isRecord(Utils.serialize(new StagingArea()),
+                "GS"));
+        assertFalse(Binary.isRecord(new byte[] {'G', 'S'}, "GS"));
+    }
+
+    @Test
+    public void stagingAreaRoundTrips() {
+        StagingArea stage = new StagingArea();
+        stage.stageForAddition("src/a.java", id("a"));
+        stage.stageForAddition("b.txt", id("b"));
+        stage.stageForRemoval("gone/c");
+        StagingArea read = StagingArea.decode(stage.encode());
+        assertEquals(stage.getToAdd(), read.getToAdd());
+        assertEquals(Set.of("gone/c"), read.getToRm());
+        assertArrayEquals(stage.encode(), read.encode());
+    }
+
+    @Test
+    public void serializedStagingAreaIsRead() {
+        StagingArea stage = new StagingArea();
+        stage.stageForAddition("a", id("a"));
+        stage.stageForRemoval("b");
+        StagingArea read = StagingArea.decode(Utils.serialize(stage));
+        assertEquals(stage.getToAdd(), read.getToAdd());
+        assertEquals(stage.getToRm(), read.getToRm());
+    }
+
+    @Test
+    public void commitRecordsAreReadAndWrittenTheSame() {
+        byte[] bytes = new Binary.Writer("GC")
+            .string(1, "a message")
+            .number(2, 1000000000000L)
+            .number(3, -7 * 60 - 30)
+            .id(6, id("parent"))
+            .id(7, id("merged"))
+            .toByteArray();
+        Commit commit = Commit.decode(bytes);
+        assertEquals("a message", commit.getLogMessage());
+        assertEquals(1000000000000L, commit.getTime());
+        assertEquals("Sat Sep 8 18:16:40 2001 -0730", commit.getTimeStamp());
+        assertEquals(id("parent"), commit.getParent());
+        assertEquals(id("merged"), commit.getParent2());
+        assertNull(commit.getTreeID());
+        assertArrayEquals(bytes, commit.encode());
+    }
+
+    @Test
+    public void oddTimestampsAreKeptWhole() {
+        byte[] bytes = new Binary.Writer("GC")
+            .string(1, "odd")
+            .number(2, 0)
+            .number(3, 0)
+            .string(4, "Thu Jan 01 00:00:00 1970 +0000")
+            .toByteArray();
+        Commit commit = Commit.decode(bytes);
+        assertEquals("Thu Jan 01 00:00:00 1970 +0000",
+                commit.getTimeStamp());
+        assertArrayEquals(bytes, commit.encode());
+    }
+
+    @Test
+    public void initialCommitRoundTrips() {
+        Commit init = new Commit();
+        Commit read = Commit.decode(init.encode());
+        assertEquals("initial commit", read.getLogMessage());
+        assertEquals(init.getTimeStamp(), read.getTimeStamp());
+        assertEquals(0, read.getTime());
+        assertNull(read.getParent());
+        assertNull(read.getBlobs());
+    }
+
+    @Test
+    public void commitsFromBeforeTreesKeepTheirFiles() {
+        Map<String, String> files = new TreeMap<>();
+        files.put("a", id("a"));
+        files.put("d/b", id("b"));
+        byte[] bytes = new Binary.Writer("GC")
+            .string(1, "old")
+            .number(2, 0)
+            .number(3, 0)
+            .files(8, files)
+            .toByteArray();
+        Commit commit = Commit.decode(bytes);
+        assertEquals(new HashMap<>(files), commit.getLegacyBlobs());
+        assertEquals(id("b"), commit.findBlob("d/b"));
+        assertArrayEquals(bytes, commit.encode());
+    }
+
+    @Test
+    public void serializedCommitIsRead() {
+        Commit init = new Commit();
+        Commit read = Commit.decode(Utils.serialize(init));
+        assertEquals(init.getLogMessage(), read.getLogMessage());
+        assertEquals(init.getTimeStamp(), read.getTimeStamp());
+    }
+
+    @Test
+    public void serialVersionsArePinned() {
+        assertEquals(-8007316864483924883L,
+                ObjectStreamClass.lookup(Commit.class).getSerialVersionUID());
+        assertEquals(-2395914700624306663L,
+                ObjectStreamClass.lookup(StagingArea.class)
+                .getSerialVersionUID());
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The streaming format in which objects travel between a repository and
+ * a remote served by a BundleServer: one sequential stream of objects,
+ * rather than a file operation for each.
+ *
+ * A bundle is a run of objects, each the code of its kind (as in pack
+ * indices), its binary ID and its bytes as stored, followed by a zero
+ * byte. The bytes of an object go in chunks, each an int length and that
+ * many bytes, ended by an empty chunk, so that an object of any size is
+ * streamed from disk to disk through a buffer of CHUNK_SIZE, and neither
+ * side needs to know its size beforehand. The receiver writes each object
+ * as it arrives; a sender that gets ahead is held back by the connection
+ * itself, since the streams block when the other side stops reading.
+ *
+ * Objects come in the order Transfer sends them, each after what it
+ * refers to, so a bundle cut short leaves a store whose commits still
+ * have all they reach.
+ *  @author Grace Chen
+ */
+class Bundle {
+
+    /** write one object of a bundle.
+     * @param store the store that has it.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param out the stream to write to.
+     * @throws IOException if writing fails. */
+    static void writeObject(ObjectStore store, ObjectStore.Kind kind,
+                            String id, DataOutputStream out)
+        throws IOException {
+        ReadableByteChannel in = store.openWhole(kind, id);
+        if (in == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        out.writeByte(kind.code());
+        out.write(Pack.fromHex(id));
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE);
+        try (ReadableByteChannel stored = in) {
+            while (stored.read(buf) >= 0 || buf.position() > 0) {
+                if (buf.position() == 0) {
+                    continue;
+                }
+                out.writeInt(buf.position());
+                out.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+        }
+        out.writeInt(0);
+    }
+
+    /** end a bundle.
+     * @param out the stream to write to.
+     * @throws IOException if writing fails. */
+    static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeByte(0);
+    }
+
+    /** read a bundle into a store, writing each object as it arrives.
+     * @param in the stream to read from.
+     * @param store the store to write to.
+     * @return the IDs of the commits in the bundle, in its order.
+     * @throws IOException if reading fails or the bundle is cut short. */
+    static List<String> read(DataInputStream in, ObjectStore store)
+        throws IOException {
+        List<String> commits = new ArrayList<>();
+        long start = Metrics.start();
+        long count = 0;
+        for (byte code = in.readByte(); code != 0; code = in.readByte()) {
+            ObjectStore.Kind kind = kindOf(code);
+            byte[] raw = new byte[Pack.ID_BYTES];
+            in.readFully(raw);
+            String id = Pack.toHex(raw);
+            try {
+                store.writeStored(kind, id, new Chunks(in));
+            } catch (IllegalArgumentException excp) {
+                throw new IOException(excp.getMessage());
+            }
+            if (kind == ObjectStore.Kind.COMMIT) {
+                commits.add(id);
+            }
+            count += 1;
+        }
+        Metrics.io("bundle.read", start, count);
+        return commits;
+    }
+
+    /** the kind of object with a code.
+     * @param code the code.
+     * @return the kind.
+     * @throws IOException if no kind has that code. */
+    private static ObjectStore.Kind kindOf(byte code) throws IOException {
+        for (ObjectStore.Kind kind : ObjectStore.Kind.values()) {
+            if (kind.code() == code) {
+                return kind;
+            }
+        }
+        throw new IOException("bad object kind in bundle");
+    }
+
+    /** The bytes of one object of a bundle, read chunk by chunk. */
+    private static class Chunks implements ReadableByteChannel {
+
+        /** the object whose chunks start next in IN.
+         * @param in the bundle stream. */
+        Chunks(DataInputStream in) {
+            _in = in;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            while (_left == 0) {
+                if (_done) {
+                    return -1;
+                }
+                _left = _in.readInt();
+                if (_left < 0) {
+                    throw new IOException("bad chunk in bundle");
+                }
+                _done = _left == 0;
+            }
+            int n = Math.min(dst.remaining(), _left);
+            if (n == 0) {
+                return 0;
+            }
+            int got;
+            if (dst.hasArray()) {
+                got = _in.read(dst.array(), dst.arrayOffset()
+                        + dst.position(), n);
+                if (got > 0) {
+                    dst.position(dst.position() + got);
+                }
+            } else {
+                byte[] bytes = new byte[n];
+                got = _in.read(bytes);
+                if (got > 0) {
+                    dst.put(bytes, 0, got);
+                }
+            }
+            if (got < 0) {
+                throw new EOFException("bundle cut short");
+            }
+            _left -= got;
+            return got;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !_done;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** the bundle stream. */
+        private final DataInputStream _in;
+
+        /** bytes left in the current chunk. */
+        private int _left;
+
+        /** whether the empty chunk that ends the object was read. */
+        private boolean _done;
+    }
+
+    /** the largest chunk written. */
+    static final int CHUNK_SIZE = 1 << 16;
+}
@@ -0,0 +1,316 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** A connection to a repository served by a BundleServer, named by a
+ * remote of the form gitlet://HOST:PORT. The server answers requests in
+ * the order they come, so requests that do not depend on each other's
+ * replies are pipelined: all are sent before any reply is read, and the
+ * server streams the first reply while later requests are still on
+ * their way. A request that needs an earlier reply, as a push needs the
+ * refs, waits for it. Each fetch is one request, carrying the wanted
+ * branch and all the haves, so that it takes one round trip after the
+ * refs, if any; blobs are asked for in batches, pipelined. A request is
+ * one byte naming it, then its arguments:
+ *
+ *   REFS: no arguments. The reply is the ID of the server's head commit,
+ *   the number of its branches, and the name and head ID of each.
+ *
+ *   FETCH: a branch name, a count and that many IDs of commits the
+ *   client has, the same for the commits it has as shallow, the depth
+ *   to fetch, or 0, and whether to send blobs. The reply is the head ID
+ *   of the branch, or an empty string if there is no such branch; then
+ *   a count and that many IDs of commits sent without their parents,
+ *   and a Bundle of what the client lacks of the branch.
+ *
+ *   BLOBS: a count and that many blob IDs. The reply is a Bundle of
+ *   those the server has.
+ *
+ *   PUSH: a branch name, the server's head ID as the client last saw it,
+ *   the new head ID, and a Bundle. The reply is whether the branch was
+ *   moved, and a message if it was not.
+ *
+ * Strings are written as by DataOutputStream.writeUTF.
+ *  @author Grace Chen
+ */
+class BundleRemote implements Closeable {
+
+    /** check whether a remote path names a served repository.
+     * @param path the path given to add-remote.
+     * @return whether it starts with SCHEME. */
+    static boolean isURL(String path) {
+        return path.startsWith(SCHEME);
+    }
+
+    /** connect to a served repository.
+     * @param url gitlet://HOST:PORT.
+     * @throws IOException if it cannot be reached. */
+    BundleRemote(String url) throws IOException {
+        String address = url.substring(SCHEME.length());
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IOException("no port in " + url);
+        }
+        int slash = address.indexOf('/', colon);
+        String port = slash < 0 ? address.substring(colon + 1)
+            : address.substring(colon + 1, slash);
+        _socket = new Socket();
+        _socket.connect(new InetSocketAddress(address.substring(0, colon),
+                Integer.parseInt(port)), TIMEOUT);
+        _in = new DataInputStream(new BufferedInputStream(
+                _socket.getInputStream(), Bundle.CHUNK_SIZE));
+        _out = new DataOutputStream(new BufferedOutputStream(
+                _socket.getOutputStream(), Bundle.CHUNK_SIZE));
+    }
+
+    /** ask for the head and branches of the served repository.
+     * @param branches map to put each branch and its head ID into.
+     * @return the ID of its head commit.
+     * @throws IOException if the connection fails. */
+    String refs(TreeMap<String, String> branches) throws IOException {
+        _out.writeByte(REFS);
+        _out.flush();
+        String head = _in.readUTF();
+        int n = _in.readInt();
+        for (int i = 0; i < n; i += 1) {
+            String name = _in.readUTF();
+            branches.put(name, _in.readUTF());
+        }
+        return head;
+    }
+
+    /** fetch a branch of the served repository into a store. The
+     * commits received without their parents are left in getShallow.
+     * @param branch the branch name.
+     * @param haves commits the store has.
+     * @param shallow commits the store has without their parents.
+     * @param depth the depth to fetch, as for Transfer.want, or 0.
+     * @param blobs whether to fetch blobs, or leave them to be fetched by
+     * blobs as they are needed.
+     * @param store the store.
+     * @param commits list to add the IDs of the commits received to, each
+     * after its parents.
+     * @return the head ID of the branch, or null if there is no such
+     * branch.
+     * @throws IOException if the connection fails. */
+    String fetch(String branch, Collection<String> haves,
+                 Collection<String> shallow, int depth, boolean blobs,
+                 ObjectStore store, List<String> commits)
+        throws IOException {
+        _out.writeByte(FETCH);
+        _out.writeUTF(branch);
+        writeIDs(haves);
+        writeIDs(shallow);
+        _out.writeInt(depth);
+        _out.writeBoolean(blobs);
+        _out.flush();
+        String head = _in.readUTF();
+        if (head.isEmpty()) {
+            return null;
+        }
+        _shallow = readIDs(_in);
+        commits.addAll(Bundle.read(_in, store));
+        return head;
+    }
+
+    /** accessor for the boundary of the last fetch.
+     * @return the commits it received without their parents. */
+    List<String> getShallow() {
+        return _shallow;
+    }
+
+    /** fetch blobs of the served repository into a store, asking for
+     * them in pipelined batches of BLOB_BATCH.
+     * @param blobIDs the blobs.
+     * @param store the store.
+     * @throws IOException if the connection fails. */
+    void blobs(Collection<String> blobIDs, ObjectStore store)
+        throws IOException {
+        List<String> ids = new ArrayList<>(blobIDs);
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += BLOB_BATCH) {
+            List<String> batch =
+                ids.subList(i, Math.min(ids.size(), i + BLOB_BATCH));
+            requests.add(new Request() {
+                @Override
+                public void write() throws IOException {
+                    _out.writeByte(BLOBS);
+                    writeIDs(batch);
+                }
+
+                @Override
+                public void read() throws IOException {
+                    Bundle.read(_in, store);
+                }
+            });
+        }
+        pipeline(requests);
+    }
+
+    /** send requests that do not depend on each other's replies, all
+     * before reading any reply, then read the replies in order. The
+     * requests are written by a thread of their own, since the server
+     * blocks on a reply that is not read, and would stop reading the
+     * requests that follow it.
+     * @param requests the requests.
+     * @throws IOException if the connection fails. */
+    private void pipeline(List<Request> requests) throws IOException {
+        if (requests.size() <= 1) {
+            for (Request r : requests) {
+                r.write();
+                _out.flush();
+                r.read();
+            }
+            return;
+        }
+        AtomicReference<IOException> failed = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (Request r : requests) {
+                    r.write();
+                }
+                _out.flush();
+            } catch (IOException excp) {
+                failed.set(excp);
+            }
+        }, "gitlet-requests");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            for (Request r : requests) {
+                r.read();
+            }
+            writer.join();
+        } catch (IOException excp) {
+            _socket.close();
+            throw excp;
+        } catch (InterruptedException excp) {
+            _socket.close();
+            throw new InterruptedIOException(excp.getMessage());
+        }
+        if (failed.get() != null) {
+            throw failed.get();
+        }
+    }
+
+    /** push the objects of a transfer to the served repository, and move
+     * a branch and its head to a new commit.
+     * @param branch the branch name.
+     * @param oldHead the server's head ID, as refs gave it.
+     * @param newHead the new head ID.
+     * @param transfer the objects the server lacks, found by want.
+     * @return null if the branch was moved, or the server's message why
+     * not.
+     * @throws IOException if the connection fails. */
+    String push(String branch, String oldHead, String newHead,
+                Transfer transfer) throws IOException {
+        _out.writeByte(PUSH);
+        _out.writeUTF(branch);
+        _out.writeUTF(oldHead);
+        _out.writeUTF(newHead);
+        transfer.send(_out);
+        _out.flush();
+        boolean moved = _in.readBoolean();
+        String message = _in.readUTF();
+        return moved ? null : message;
+    }
+
+    /** write a count and that many commit IDs to the server.
+     * @param ids the IDs.
+     * @throws IOException if writing fails. */
+    private void writeIDs(Collection<String> ids) throws IOException {
+        writeIDs(_out, ids);
+    }
+
+    /** write a count and that many commit IDs.
+     * @param out the stream to write to.
+     * @param ids the IDs.
+     * @throws IOException if writing fails. */
+    static void writeIDs(DataOutputStream out, Collection<String> ids)
+        throws IOException {
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            out.writeUTF(id);
+        }
+    }
+
+    /** read a count and that many commit IDs.
+     * @param in the stream to read from.
+     * @return the IDs.
+     * @throws IOException if reading fails. */
+    static List<String> readIDs(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add(in.readUTF());
+        }
+        return result;
+    }
+
+    /** A request that may be pipelined with others. */
+    private interface Request {
+
+        /** write the request, without flushing it.
+         * @throws IOException if writing fails. */
+        void write() throws IOException;
+
+        /** read the reply to the request.
+         * @throws IOException if reading fails. */
+        void read() throws IOException;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            _socket.shutdownOutput();
+        } finally {
+            _socket.close();
+        }
+    }
+
+    /** the prefix of a remote path naming a served repository. */
+    static final String SCHEME = "gitlet://";
+
+    /** request: list the head and branches. */
+    static final byte REFS = 'R';
+
+    /** request: fetch a branch. */
+    static final byte FETCH = 'F';
+
+    /** request: push to a branch. */
+    static final byte PUSH = 'P';
+
+    /** request: fetch blobs by ID. */
+    static final byte BLOBS = 'B';
+
+    /** most blobs asked for by one request. */
+    static final int BLOB_BATCH = 1024;
+
+    /** milliseconds to wait for a connection. */
+    private static final int TIMEOUT = 10000;
+
+    /** the connection. */
+    private final Socket _socket;
+
+    /** replies from the server. */
+    private final DataInputStream _in;
+
+    /** requests to the server. */
+    private final DataOutputStream _out;
+
+    /** the boundary of the last fetch. */
+    private List<String> _shallow = new ArrayList<>();
+}
@@ -0,0 +1,238 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Serves the repository in its working directory to push and fetch
+ * over TCP, in the protocol of BundleRemote, so that syncing with it is a
+ * few sequential streams rather than a file operation for each object.
+ * Other repositories reach it through a remote named gitlet://HOST:PORT.
+ *
+ * It listens on the loopback interface only, since it checks no
+ * credentials. Each connection is served on a thread of its own, so that
+ * a slow or silent client keeps no other waiting. Requests on a
+ * connection are answered in order, and a reply is flushed once no
+ * further request is waiting, so a client may send several requests
+ * before it reads their replies.
+ *
+ * The state of Gitlet is not safe to share between threads, so the part
+ * of a request that reads or changes the repository runs as a command of
+ * its own, holding LOCK: the repository is read afresh, and its metadata
+ * changes are applied before the lock is let go. Objects go to and from
+ * the client without the lock, since a stored object never changes and
+ * is written under a temporary name; a push moves its branch only once
+ * all of its objects are stored.
+ * Usage: java gitlet.BundleServer [PORT]
+ *  @author Grace Chen
+ */
+public class BundleServer {
+
+    /** serve the repository until killed.
+     * @param args the port to listen on; by default any free one. */
+    public static void main(String... args) throws IOException {
+        if (!new File(".gitlet/initialized.txt").exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (ServerSocket server = new ServerSocket(port, BACKLOG,
+                 InetAddress.getLoopbackAddress())) {
+            System.out.println("Serving " + BundleRemote.SCHEME
+                    + server.getInetAddress().getHostAddress() + ":"
+                    + server.getLocalPort());
+            System.out.flush();
+            ExecutorService connections = Executors.newCachedThreadPool();
+            while (true) {
+                Socket client = server.accept();
+                connections.execute(() -> serve(client));
+            }
+        }
+    }
+
+    /** answer the requests of one client until it closes its side, then
+     * close the connection.
+     * @param client the connection. */
+    private static void serve(Socket client) {
+        try (Socket connection = client) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(connection.getInputStream(),
+                            Bundle.CHUNK_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(connection.getOutputStream(),
+                            Bundle.CHUNK_SIZE));
+            while (true) {
+                if (in.available() == 0) {
+                    out.flush();
+                }
+                byte request;
+                try {
+                    request = in.readByte();
+                } catch (EOFException excp) {
+                    break;
+                }
+                if (request == BundleRemote.REFS) {
+                    refs(out);
+                } else if (request == BundleRemote.FETCH) {
+                    fetch(in, out);
+                } else if (request == BundleRemote.PUSH) {
+                    push(in, out);
+                } else if (request == BundleRemote.BLOBS) {
+                    blobs(in, out);
+                } else {
+                    throw new IOException("unknown request " + request);
+                }
+            }
+            out.flush();
+        } catch (IOException | GitletException
+                 | IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+        }
+    }
+
+    /** start the part of a request that uses the repository, as a
+     * command. The caller holds LOCK until it calls finish.
+     * @param request the name of the request, for the trace. */
+    private static void begin(String request) {
+        Metrics.begin("serve", request);
+        Gitlet.refresh();
+        Gitlet.setupPersistence();
+    }
+
+    /** finish what begin started, applying its metadata changes. */
+    private static void finish() {
+        try {
+            Gitlet.commitMetadata();
+            Gitlet.markFresh();
+        } finally {
+            Metrics.end();
+        }
+    }
+
+    /** answer a REFS request.
+     * @param out the stream to the client.
+     * @throws IOException if writing fails. */
+    private static void refs(DataOutputStream out) throws IOException {
+        TreeMap<String, String> branches;
+        String head;
+        synchronized (LOCK) {
+            begin("refs");
+            try {
+                branches = Gitlet.branchHeads();
+                head = Gitlet.getHeadID();
+            } finally {
+                finish();
+            }
+        }
+        out.writeUTF(head);
+        out.writeInt(branches.size());
+        for (Map.Entry<String, String> e : branches.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+    }
+
+    /** answer a FETCH request.
+     * @param in the stream from the client.
+     * @param out the stream to the client.
+     * @throws IOException if the connection fails. */
+    private static void fetch(DataInputStream in, DataOutputStream out)
+        throws IOException {
+        String branch = in.readUTF();
+        List<String> haves = BundleRemote.readIDs(in);
+        List<String> shallow = BundleRemote.readIDs(in);
+        int depth = in.readInt();
+        boolean blobs = in.readBoolean();
+        String head;
+        Transfer transfer = null;
+        synchronized (LOCK) {
+            begin("fetch");
+            try {
+                head = Gitlet.branchHeads().get(branch);
+                if (head != null) {
+                    transfer = new Transfer(Gitlet.getObjects(), haves);
+                    transfer.setShallow(Gitlet.shallowCommits(), shallow);
+                    transfer.setBlobs(blobs);
+                    transfer.want(head, depth);
+                }
+            } finally {
+                finish();
+            }
+        }
+        if (head == null) {
+            out.writeUTF("");
+            return;
+        }
+        out.writeUTF(head);
+        BundleRemote.writeIDs(out, transfer.getShallow());
+        transfer.send(out);
+    }
+
+    /** answer a PUSH request, storing its objects as they arrive.
+     * @param in the stream from the client.
+     * @param out the stream to the client.
+     * @throws IOException if the connection fails. */
+    private static void push(DataInputStream in, DataOutputStream out)
+        throws IOException {
+        String branch = in.readUTF();
+        String oldHead = in.readUTF();
+        String newHead = in.readUTF();
+        ObjectStore objects;
+        synchronized (LOCK) {
+            objects = Gitlet.getObjects();
+        }
+        List<String> commits = Bundle.read(in, objects);
+        String message;
+        synchronized (LOCK) {
+            begin("push");
+            try {
+                message = Gitlet.receivePush(branch, oldHead, newHead,
+                        commits);
+            } finally {
+                finish();
+            }
+        }
+        out.writeBoolean(message == null);
+        out.writeUTF(message == null ? "" : message);
+    }
+
+    /** answer a BLOBS request.
+     * @param in the stream from the client.
+     * @param out the stream to the client.
+     * @throws IOException if the connection fails. */
+    private static void blobs(DataInputStream in, DataOutputStream out)
+        throws IOException {
+        List<String> ids = BundleRemote.readIDs(in);
+        Transfer transfer;
+        synchronized (LOCK) {
+            begin("blobs");
+            try {
+                transfer = new Transfer(Gitlet.getObjects(),
+                        Collections.emptyList());
+                transfer.wantBlobs(ids);
+            } finally {
+                finish();
+            }
+        }
+        transfer.send(out);
+    }
+
+    /** number of connections that may wait to be accepted. */
+    private static final int BACKLOG = 16;
+
+    /** held while a request uses the state of Gitlet. */
+    private static final Object LOCK = new Object();
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of bundles and of the requests that carry them.
+ *  @author Grace Chen
+ */
+public class BundleTest {
+
+    /** the stores of each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** a new, empty store.
+     * @param name its directory.
+     * @return the store. */
+    private ObjectStore store(String name) {
+        return new ObjectStore(new File(tmp.getRoot(), name));
+    }
+
+    /** the stream of a bundle.
+     * @param bytes the bundle.
+     * @return a stream over it. */
+    private static DataInputStream in(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /** A server of BLOBS requests from a store, answering them in order
+     * as BundleServer does, on a thread of its own. */
+    private static class BlobServer extends Thread
+        implements AutoCloseable {
+
+        /** a server of the blobs of a store.
+         * @param store the store. */
+        BlobServer(ObjectStore store) throws IOException {
+            _store = store;
+            _server = new ServerSocket(0, 1,
+                    InetAddress.getLoopbackAddress());
+            setDaemon(true);
+            start();
+        }
+
+        /** accessor for the remote naming this server.
+         * @return its gitlet:// URL. */
+        String url() {
+            return BundleRemote.SCHEME + "127.0.0.1:"
+                + _server.getLocalPort();
+        }
+
+        @Override
+        public void run() {
+            try (Socket client = _server.accept()) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(client.getInputStream()));
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(client.getOutputStream()));
+                while (true) {
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                    byte request;
+                    try {
+                        request = in.readByte();
+                    } catch (EOFException excp) {
+                        break;
+                    }
+                    assertEquals(BundleRemote.BLOBS, request);
+                    Transfer transfer = new Transfer(_store,
+                            Collections.emptyList());
+                    transfer.wantBlobs(BundleRemote.readIDs(in));
+                    transfer.send(out);
+                    _requests += 1;
+                }
+                out.flush();
+            } catch (IOException excp) {
+                _requests = -1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            _server.close();
+        }
+
+        /** the store served. */
+        private final ObjectStore _store;
+
+        /** the listening socket. */
+        private final ServerSocket _server;
+
+        /** the number of requests answered, or -1 if serving failed. */
+        private volatile int _requests;
+    }
+
+    @Test
+    public void bundlesCarryWhatATransferSends() throws IOException {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1", "d/b", "2"), "one");
+        String c2 = history.commit(Map.of("a", "1", "d/b", "3"), "two",
+                c1);
+        Transfer transfer = new Transfer(from, List.of());
+        transfer.want(c2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(transfer.size(),
+                transfer.send(new DataOutputStream(bytes)));
+        assertEquals(List.of(c1, c2), Bundle.read(in(bytes.toByteArray()),
+                to));
+        assertArrayEquals(from.read(ObjectStore.Kind.COMMIT, c2),
+                to.read(ObjectStore.Kind.COMMIT, c2));
+        for (String contents : List.of("1", "2", "3")) {
+            assertTrue(to.contains(ObjectStore.Kind.BLOB,
+                    TestHistory.blob(contents)));
+        }
+    }
+
+    @Test
+    public void objectsBiggerThanAChunkGoWhole() throws IOException {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        byte[] base = new byte[3 * Bundle.CHUNK_SIZE + 5];
+        new Random(1).nextBytes(base);
+        String baseID = Utils.sha1(base);
+        byte[] blob = base.clone();
+        blob[7] ^= 1;
+        String id = Utils.sha1(blob);
+        from.write(ObjectStore.Kind.BLOB, baseID, base);
+        from.writeDelta(ObjectStore.Kind.BLOB, id, blob, baseID);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Bundle.writeObject(from, ObjectStore.Kind.BLOB, id, out);
+        Bundle.writeEnd(out);
+        assertEquals(List.of(), Bundle.read(in(bytes.toByteArray()), to));
+        assertArrayEquals(blob, to.read(ObjectStore.Kind.BLOB, id));
+    }
+
+    @Test
+    public void bundlesCutShortAreErrors() throws IOException {
+        ObjectStore from = store("from");
+        byte[] blob = new byte[1000];
+        String id = Utils.sha1(blob);
+        from.write(ObjectStore.Kind.BLOB, id, blob);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Bundle.writeObject(from, ObjectStore.Kind.BLOB, id, out);
+        Bundle.writeEnd(out);
+        byte[] whole = bytes.toByteArray();
+        for (int cut : new int[] {0, 1, 30, whole.length - 2,
+                                  whole.length - 1}) {
+            ObjectStore to = store("to" + cut);
+            try {
+                Bundle.read(in(Arrays.copyOf(whole, cut)), to);
+                fail("read a bundle cut short at " + cut);
+            } catch (IOException excp) {
+                assertEquals(cut == whole.length - 1,
+                        to.contains(ObjectStore.Kind.BLOB, id));
+            }
+        }
+        whole[0] = 'x';
+        try {
+            Bundle.read(in(whole), store("bad"));
+            fail("read an object of no kind");
+        } catch (IOException excp) {
+            assertEquals("bad object kind in bundle", excp.getMessage());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void blobRequestsArePipelined() throws IOException {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        Random random = new Random(2);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3 * BundleRemote.BLOB_BATCH + 1; i += 1) {
+            byte[] blob = new byte[2000];
+            random.nextBytes(blob);
+            String id = Utils.sha1(blob);
+            from.write(ObjectStore.Kind.BLOB, id, blob);
+            ids.add(id);
+        }
+        ids.add(Utils.sha1("not on the server"));
+        try (BlobServer server = new BlobServer(from)) {
+            try (BundleRemote remote = new BundleRemote(server.url())) {
+                remote.blobs(ids, to);
+            }
+            server.join();
+            assertEquals(4, server._requests);
+        } catch (InterruptedException excp) {
+            fail("interrupted");
+        }
+        for (String id : ids.subList(0, ids.size() - 1)) {
+            assertArrayEquals(from.read(ObjectStore.Kind.BLOB, id),
+                    to.read(ObjectStore.Kind.BLOB, id));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Runs a Gitlet command through the Daemon of the repository in the
+ * working directory, printing its output, or in this process through
+ * Main if no daemon is running there.
+ * Usage: java gitlet.Client COMMAND [ARGS...]
+ *  @author Grace Chen
+ */
+public class Client {
+
+    /** run a command.
+     * @param args the command and its arguments. */
+    public static void main(String... args) throws IOException {
+        SocketChannel daemon = connect(new File(Daemon.SOCKET).toPath());
+        if (daemon == null) {
+            Metrics.begin(args);
+            Main.main(args);
+            return;
+        }
+        try (SocketChannel channel = daemon) {
+            ByteBuffer request = ByteBuffer.wrap(Daemon.request(args));
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            channel.shutdownOutput();
+            ObjectStore.copy(channel, Channels.newChannel(System.out));
+        }
+        System.out.flush();
+    }
+
+    /** connect to a daemon.
+     * @param socket the path of its socket.
+     * @return the connection, or null if no daemon is listening there. */
+    static SocketChannel connect(Path socket) {
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
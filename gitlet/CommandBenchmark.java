@@ -0,0 +1,356 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Measures the throughput and allocation of each Gitlet command on a
+ * synthetic repository, so that regressions and the gains of storage
+ * changes can be put in numbers. It builds a repository of FILES files
+ * nested DEPTH directories deep, with HISTORY commits on master and
+ * BRANCHES side branches, then times ITERATIONS runs of add, commit,
+ * status, log, checkout, merge and push after as many warm-up runs.
+ * Each command runs in this process, with its metadata applied as it
+ * finishes, so the numbers are those of a warm JVM such as the Daemon's.
+ *
+ * Gitlet works on the current directory, so the benchmark must be run in
+ * an empty one; "make bench" does so.
+ * Usage: java gitlet.CommandBenchmark
+ *            [FILES [DEPTH [HISTORY [BRANCHES [ITERATIONS]]]]]
+ *  @author Grace Chen
+ */
+class CommandBenchmark {
+
+    /** run the benchmark.
+     * @param args the shape of the repository and the number of runs. */
+    public static void main(String[] args) throws IOException {
+        String[] existing = new File(".").list();
+        if (existing == null || existing.length > 0) {
+            System.out.println("Run the benchmark in an empty directory.");
+            return;
+        }
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : FILES;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : DEPTH;
+        int history = args.length > 2 ? Integer.parseInt(args[2]) : HISTORY;
+        int branches = args.length > 3
+            ? Integer.parseInt(args[3]) : BRANCHES;
+        int iterations = args.length > 4
+            ? Integer.parseInt(args[4]) : ITERATIONS;
+        PrintStream console = System.out;
+        long start = System.nanoTime();
+        System.setOut(NULL_OUT);
+        try {
+            build(files, depth, history, branches);
+        } finally {
+            System.setOut(console);
+        }
+        System.out.printf("%d files, depth %d, %d commits, %d branches, "
+                + "built in %.1f s%n", files, depth, history, branches,
+                (System.nanoTime() - start) / 1e9);
+        System.out.printf("%-10s %10s %10s %14s%n",
+                "command", "ops/s", "ms/op", "KB alloc/op");
+        runAll(iterations);
+    }
+
+    /** time every command.
+     * @param iterations the number of timed runs of each. */
+    private static void runAll(int iterations) {
+        int[] round = {0};
+        measure("add", iterations,
+            () -> edit(round[0]++, EDITS),
+            () -> Gitlet.addBlobs(new ArrayList<>(_edited)));
+        measure("commit", iterations,
+            () -> {
+                edit(round[0]++, EDITS);
+                Gitlet.addBlobs(new ArrayList<>(_edited));
+            },
+            () -> commit("benchmark commit " + round[0]));
+        measure("status", iterations, () -> { }, Gitlet::status);
+        measure("log", iterations, () -> { }, Gitlet::log);
+        String[] target = {"master"};
+        measure("checkout", iterations,
+            () -> target[0] = target[0].equals("master")
+                ? branchName(0) : "master",
+            () -> Gitlet.checkoutBranch(target[0]));
+        if (!target[0].equals("master")) {
+            run(() -> Gitlet.checkoutBranch("master"));
+        }
+        measure("merge", iterations,
+            () -> prepareMerge(round[0]++),
+            () -> Gitlet.merge("merge" + round[0]));
+        measure("push", iterations,
+            () -> {
+                edit(round[0]++, EDITS);
+                Gitlet.addBlobs(new ArrayList<>(_edited));
+                commit("pushed commit " + round[0]);
+            },
+            () -> Gitlet.push(REMOTE, "master"));
+    }
+
+    /** build the repository in the current directory.
+     * @param files the number of files.
+     * @param depth how many directories deep they are nested.
+     * @param history the number of commits on master.
+     * @param branches the number of side branches.
+     * @throws IOException if the remote cannot be copied. */
+    private static void build(int files, int depth, int history,
+                              int branches) throws IOException {
+        _files.addAll(layout(files, depth));
+        run(() -> {
+            Gitlet.setupPersistence();
+            new Gitlet();
+        });
+        run(Gitlet::setupPersistence);
+        for (String name : _files) {
+            write(name, 0);
+        }
+        run(() -> {
+            Gitlet.addBlobs(new ArrayList<>(_files));
+            commit("generated files");
+        });
+        for (int c = 1; c < history; c += 1) {
+            int round = c;
+            run(() -> {
+                edit(round, EDITS);
+                Gitlet.addBlobs(new ArrayList<>(_edited));
+                commit("history " + round);
+            });
+        }
+        for (int b = 0; b < branches; b += 1) {
+            String name = branchName(b);
+            int round = history + b;
+            run(() -> {
+                Gitlet.addBranch(name);
+                Gitlet.checkoutBranch(name);
+                edit(round, EDITS);
+                Gitlet.addBlobs(new ArrayList<>(_edited));
+                commit("branch " + name);
+                Gitlet.checkoutBranch("master");
+            });
+        }
+        copyTree(new File(".gitlet").toPath(),
+                new File(REMOTE_DIR, ".gitlet").toPath());
+        run(() -> Gitlet.addRemote(REMOTE, REMOTE_DIR + "/.gitlet"));
+    }
+
+    /** the paths of the files of a generated repository, spread over
+     * FAN_OUT subdirectories at each level.
+     * @param files the number of files.
+     * @param depth how many directories deep they are nested.
+     * @return the paths. */
+    static List<String> layout(int files, int depth) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < files; i += 1) {
+            StringBuilder path = new StringBuilder();
+            int n = i;
+            for (int d = 0; d < depth; d += 1) {
+                path.append("d").append(n % FAN_OUT)
+                    .append(Tree.SEPARATOR);
+                n /= FAN_OUT;
+            }
+            result.add(path.append("f").append(i).append(".txt")
+                    .toString());
+        }
+        return result;
+    }
+
+    /** make a branch that has diverged from master by one commit on each
+     * side, changing different files, for the next merge.
+     * @param round the number of the merge. */
+    private static void prepareMerge(int round) {
+        String name = "merge" + (round + 1);
+        Gitlet.addBranch(name);
+        Gitlet.checkoutBranch(name);
+        edit(2 * round, EDITS);
+        Gitlet.addBlobs(new ArrayList<>(_edited));
+        commit("merge side " + round);
+        Gitlet.checkoutBranch("master");
+        edit(2 * round + 1, EDITS);
+        Gitlet.addBlobs(new ArrayList<>(_edited));
+        commit("merge main " + round);
+        Gitlet.commitMetadata();
+    }
+
+    /** time a command, printing its throughput and allocation.
+     * @param name the command.
+     * @param iterations the number of timed runs, after as many warm-up
+     * runs.
+     * @param setup what to do before each run, untimed.
+     * @param command the command. */
+    private static void measure(String name, int iterations,
+                                Runnable setup, Runnable command) {
+        long nanos = 0;
+        long allocated = 0;
+        for (int i = 0; i < 2 * iterations; i += 1) {
+            run(setup);
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            run(command);
+            if (i >= iterations) {
+                nanos += System.nanoTime() - start;
+                allocated += allocatedBytes() - bytes;
+            }
+        }
+        System.out.printf("%-10s %10.1f %10.2f %14.0f%n", name,
+                iterations / (nanos / 1e9), nanos / 1e6 / iterations,
+                allocated / 1024.0 / iterations);
+    }
+
+    /** run part of a command, with its output discarded, then apply its
+     * metadata changes as the end of a command would.
+     * @param part what to run. */
+    private static void run(Runnable part) {
+        PrintStream console = System.out;
+        System.setOut(NULL_OUT);
+        try {
+            part.run();
+            Gitlet.commitMetadata();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /** change the content of some of the files.
+     * @param round which edit this is, so that rounds change different
+     * files and contents.
+     * @param count how many files to change. */
+    private static void edit(int round, int count) {
+        _edited.clear();
+        _edited.addAll(edits(_files, round, count));
+        for (String name : _edited) {
+            write(name, round + 1);
+        }
+    }
+
+    /** the files an edit changes: the next COUNT files after those of
+     * the round before, wrapping around.
+     * @param files the files of the repository.
+     * @param round which edit this is.
+     * @param count how many files to change.
+     * @return the files to change. */
+    static List<String> edits(List<String> files, int round, int count) {
+        List<String> result = new ArrayList<>();
+        int n = Math.min(count, files.size());
+        for (int i = 0; i < n; i += 1) {
+            result.add(files.get((round * count + i) % files.size()));
+        }
+        return result;
+    }
+
+    /** write generated text into a file.
+     * @param name the file name.
+     * @param version which version of the file to write. */
+    private static void write(String name, int version) {
+        Random random = new Random(name.hashCode() * 31L + version);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < FILE_SIZE) {
+            text.append("line ").append(random.nextInt(1000000))
+                .append('\n');
+        }
+        File f = new File(name);
+        if (f.getParentFile() != null) {
+            f.getParentFile().mkdirs();
+        }
+        Utils.writeContents(f, text.toString());
+    }
+
+    /** commit what is staged on the current branch.
+     * @param message the log message. */
+    private static void commit(String message) {
+        Gitlet.addCommit(new Commit(message, Gitlet.getHeadID()));
+    }
+
+    /** the name of a side branch.
+     * @param b its number.
+     * @return the name. */
+    private static String branchName(int b) {
+        return "side" + b;
+    }
+
+    /** the bytes allocated so far by all live threads, or 0 if the JVM
+     * does not count them.
+     * @return the total. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) bean;
+        long total = 0;
+        for (long bytes
+                 : threads.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
+
+    /** copy a directory and everything under it.
+     * @param from the directory.
+     * @param to where to copy it.
+     * @throws IOException if copying fails. */
+    private static void copyTree(Path from, Path to) throws IOException {
+        try (Stream<Path> paths = Files.walk(from)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                Path target = to.resolve(from.relativize(p));
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(p, target,
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /** a stream that discards what commands print. */
+    private static final PrintStream NULL_OUT =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** the paths of the generated files. */
+    private static final List<String> _files = new ArrayList<>();
+
+    /** the files changed by the last edit. */
+    private static final List<String> _edited = new ArrayList<>();
+
+    /** default number of files. */
+    private static final int FILES = 2000;
+
+    /** default nesting depth of the files. */
+    private static final int DEPTH = 2;
+
+    /** default number of commits on master. */
+    private static final int HISTORY = 50;
+
+    /** default number of side branches. */
+    private static final int BRANCHES = 4;
+
+    /** default number of timed runs of each command. */
+    private static final int ITERATIONS = 10;
+
+    /** number of subdirectories of each generated directory. */
+    private static final int FAN_OUT = 8;
+
+    /** number of files each generated commit changes. */
+    private static final int EDITS = 10;
+
+    /** size of each generated file in bytes. */
+    private static final int FILE_SIZE = 2048;
+
+    /** name of the remote that push goes to. */
+    private static final String REMOTE = "origin";
+
+    /** directory of the remote repository; the walker skips it, since it
+     * has a .gitlet of its own. */
+    private static final String REMOTE_DIR = "remote";
+}
@@ -0,0 +1,41 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of the repositories the command benchmark generates.
+ *  @author Grace Chen
+ */
+public class CommandBenchmarkTest {
+
+    @Test
+    public void layoutNestsDistinctFiles() {
+        List<String> files = CommandBenchmark.layout(100, 2);
+        assertEquals(100, files.size());
+        assertEquals(100, new HashSet<>(files).size());
+        assertEquals("d0/d0/f0.txt", files.get(0));
+        for (String file : files) {
+            assertEquals(2, file.split(Tree.SEPARATOR).length - 1);
+        }
+        assertEquals(List.of("f0.txt", "f1.txt"),
+                CommandBenchmark.layout(2, 0));
+    }
+
+    @Test
+    public void editsMoveOnEachRound() {
+        List<String> files = CommandBenchmark.layout(25, 1);
+        List<String> first = CommandBenchmark.edits(files, 0, 10);
+        List<String> second = CommandBenchmark.edits(files, 1, 10);
+        assertEquals(10, first.size());
+        assertTrue(Collections.disjoint(first, second));
+        assertEquals(files.subList(20, 25),
+                CommandBenchmark.edits(files, 2, 10).subList(0, 5));
+        assertEquals(3, CommandBenchmark.edits(files.subList(0, 3), 0, 10)
+                .size());
+    }
+}
@@ -1,17 +1,30 @@
 package gitlet;
-import java.io.File;
 import java.io.Serializable;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.Date;
 
 
 /** Data structure for storing commits for Gitlet,
- * the tiny stupid version-control system.
+ * the tiny stupid version-control system. A commit names the root Tree
+ * of the files it tracks; commits made before trees existed carry the
+ * whole file map instead, and are still read as they were.
+ *
+ * Commits are stored in the Binary format, by encode and decode; those
+ * written by Java serialization before it are still read.
  *  @author Grace Chen
  */
 public class Commit implements Serializable {
 
+    /** serial version of commits written before trees existed, so that
+     * they can still be read. */
+    private static final long serialVersionUID = -8007316864483924883L;
+
     /** Constructors for Commit objects.
      * @param logMessage the input log message.
      * @param parent1 the primary parent. */
@@ -20,7 +33,6 @@ public class Commit implements Serializable {
         _timestamp = getFormattedTime(getCurrentTime());
         _parentReference = parent1;
         _parentReference2 = null;
-        _blobs = new HashMap<>();
         copyBlobs(parent1);
     }
 
@@ -33,7 +45,6 @@ public class Commit implements Serializable {
         _timestamp = getFormattedTime(getCurrentTime());
         _parentReference = parent1;
         _parentReference2 = parent2;
-        _blobs = new HashMap<>();
         copyBlobs(parent1);
     }
 
@@ -42,29 +53,130 @@ public class Commit implements Serializable {
     public Commit() {
         _logMessage = "initial commit";
         _blobs = null;
-        _timestamp = getFormattedTime(unixEpoch);
+        _timestamp = getFormattedTime(UNIX_EPOCH);
         _parentReference = null;
         _parentReference2 = null;
     }
 
+    /** a commit read from a record.
+     * @param in the record. */
+    private Commit(Binary.Reader in) {
+        while (in.next()) {
+            int tag = in.tag();
+            if (tag == MESSAGE) {
+                _logMessage = in.string();
+            } else if (tag == TIME) {
+                _time = in.number();
+            } else if (tag == ZONE) {
+                _zone = (int) in.number();
+            } else if (tag == TIMESTAMP) {
+                _timestamp = in.string();
+            } else if (tag == TREE) {
+                _tree = in.id();
+            } else if (tag == PARENT) {
+                _parentReference = in.id();
+            } else if (tag == PARENT2) {
+                _parentReference2 = in.id();
+            } else if (tag == FILES) {
+                _blobs = new HashMap<>(in.files());
+            }
+        }
+    }
+
+    /** read a commit.
+     * @param bytes a stored commit, in the Binary format or Java
+     * serialized.
+     * @return the commit. */
+    static Commit decode(byte[] bytes) {
+        if (Binary.isRecord(bytes, MAGIC)) {
+            long start = Metrics.start();
+            Commit result = new Commit(new Binary.Reader(bytes, MAGIC));
+            Metrics.io("decode", start, bytes.length);
+            return result;
+        }
+        return Utils.deserialize(bytes, Commit.class);
+    }
+
+    /** the bytes of this commit as it is stored, whose SHA-1 is its ID.
+     * The time is kept as milliseconds and the offset of its time zone,
+     * from which the timestamp is formatted again when it is read; a
+     * timestamp that does not come out the same way is kept whole.
+     * @return the record. */
+    byte[] encode() {
+        long time = getTime();
+        String stamp = getTimeStamp();
+        String sign = stamp.substring(stamp.length() - ZONE_LENGTH);
+        int hhmm = Integer.parseInt(sign.substring(1));
+        int zone = (sign.charAt(0) == '-' ? -1 : 1)
+            * (hhmm / 100 * 60 + hhmm % 100);
+        Binary.Writer out = new Binary.Writer(MAGIC)
+            .string(MESSAGE, _logMessage)
+            .number(TIME, time)
+            .number(ZONE, zone);
+        if (!stamp.equals(format(time, zone))) {
+            out.string(TIMESTAMP, stamp);
+        }
+        out.id(TREE, _tree)
+            .id(PARENT, _parentReference)
+            .id(PARENT2, _parentReference2);
+        if (_blobs != null) {
+            out.files(FILES, new TreeMap<>(_blobs));
+        }
+        return out.toByteArray();
+    }
+
+    /** format a time as a timestamp.
+     * @param time milliseconds since the epoch.
+     * @param zone the offset of the time zone, in minutes.
+     * @return the timestamp. */
+    private static String format(long time, int zone) {
+        SimpleDateFormat formatter =
+                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+        formatter.setTimeZone(TimeZone.getTimeZone(
+                ZoneOffset.ofTotalSeconds(zone * 60)));
+        return formatter.format(new Date(time));
+    }
+
     /** used by the constructor.
-     * by default copies files from parent commit into current.
+     * by default tracks the files of the parent commit, by sharing its
+     * tree.
      * @param parent the parent commit we want to get files from. */
     private void copyBlobs(String parent) {
-        File parentFile = new File(".gitlet/commits/" + parent);
-        if (parentFile.exists()) {
-            Commit parentCommit = Utils.readObject(parentFile, Commit.class);
-            HashMap<String, String> from = parentCommit.getBlobs();
-            if (from != null) {
-                for (String blobName : from.keySet()) {
-                    _blobs.put(blobName, from.get(blobName));
-                }
-            }
+        Commit parentCommit = Gitlet.getCommit(parent);
+        if (parentCommit != null) {
+            _tree = parentCommit.getTreeID();
         } else {
             System.out.println("Parent doesn't exists.");
         }
     }
 
+    /** accessor for the root tree of current commit. A commit from before
+     * trees existed has its files written out as trees the first time.
+     * @return the root tree ID, or null if no files are tracked. */
+    public String getTreeID() {
+        if (_blobs != null && _tree == null) {
+            _tree = Tree.update(Gitlet.getObjects(), null,
+                    new TreeMap<>(_blobs));
+        }
+        return _tree;
+    }
+
+    /** accessor for the files of a commit from before trees existed, as
+     * it stores them; unlike getTreeID, writes no trees.
+     * @return the file map, or null if the commit names a tree. */
+    HashMap<String, String> getLegacyBlobs() {
+        return _blobs;
+    }
+
+    /** write the changes made through addBlob, removeBlob and
+     * replaceBlobContent into new trees, before the commit is saved. */
+    public void writeTree() {
+        if (_edits != null) {
+            _tree = Tree.update(Gitlet.getObjects(), _tree, _edits);
+            _edits = null;
+        }
+    }
+
     /** accessor method for the log message of current commit.
      * @return the log message of current commit. */
     public String getLogMessage() {
@@ -74,9 +186,26 @@ public class Commit implements Serializable {
     /** accessor method for the timestamp of current commit.
      * @return the timestamp of current commit. */
     public String getTimeStamp() {
+        if (_timestamp == null) {
+            _timestamp = format(_time, _zone);
+        }
         return _timestamp;
     }
 
+    /** the time of current commit, parsed back out of its timestamp.
+     * @return milliseconds since the epoch. */
+    public long getTime() {
+        if (_timestamp == null) {
+            return _time;
+        }
+        try {
+            return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z")
+                    .parse(_timestamp).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
     /** accessor for the parent reference of current commit.
      * @return the primary parent of current commit. */
     public String getParent() {
@@ -89,47 +218,112 @@ public class Commit implements Serializable {
         return _parentReference2;
     }
 
-    /** accessor for blobs that this commit tracks.
-     * @return the files tracked by current commit. */
+    /** accessor for blobs that this commit tracks. The trees are read
+     * the first time, and the result kept, in the order of the trees.
+     * @return the files tracked by current commit, or null if none ever
+     * were. */
     public HashMap<String, String> getBlobs() {
-        return _blobs;
+        if (_blobs != null) {
+            return _blobs;
+        }
+        if (_files == null) {
+            if (_tree == null && _edits == null) {
+                return null;
+            }
+            _files = new LinkedHashMap<>();
+            Tree.flatten(Gitlet.getObjects(), _tree, "", _files);
+            if (_edits != null) {
+                for (String name : _edits.keySet()) {
+                    editFiles(name, _edits.get(name));
+                }
+            }
+        }
+        return _files;
     }
 
     /** add a blob to the blobs that this commit tracks to.
      * @param blobName the file name we want to add.
      * @param blobID the file content we want to add. */
     public void addBlob(String blobName, String blobID) {
-        _blobs.put(blobName, blobID);
+        edit(blobName, blobID);
     }
 
     /** remove the this file from the tracking list.
      * @param blobName the file we want to remove. */
     public void removeBlob(String blobName) {
-        _blobs.remove(blobName);
+        edit(blobName, null);
     }
 
     /** replace the content of a blob with another.
      * @param blobName the file name input.
      * @param blobID the content we want to replace. */
     public void replaceBlobContent(String blobName, String blobID) {
-        _blobs.replace(blobName, blobID);
+        if (containsBlob(blobName)) {
+            edit(blobName, blobID);
+        }
+    }
+
+    /** record a change to the files of this commit, until writeTree.
+     * @param blobName the file name.
+     * @param blobID its new blob ID, or null to stop tracking it. */
+    private void edit(String blobName, String blobID) {
+        if (_blobs != null) {
+            getTreeID();
+            _blobs = null;
+        }
+        if (_edits == null) {
+            _edits = new TreeMap<>();
+        }
+        _edits.put(blobName, blobID);
+        if (_files != null) {
+            editFiles(blobName, blobID);
+        }
+    }
+
+    /** apply a change to the kept file map.
+     * @param blobName the file name.
+     * @param blobID its new blob ID, or null to stop tracking it. */
+    private void editFiles(String blobName, String blobID) {
+        if (blobID == null) {
+            _files.remove(blobName);
+        } else {
+            _files.put(blobName, blobID);
+        }
     }
 
     /** check to see if the current commit contains a certain file.
      * @param blobName the file name input.
      * @return whether the file is tracked by the current commit. */
     public boolean containsBlob(String blobName) {
-        return _blobs != null && _blobs.containsKey(blobName);
+        return lookup(blobName) != null;
     }
 
     /** find the blobID with the current filename in _blobs.
      * @param blobName the file name we want to find.
      * @return the blob ID associated with that name in the current commit. */
     public String findBlob(String blobName) {
-        if (!containsBlob(blobName)) {
-            return "";
+        String result = lookup(blobName);
+        return result == null ? "" : result;
+    }
+
+    /** find the blob of a file, through the kept file map if there is one
+     * and otherwise down the trees along its path.
+     * @param blobName the file name.
+     * @return its blob ID, or null if it is not tracked. */
+    private String lookup(String blobName) {
+        if (_blobs != null) {
+            return _blobs.get(blobName);
+        }
+        if (_files != null) {
+            return _files.get(blobName);
         }
-        return _blobs.get(blobName);
+        if (_edits != null && _edits.containsKey(blobName)) {
+            return _edits.get(blobName);
+        }
+        if (_tree == null) {
+            return null;
+        }
+        return Tree.lookup(Gitlet.getObjects(), _tree, blobName);
     }
 
     /** put Date in correct format for time log.
@@ -150,18 +344,34 @@ public class Commit implements Serializable {
     /** accessor method for unixEpoch.
      * @return the initial time. */
     private Date getUnixEpoch() {
-        return unixEpoch;
+        return UNIX_EPOCH;
     }
 
     /** log Message of a commit. */
     private String _logMessage;
 
-    /** timestamp of a commit. */
+    /** timestamp of a commit, or null until getTimeStamp formats it
+     * from _time and _zone. */
     private String _timestamp;
 
-    /** mapping of fileNames. */
+    /** the time of a decoded commit, in milliseconds since the epoch. */
+    private transient long _time;
+
+    /** the offset of its time zone, in minutes. */
+    private transient int _zone;
+
+    /** mapping of fileNames, in commits from before trees existed. */
     private HashMap<String, String> _blobs;
 
+    /** the root tree of the files this commit tracks, or null. */
+    private String _tree;
+
+    /** changes to the files since the tree was last written, or null. */
+    private transient TreeMap<String, String> _edits;
+
+    /** every file this commit tracks, once getBlobs has read them. */
+    private transient HashMap<String, String> _files;
+
     /** the parent reference of current commit object. */
     private String _parentReference;
 
@@ -169,5 +379,36 @@ public class Commit implements Serializable {
     private String _parentReference2;
 
     /** the beginning of time for computers. */
-    private Date unixEpoch = new Date(0);
+    private static final Date UNIX_EPOCH = new Date(0);
+
+    /** magic bytes of a commit record. */
+    private static final String MAGIC = "GC";
+
+    /** length of the time zone at the end of a timestamp, as +HHMM. */
+    private static final int ZONE_LENGTH = 5;
+
+    /** record field: the log message. */
+    private static final int MESSAGE = 1;
+
+    /** record field: the time in milliseconds. */
+    private static final int TIME = 2;
+
+    /** record field: the time zone offset in minutes. */
+    private static final int ZONE = 3;
+
+    /** record field: the timestamp, when formatting TIME and ZONE does
+     * not give it back. */
+    private static final int TIMESTAMP = 4;
+
+    /** record field: the root tree. */
+    private static final int TREE = 5;
+
+    /** record field: the first parent. */
+    private static final int PARENT = 6;
+
+    /** record field: the second parent. */
+    private static final int PARENT2 = 7;
+
+    /** record field: the file map of a commit from before trees. */
+    private static final int FILES = 8;
 }
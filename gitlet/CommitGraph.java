@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commit-graph file of a repository, .gitlet/commit-graph. It holds
+ * one fixed-size record per commit, sorted by commit ID: the ID, the
+ * record numbers of its parents, its generation number and its time. The
+ * file is memory-mapped, so walking history through it costs no file
+ * opens and no deserialization. A commit's generation is one more than
+ * the largest generation of its parents, so no commit can reach another
+ * of equal or greater generation.
+ *
+ * The file is rewritten by gc; commits made since are not in it, and
+ * callers fall back to reading them from the object store.
+ *  @author Grace Chen
+ */
+class CommitGraph {
+
+    /** open the commit-graph in FILE.
+     * @param file the commit-graph file. */
+    CommitGraph(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot open commit-graph.");
+        }
+        if (_data.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt commit-graph.");
+        }
+        _count = _data.getInt(8);
+    }
+
+    /** open the commit-graph in FILE, if there is one.
+     * @param file the commit-graph file.
+     * @return the graph, or null if FILE does not exist. */
+    static CommitGraph load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        return new CommitGraph(file);
+    }
+
+    /** accessor for the number of commits in the graph.
+     * @return the number of records. */
+    int size() {
+        return _count;
+    }
+
+    /** find the record of a commit.
+     * @param id the commit ID.
+     * @return its record number, or -1 if it is not in the graph. */
+    int find(String id) {
+        byte[] key = Pack.fromHex(id);
+        if (key == null) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareID(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** the ID of a commit.
+     * @param i the record number.
+     * @return the commit ID. */
+    String id(int i) {
+        byte[] raw = new byte[Pack.ID_BYTES];
+        int rec = record(i);
+        for (int j = 0; j < Pack.ID_BYTES; j += 1) {
+            raw[j] = _data.get(rec + j);
+        }
+        return Pack.toHex(raw);
+    }
+
+    /** the first parent of a commit.
+     * @param i the record number.
+     * @return the record number of its parent, or NONE. */
+    int parent(int i) {
+        return _data.getInt(record(i) + Pack.ID_BYTES);
+    }
+
+    /** the second parent of a commit.
+     * @param i the record number.
+     * @return the record number of its merged-in parent, or NONE. */
+    int parent2(int i) {
+        return _data.getInt(record(i) + Pack.ID_BYTES + 4);
+    }
+
+    /** the generation number of a commit.
+     * @param i the record number.
+     * @return its generation, 1 for a commit without parents. */
+    int generation(int i) {
+        return _data.getInt(record(i) + Pack.ID_BYTES + 8);
+    }
+
+    /** the time of a commit.
+     * @param i the record number.
+     * @return its time in milliseconds since the epoch. */
+    long time(int i) {
+        return _data.getLong(record(i) + Pack.ID_BYTES + 12);
+    }
+
+    /** the offset of a record.
+     * @param i the record number.
+     * @return its offset in the file. */
+    private static int record(int i) {
+        return HEADER_SIZE + i * RECORD_SIZE;
+    }
+
+    /** compare the ID in a record against a key.
+     * @param i the record number.
+     * @param key a binary commit ID.
+     * @return negative, zero or positive as the record sorts before,
+     * equal to or after the key. */
+    private int compareID(int i, byte[] key) {
+        int rec = record(i);
+        for (int j = 0; j < Pack.ID_BYTES; j += 1) {
+            int a = _data.get(rec + j) & 0xff;
+            int b = key[j] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /** write a commit-graph of every commit in a store into FILE. A commit
+     * whose ancestors are not all in the store is left out.
+     * @param file the commit-graph file.
+     * @param store the object store.
+     * @return the number of commits written. */
+    static int write(File file, ObjectStore store) {
+        List<String> ids = store.list(ObjectStore.Kind.COMMIT);
+        int n = ids.size();
+        HashMap<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            index.put(ids.get(i), i);
+        }
+        int[] parent = new int[n];
+        int[] parent2 = new int[n];
+        long[] time = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            Commit c = Commit.decode(
+                    store.read(ObjectStore.Kind.COMMIT, ids.get(i)));
+            parent[i] = indexOf(index, c.getParent());
+            parent2[i] = indexOf(index, c.getParent2());
+            time[i] = c.getTime();
+        }
+        int[] gen = generations(parent, parent2);
+        int[] renumber = new int[n];
+        int kept = 0;
+        for (int i = 0; i < n; i += 1) {
+            renumber[i] = gen[i] > 0 ? kept++ : NONE;
+        }
+        File tmp = new File(file.getParentFile(), "tmp-commit-graph");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(kept);
+            for (int i = 0; i < n; i += 1) {
+                if (gen[i] > 0) {
+                    out.write(Pack.fromHex(ids.get(i)));
+                    out.writeInt(parent[i] < 0 ? NONE : renumber[parent[i]]);
+                    out.writeInt(parent2[i] < 0 ? NONE
+                            : renumber[parent2[i]]);
+                    out.writeInt(gen[i]);
+                    out.writeLong(time[i]);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit-graph: %s",
+                    excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit-graph: %s",
+                    excp.getMessage());
+        }
+        return kept;
+    }
+
+    /** look up a parent ID.
+     * @param index the record numbers of the commits in the store.
+     * @param id the parent ID, or null.
+     * @return its record number, NONE if ID is null, or MISSING if the
+     * parent is not in the store. */
+    private static int indexOf(HashMap<String, Integer> index, String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer i = index.get(id);
+        return i == null ? MISSING : i;
+    }
+
+    /** compute generation numbers without recursion, so that long
+     * histories do not overflow the stack.
+     * @param parent the first parent of each commit.
+     * @param parent2 the second parent of each commit.
+     * @return the generation of each commit, or 0 for a commit with a
+     * MISSING ancestor. */
+    private static int[] generations(int[] parent, int[] parent2) {
+        int n = parent.length;
+        int[] gen = new int[n];
+        boolean[] done = new boolean[n];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int start = 0; start < n; start += 1) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                int c = stack.peek();
+                if (done[c]) {
+                    stack.pop();
+                    continue;
+                }
+                int p1 = parent[c];
+                int p2 = parent2[c];
+                if (p1 >= 0 && !done[p1]) {
+                    stack.push(p1);
+                } else if (p2 >= 0 && !done[p2]) {
+                    stack.push(p2);
+                } else {
+                    stack.pop();
+                    gen[c] = generationOf(gen, p1, p2);
+                    done[c] = true;
+                }
+            }
+        }
+        return gen;
+    }
+
+    /** the generation of a commit whose parents are done.
+     * @param gen the generations computed so far.
+     * @param p1 its first parent.
+     * @param p2 its second parent.
+     * @return its generation, or 0 if an ancestor is MISSING. */
+    private static int generationOf(int[] gen, int p1, int p2) {
+        if (p1 == MISSING || p2 == MISSING
+                || (p1 >= 0 && gen[p1] == 0) || (p2 >= 0 && gen[p2] == 0)) {
+            return 0;
+        }
+        int result = 1;
+        if (p1 >= 0) {
+            result = Math.max(result, gen[p1] + 1);
+        }
+        if (p2 >= 0) {
+            result = Math.max(result, gen[p2] + 1);
+        }
+        return result;
+    }
+
+    /** record number meaning "no parent". */
+    static final int NONE = -1;
+
+    /** parent number, while writing, of a parent missing from the store. */
+    private static final int MISSING = -2;
+
+    /** magic number at the start of a commit-graph file. */
+    private static final int MAGIC = 0x47434731;
+
+    /** version of the commit-graph format. */
+    private static final int VERSION = 1;
+
+    /** size of the header: magic, version and count. */
+    private static final int HEADER_SIZE = 12;
+
+    /** size of a record: ID, two parents, generation and time. */
+    private static final int RECORD_SIZE = Pack.ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** the mapped file. */
+    private final MappedByteBuffer _data;
+
+    /** number of commits in the graph. */
+    private final int _count;
+}
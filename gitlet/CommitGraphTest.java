@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of the commit-graph file.
+ *  @author Grace Chen
+ */
+public class CommitGraphTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void graphRecordsParentsGenerationsAndTimes() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String root = history.commit(5000, "root");
+        String a = history.commit("a", root);
+        String b = history.commit("b", root);
+        String b2 = history.commit("b2", b);
+        String merge = history.commit("merge", a, b2);
+        File file = new File(tmp.getRoot(), "commit-graph");
+        assertEquals(5, CommitGraph.write(file, store));
+
+        CommitGraph graph = CommitGraph.load(file);
+        assertEquals(5, graph.size());
+        int r = graph.find(root);
+        int m = graph.find(merge);
+        assertEquals(root, graph.id(r));
+        assertEquals(CommitGraph.NONE, graph.parent(r));
+        assertEquals(CommitGraph.NONE, graph.parent2(r));
+        assertEquals(1, graph.generation(r));
+        assertEquals(5000, graph.time(r));
+        assertEquals(a, graph.id(graph.parent(m)));
+        assertEquals(b2, graph.id(graph.parent2(m)));
+        assertEquals(4, graph.generation(m));
+        assertEquals(2, graph.generation(graph.find(a)));
+        assertEquals(-1, graph.find(Utils.sha1("nothing")));
+        assertEquals(-1, graph.find("abc"));
+    }
+
+    @Test
+    public void commitsWithMissingAncestorsAreLeftOut() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String root = history.commit("root");
+        String orphan = history.commit("orphan", Utils.sha1("gone"));
+        String child = history.commit("child", orphan);
+        File file = new File(tmp.getRoot(), "commit-graph");
+        assertEquals(1, CommitGraph.write(file, store));
+        CommitGraph graph = CommitGraph.load(file);
+        assertTrue(graph.find(root) >= 0);
+        assertEquals(-1, graph.find(orphan));
+        assertEquals(-1, graph.find(child));
+    }
+
+    @Test
+    public void generationsCountAlongAChain() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        store.setCodec(ObjectCodec.NONE, 0);
+        TestHistory history = new TestHistory(store);
+        String[] chain = new String[1000];
+        chain[0] = history.commit("0");
+        for (int i = 1; i < chain.length; i += 1) {
+            chain[i] = history.commit(Integer.toString(i), chain[i - 1]);
+        }
+        File file = new File(tmp.getRoot(), "commit-graph");
+        CommitGraph.write(file, store);
+        CommitGraph graph = CommitGraph.load(file);
+        for (int i = 0; i < chain.length; i += 1) {
+            assertEquals(i + 1, graph.generation(graph.find(chain[i])));
+        }
+    }
+
+    @Test
+    public void missingGraphLoadsAsNull() {
+        assertNull(CommitGraph.load(new File(tmp.getRoot(), "none")));
+    }
+}
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/** Compares the object codecs on the files of a directory: for each codec
+ * and compression level it stores every file as a blob in a scratch
+ * object store, and reports write throughput against the bytes saved.
+ * Usage: java gitlet.CompressionBenchmark [DIR [ROUNDS]]
+ *  @author Grace Chen
+ */
+class CompressionBenchmark {
+
+    /** run the benchmark.
+     * @param args the sample directory and the number of rounds. */
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : ROUNDS;
+        List<File> samples = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            throw Utils.error("Not a directory: %s", dir);
+        }
+        long plain = 0;
+        for (String name : names) {
+            File f = new File(dir, name);
+            samples.add(f);
+            plain += f.length();
+        }
+        System.out.printf("%d files, %d bytes, %d rounds%n",
+                samples.size(), plain, rounds);
+        System.out.printf("%-10s %6s %12s %12s %8s%n",
+                "codec", "level", "MB/s", "stored", "saved");
+        run(samples, plain, rounds, ObjectCodec.NONE, 0);
+        run(samples, plain, rounds, ObjectCodec.DEFLATE,
+                Deflater.BEST_SPEED);
+        run(samples, plain, rounds, ObjectCodec.DEFLATE,
+                Deflater.DEFAULT_COMPRESSION);
+        run(samples, plain, rounds, ObjectCodec.DEFLATE,
+                Deflater.BEST_COMPRESSION);
+    }
+
+    /** time writing every sample into fresh stores with one codec, and
+     * print a line of results.
+     * @param samples the files to store.
+     * @param plain their total size in bytes.
+     * @param rounds how many times to store them all.
+     * @param codec the codec.
+     * @param level the compression level.
+     * @throws IOException if a scratch store cannot be made. */
+    private static void run(List<File> samples, long plain, int rounds,
+                            ObjectCodec codec, int level) throws IOException {
+        long nanos = 0;
+        long stored = 0;
+        for (int r = 0; r < rounds; r += 1) {
+            File root = Files.createTempDirectory("gitlet-bench").toFile();
+            ObjectStore store = new ObjectStore(root);
+            store.setCodec(codec, level);
+            long start = System.nanoTime();
+            for (File f : samples) {
+                String header = "blob " + f.length() + "\0";
+                String id = Utils.sha1(header, f);
+                store.write(ObjectStore.Kind.BLOB, id,
+                        header.getBytes(StandardCharsets.UTF_8),
+                        FileChannel.open(f.toPath(),
+                                StandardOpenOption.READ));
+            }
+            nanos += System.nanoTime() - start;
+            stored = 0;
+            for (String id : store.list(ObjectStore.Kind.BLOB)) {
+                File loose = store.looseFile(ObjectStore.Kind.BLOB, id);
+                stored += loose.length();
+                loose.delete();
+            }
+            deleteTree(root);
+        }
+        double mbPerSec = (double) plain * rounds / (1 << 20)
+                / (nanos / 1e9);
+        double saved = plain == 0 ? 0 : 100.0 * (plain - stored) / plain;
+        System.out.printf("%-10s %6d %12.1f %12d %7.1f%%%n",
+                codec, level, mbPerSec, stored, saved);
+    }
+
+    /** delete a directory and everything under it.
+     * @param file the directory or file to delete. */
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** default number of rounds. */
+    private static final int ROUNDS = 5;
+}
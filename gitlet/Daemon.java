@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A long-running Gitlet process for the repository in its working
+ * directory, so that scripts running many commands pay for starting the
+ * JVM, loading classes and warming caches once. It listens on the Unix
+ * domain socket .gitlet/daemon.sock and runs the commands it is sent one
+ * at a time, through Main, sending back what they print.
+ *
+ * A request is the arguments of a command, each followed by a zero byte,
+ * ended by the client shutting down its side of the connection; the
+ * reply is the output of the command, ended by the daemon closing the
+ * connection. Client sends requests, as does any tool that can write to
+ * a Unix socket:
+ *
+ *     printf '%s\0' status | nc -N -U .gitlet/daemon.sock
+ *
+ * Before each command the daemon drops what it holds of any pack,
+ * commit-graph or message index that another process has changed, and
+ * after it the command's metadata changes are applied, as the shutdown
+ * hook does for a single command. A command that fails, with any
+ * exception or error, has its changes discarded and its failure sent to
+ * the client, and the daemon goes on serving. A command that calls
+ * System.exit ends there, as it would in its own process, but does not
+ * end the daemon, which installs ExitGuard to stop it. On a JDK that no
+ * longer allows that without -Djava.security.manager=allow, such a
+ * command ends the daemon, and clients then run commands in their own
+ * process.
+ * Usage: java gitlet.Daemon
+ *  @author Grace Chen
+ */
+public class Daemon {
+
+    /** serve commands until killed.
+     * @param args unused. */
+    public static void main(String... args) throws IOException {
+        Path socket = new File(SOCKET).toPath();
+        if (!Files.isDirectory(socket.getParent())) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (Files.exists(socket)) {
+            SocketChannel other = Client.connect(socket);
+            if (other != null) {
+                other.close();
+                System.out.println("A daemon is already running.");
+                return;
+            }
+            Files.delete(socket);
+        }
+        ExitGuard.install();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> socket.toFile().delete()));
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    serve(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        }
+    }
+
+    /** run one command for a client.
+     * @param client the connection to the client.
+     * @throws IOException if the request cannot be read. */
+    private static void serve(SocketChannel client) throws IOException {
+        String[] args = readRequest(Channels.newInputStream(client));
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(client)), false,
+                StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+        try {
+            Metrics.begin(args);
+            Gitlet.refresh();
+            ExitGuard.run(() -> Main.main(args));
+            Gitlet.commitMetadata();
+        } catch (GitletException excp) {
+            Gitlet.discardMetadata();
+            out.println(excp.getMessage());
+        } catch (Throwable excp) {
+            Gitlet.discardMetadata();
+            excp.printStackTrace(out);
+        } finally {
+            try {
+                Gitlet.markFresh();
+                Metrics.end();
+            } finally {
+                System.setOut(stdout);
+                System.setErr(stderr);
+                out.flush();
+            }
+        }
+    }
+
+    /** read the arguments of a command.
+     * @param in the stream from the client.
+     * @return the arguments.
+     * @throws IOException if reading fails. */
+    static String[] readRequest(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (bytes[i] == 0) {
+                args.add(new String(bytes, start, i - start,
+                        StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** encode the arguments of a command as a request.
+     * @param args the arguments.
+     * @return the request bytes. */
+    static byte[] request(String... args) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            result.write(bytes, 0, bytes.length);
+            result.write(0);
+        }
+        return result.toByteArray();
+    }
+
+    /** A security manager that allows everything except a System.exit
+     * from a command the daemon is running, which it turns into an Exit
+     * that ends only the command. */
+    @SuppressWarnings("removal")
+    private static class ExitGuard extends SecurityManager {
+
+        /** install the guard, if this JDK still allows it. */
+        static void install() {
+            try {
+                System.setSecurityManager(new ExitGuard());
+            } catch (UnsupportedOperationException excp) {
+                return;
+            }
+        }
+
+        /** run a command, returning early if it exits.
+         * @param command the command. */
+        static void run(Runnable command) {
+            _running = true;
+            try {
+                command.run();
+            } catch (Exit excp) {
+                return;
+            } finally {
+                _running = false;
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (_running) {
+                throw new Exit();
+            }
+        }
+
+        /** Thrown out of a command in place of exiting the JVM. */
+        private static class Exit extends RuntimeException {
+
+            /** serial version, which is never used: it is not saved. */
+            private static final long serialVersionUID = 1L;
+        }
+
+        /** whether a command is running. */
+        private static volatile boolean _running;
+    }
+
+    /** the socket the daemon listens on, in the repository directory. */
+    static final String SOCKET = ".gitlet/daemon.sock";
+}
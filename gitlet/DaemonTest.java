@@ -0,0 +1,36 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of the requests the daemon serves.
+ *  @author Grace Chen
+ */
+public class DaemonTest {
+
+    /** encode a request and read it back, as the daemon does.
+     * @param args the arguments of a command.
+     * @return the arguments the daemon reads. */
+    private static String[] roundTrip(String... args) throws IOException {
+        return Daemon.readRequest(
+                new ByteArrayInputStream(Daemon.request(args)));
+    }
+
+    @Test
+    public void requestsCarryTheirArguments() throws IOException {
+        assertArrayEquals(new String[] {"commit", "a message with spaces"},
+                roundTrip("commit", "a message with spaces"));
+        assertArrayEquals(new String[] {"add", "d\u00e9j\u00e0/vu.txt"},
+                roundTrip("add", "d\u00e9j\u00e0/vu.txt"));
+    }
+
+    @Test
+    public void emptyArgumentsSurvive() throws IOException {
+        assertArrayEquals(new String[] {"find", ""}, roundTrip("find", ""));
+        assertArrayEquals(new String[0], roundTrip());
+    }
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Deltas between two versions of an object. A delta is a list of
+ * instructions that rebuild a target from a base: copy a range of the
+ * base, or insert literal bytes. It starts with the sizes of the base and
+ * the target, and every number in it is an unsigned varint. Matches are
+ * found by indexing the base in blocks of BLOCK bytes and scanning the
+ * target with a rolling hash, as git does.
+ *  @author Grace Chen
+ */
+class Delta {
+
+    /** compute a delta that rebuilds TARGET from BASE.
+     * @param base the base version.
+     * @param target the new version.
+     * @return the delta instructions. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int[] table = index(base);
+        int mask = table.length - 1;
+        int insertStart = 0;
+        int i = 0;
+        int hash = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int candidate = table[hash & mask] - 1;
+            if (candidate >= 0 && matches(base, candidate, target, i)) {
+                int start = i;
+                int from = candidate;
+                while (start > insertStart && from > 0
+                        && base[from - 1] == target[start - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = i + BLOCK;
+                int to = candidate + BLOCK;
+                while (end < target.length && to < base.length
+                        && base[to] == target[end]) {
+                    end += 1;
+                    to += 1;
+                }
+                insert(out, target, insertStart, start);
+                out.write(COPY);
+                writeVarint(out, from);
+                writeVarint(out, end - start);
+                i = end;
+                insertStart = end;
+                if (i + BLOCK <= target.length) {
+                    hash = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                hash = roll(hash, target[i], target[i + BLOCK]);
+            }
+            i += 1;
+        }
+        insert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** rebuild a target from its base and a delta.
+     * @param base the base version.
+     * @param delta the delta instructions.
+     * @return the target. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            byte op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int from = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, from, result, n, len);
+                n += len;
+            } else if (op == INSERT) {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** index the blocks of a base by hash.
+     * @param base the base version.
+     * @return an open hash table from block hash to offset plus one. */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK;
+        int size = 1;
+        while (size < 2 * blocks) {
+            size <<= 1;
+        }
+        int[] table = new int[size];
+        int mask = size - 1;
+        for (int b = blocks - 1; b >= 0; b -= 1) {
+            table[hash(base, b * BLOCK) & mask] = b * BLOCK + 1;
+        }
+        return table;
+    }
+
+    /** write insert instructions for a range of the target, if it is not
+     * empty.
+     * @param out where the instructions go.
+     * @param target the new version.
+     * @param from the start of the range.
+     * @param to the end of the range. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** check whether a block of the base equals a block of the target.
+     * @param base the base version.
+     * @param from the offset of the block in the base.
+     * @param target the new version.
+     * @param at the offset of the block in the target.
+     * @return whether the BLOCK bytes at each offset are equal. */
+    private static boolean matches(byte[] base, int from, byte[] target,
+                                   int at) {
+        for (int j = 0; j < BLOCK; j += 1) {
+            if (base[from + j] != target[at + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** hash the block at an offset.
+     * @param data the bytes.
+     * @param at the start of the block.
+     * @return the hash. */
+    private static int hash(byte[] data, int at) {
+        int h = 0;
+        for (int j = 0; j < BLOCK; j += 1) {
+            h = h * PRIME + (data[at + j] & 0xff);
+        }
+        return h;
+    }
+
+    /** slide a block hash one byte along.
+     * @param h the hash of the current block.
+     * @param out the byte leaving the block.
+     * @param in the byte entering it.
+     * @return the hash of the next block. */
+    private static int roll(int h, byte out, byte in) {
+        return (h - (out & 0xff) * PRIME_POW) * PRIME + (in & 0xff);
+    }
+
+    /** write an unsigned varint.
+     * @param out where to write it.
+     * @param value the value. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** read an unsigned varint.
+     * @param data the bytes.
+     * @param pos a one-element array holding the read position, which is
+     * advanced past the varint.
+     * @return the value. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    /** size of the blocks the base is indexed in. */
+    private static final int BLOCK = 16;
+
+    /** multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME to the power BLOCK - 1, for removing the oldest byte. */
+    private static final int PRIME_POW;
+
+    static {
+        int p = 1;
+        for (int j = 1; j < BLOCK; j += 1) {
+            p *= PRIME;
+        }
+        PRIME_POW = p;
+    }
+
+    /** instruction inserting literal bytes. */
+    private static final int INSERT = 0;
+
+    /** instruction copying a range of the base. */
+    private static final int COPY = 1;
+}
@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of deltas and of blobs stored as deltas.
+ *  @author Grace Chen
+ */
+public class DeltaTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** random bytes.
+     * @param random the source of randomness.
+     * @param size the number of bytes.
+     * @return the bytes. */
+    private static byte[] noise(Random random, int size) {
+        byte[] result = new byte[size];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** BASE with a few random stretches replaced, inserted and removed.
+     * @param random the source of randomness.
+     * @param base the bytes to edit.
+     * @return the edited bytes. */
+    private static byte[] edit(Random random, byte[] base) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int at = 0;
+        while (at < base.length) {
+            int keep = Math.min(base.length - at, random.nextInt(4000));
+            out.write(base, at, keep);
+            at += keep;
+            int op = random.nextInt(3);
+            if (op == 0) {
+                out.writeBytes(noise(random, random.nextInt(50)));
+            } else if (op == 1) {
+                at += random.nextInt(50);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void deltasRoundTrip() {
+        Random random = new Random(6);
+        for (int i = 0; i < 20; i += 1) {
+            byte[] base = noise(random, random.nextInt(20000));
+            byte[] target = edit(random, base);
+            byte[] delta = Delta.create(base, target);
+            assertArrayEquals(target, Delta.apply(base, delta));
+        }
+        byte[] base = noise(random, 10000);
+        assertArrayEquals(new byte[0],
+                Delta.apply(base, Delta.create(base, new byte[0])));
+        assertArrayEquals(base,
+                Delta.apply(new byte[0], Delta.create(new byte[0], base)));
+    }
+
+    @Test
+    public void similarTargetGivesSmallDelta() {
+        Random random = new Random(7);
+        byte[] base = noise(random, 50000);
+        byte[] target = base.clone();
+        target[25000] ^= 1;
+        assertTrue(Delta.create(base, target).length < 200);
+    }
+
+    @Test
+    public void versionsStoredAsDeltasReadBack() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        Random random = new Random(8);
+        List<byte[]> versions = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        byte[] current = noise(random, 30000);
+        String previous = null;
+        for (int i = 0; i < ObjectStore.MAX_DELTA_DEPTH + 10; i += 1) {
+            String id = Utils.sha1(current);
+            store.writeDelta(ObjectStore.Kind.BLOB, id, current, previous);
+            versions.add(current);
+            ids.add(id);
+            previous = id;
+            current = edit(random, current);
+        }
+        int deltas = 0;
+        for (String id : ids) {
+            byte[] stored = store.readStored(ObjectStore.Kind.BLOB, id);
+            if (ObjectCodec.of(stored, stored.length)
+                    == ObjectCodec.DELTA) {
+                deltas += 1;
+            }
+        }
+        assertTrue(deltas > ids.size() / 2);
+        assertTrue(deltas < ids.size());
+        ObjectStore reopened = new ObjectStore(tmp.getRoot());
+        for (int i = 0; i < ids.size(); i += 1) {
+            assertArrayEquals(versions.get(i),
+                    reopened.read(ObjectStore.Kind.BLOB, ids.get(i)));
+        }
+        reopened.repack(new ArrayList<>());
+        reopened = new ObjectStore(tmp.getRoot());
+        for (int i = ids.size() - 1; i >= 0; i -= 1) {
+            assertArrayEquals(versions.get(i),
+                    reopened.read(ObjectStore.Kind.BLOB, ids.get(i)));
+        }
+    }
+
+    @Test
+    public void deltaIsSentWhole() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        Random random = new Random(9);
+        byte[] base = noise(random, 20000);
+        byte[] target = edit(random, base);
+        String baseID = Utils.sha1(base);
+        String id = Utils.sha1(target);
+        store.write(ObjectStore.Kind.BLOB, baseID, base);
+        store.writeDelta(ObjectStore.Kind.BLOB, id, target, baseID);
+        byte[] stored = store.readStored(ObjectStore.Kind.BLOB, id);
+        assertEquals(ObjectCodec.DELTA,
+                ObjectCodec.of(stored, stored.length));
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        try (ReadableByteChannel in = store.openWhole(ObjectStore.Kind.BLOB,
+                id)) {
+            ObjectStore.copy(in, Channels.newChannel(sent));
+        }
+        assertArrayEquals(target, ObjectCodec.decode(sent.toByteArray()));
+    }
+}
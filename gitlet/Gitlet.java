@@ -1,9 +1,29 @@
 package gitlet;
 import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.ArrayList;
 import java.io.File;
+import java.util.stream.IntStream;
 
 /** The system that process commands made to
  * Gitlet, the tiny stupid version-control system.
@@ -20,10 +40,14 @@ public class Gitlet {
         saveBranch(_tree);
         saveCurrBranch();
         Commit initialCommit = new Commit();
-        byte[] initArray = Utils.serialize(initialCommit);
+        byte[] initArray = initialCommit.encode();
         String initialID = Utils.sha1(initArray);
         initID = initialID;
+        repoFormat = RAW_FORMAT;
+        journal.write(formatFile, Integer.toString(repoFormat)
+                .getBytes(StandardCharsets.UTF_8));
         saveCommit(initialCommit);
+        messages.rebuild(objects);
         updateHead(initialCommit, initialID);
         _tree.setHeadID(initialID);
         saveBranch(_tree);
@@ -33,62 +57,149 @@ public class Gitlet {
         Gitlet.blobDir.mkdir();
         Gitlet.commitDir.mkdir();
         Gitlet.branchDir.mkdir();
-        File initialized = new File(".gitlet/initialized.txt");
-        try {
-            initialized.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        journal.write(new File(".gitlet/initialized.txt"), new byte[0]);
     }
 
     /** set up all the files to ensure persistence. */
     public static void setupPersistence() {
+        long start = Metrics.start();
         Gitlet.gitletDir.mkdir();
         Gitlet.stagingDir.mkdir();
         Gitlet.blobDir.mkdir();
         Gitlet.commitDir.mkdir();
         Gitlet.branchDir.mkdir();
         Gitlet.remoteDir.mkdir();
+        Gitlet.packDir.mkdir();
+        journal.recover();
+        new Journal(new File(gitletDir, PUSH_JOURNAL)).recover();
+        if (!hookAdded) {
+            Thread.currentThread().setUncaughtExceptionHandler((t, e) -> {
+                commandFailed = true;
+                t.getThreadGroup().uncaughtException(t, e);
+            });
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> {
+                        if (!commandFailed) {
+                            commitMetadata();
+                        }
+                        Metrics.end();
+                    }));
+            hookAdded = true;
+        }
         File initialized = new File(".gitlet/initialized.txt");
         if (initialized.exists()) {
             File stagingFile = new File(".gitlet/staging/stagingArea.txt");
             File currBranchFile = new File(".gitlet/staging/branch");
             headFile = new File(".gitlet/head.txt");
-            staging = Utils.readObject(stagingFile, StagingArea.class);
-            branch = Utils.readObject(currBranchFile, String.class);
+            byte[] stagingBytes = readMetadata(stagingFile);
+            staging = stagingBytes == null ? null
+                : StagingArea.decode(stagingBytes);
+            branch = readMetadata(currBranchFile, String.class);
             _tree = getBranch(branch);
-            headID = Utils.readObject(headFile, String.class);
+            headID = readMetadata(headFile, String.class);
             head = getCommit(headID);
+            if (formatFile.exists()) {
+                repoFormat = Integer.parseInt(
+                        Utils.readContentsAsString(formatFile).trim());
+            }
+            byte[] statBytes = readMetadata(statCacheFile);
+            if (statBytes != null) {
+                statCache = StatCache.decode(statBytes);
+            }
         }
+        Metrics.phase("setup", start);
 
     }
 
     /** adds a blob file and stage it for addition.
      * @param name the name of the file we want to save.*/
     public static void addBlob(String name) {
-        File toAdd = new File(name);
-        if (toAdd.exists()) {
-            String updatedContent = Utils.readContentsAsString(toAdd);
-            Blob currBlob = new Blob(updatedContent);
-            String blobID = Utils.sha1(Utils.serialize(currBlob));
-            if (staging.stagingRMContains(name)) {
+        addBlobs(Collections.singletonList(name));
+    }
+
+    /** adds many files and stage them for addition. The head's files are
+     * listed once up front; the files are then hashed and their blobs
+     * written in parallel on the fork-join pool, and the staging area is
+     * updated in order, in memory, and saved once.
+     * @param names the names of the files we want to save. */
+    public static void addBlobs(List<String> names) {
+        long start = Metrics.start();
+        Map<String, String> tracked = head.getBlobs() == null
+                ? Collections.emptyMap() : head.getBlobs();
+        String[] blobIDs = new String[names.size()];
+        IntStream.range(0, names.size()).parallel().forEach(i ->
+            blobIDs[i] = hashAndSave(names.get(i), tracked));
+        Metrics.phase("add.hash", start);
+        for (int i = 0; i < blobIDs.length; i += 1) {
+            String name = names.get(i);
+            String blobID = blobIDs[i];
+            if (blobID == null) {
+                System.out.println("File does not exist.");
+            } else if (staging.stagingRMContains(name)) {
                 staging.removeFromStagingRm(name);
-                saveStaging();
-                return;
-            }
-            if (head.getBlobs() != null && head.findBlob(name).equals(blobID)) {
+            } else if (blobID.equals(tracked.get(name))) {
                 if (staging.getToAdd().containsKey(name)) {
                     staging.removeFromStagingAdd(name);
                 }
-                saveStaging();
-                return;
+            } else {
+                staging.stageForAddition(name, blobID);
             }
-            staging.stageForAddition(name, blobID);
-            saveBlob(currBlob);
-            saveStaging();
-        } else {
-            System.out.println("File does not exist.");
         }
+        saveStatCache();
+        saveStaging();
+    }
+
+    /** hash a file and save its blob, unless the head already tracks the
+     * same content. Safe to call from several threads at once.
+     * @param name the file name.
+     * @param headFiles map from each file of the head to its blob ID.
+     * @return the blob ID of the file, or null if it does not exist. */
+    private static String hashAndSave(String name,
+                                      Map<String, String> headFiles) {
+        File toAdd = new File(name);
+        if (!toAdd.exists()) {
+            return null;
+        }
+        String blobID = fileBlobID(name);
+        String headID = headFiles.get(name);
+        if (!blobID.equals(headID)) {
+            saveBlob(blobID, toAdd, headID);
+        }
+        return blobID;
+    }
+
+    /** find the blob ID of a file in the working directory, rehashing it
+     * only if its stat data changed since it was last hashed.
+     * @param name the file name.
+     * @return the blob ID of the file's current content. */
+    public static String fileBlobID(String name) {
+        String blobID = statCache.lookup(name);
+        if (blobID == null) {
+            blobID = hashFile(new File(name));
+            statCache.record(name, blobID);
+        }
+        return blobID;
+    }
+
+    /** hash the content of a file into a blob ID. Repositories in the raw
+     * format hash a "blob SIZE" header and the raw bytes, streamed; older
+     * repositories keep hashing the serialized Blob for good, so that the
+     * IDs in their existing commits still match unchanged files.
+     * @param file the file to hash.
+     * @return the blob ID of its content. */
+    public static String hashFile(File file) {
+        if (repoFormat < RAW_FORMAT) {
+            String content = Utils.readContentsAsString(file);
+            return Utils.sha1(Utils.serialize(new Blob(content)));
+        }
+        return Utils.sha1(blobHeader(file.length()), file);
+    }
+
+    /** the header that precedes the raw bytes of a blob object.
+     * @param size the size of the content in bytes.
+     * @return the header. */
+    private static String blobHeader(long size) {
+        return BLOB_TAG + size + "\0";
     }
 
     /** remove file from current head and the CWD.
@@ -99,8 +210,7 @@ public class Gitlet {
             saveStaging();
         } else if (head.containsBlob(filename)) {
             staging.stageForRemoval(filename);
-            File toDelete = new File(filename);
-            Utils.restrictedDelete(toDelete);
+            WorkTree.delete(cwd, filename);
             saveStaging();
         } else {
             System.out.println("No reason to remove the file.");
@@ -113,17 +223,12 @@ public class Gitlet {
         if (staging.isEmpty()) {
             System.out.println("No changes added to the commit.");
         } else {
-            HashMap<String, String> currBlobs = newCommit.getBlobs();
             for (String filename: staging.getToRm()) {
                 newCommit.removeBlob(filename);
             }
             HashMap<String, String> toAdd = staging.getToAdd();
             for (String file: toAdd.keySet()) {
-                if (currBlobs.keySet().contains(file)) {
-                    newCommit.replaceBlobContent(file, toAdd.get(file));
-                } else {
-                    newCommit.addBlob(file, toAdd.get(file));
-                }
+                newCommit.addBlob(file, toAdd.get(file));
             }
             saveCommit(newCommit);
             staging.clearAfterCommit();
@@ -147,9 +252,8 @@ public class Gitlet {
         if (branch.equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
         } else {
-            File toDelete = new File(".gitlet/branches/" + branchName);
-            if (toDelete.exists()) {
-                toDelete.delete();
+            if (getBranch(branchName) != null) {
+                journal.delete(new File(".gitlet/branches/" + branchName));
             } else {
                 System.out.println("A branch with that name does not exist.");
             }
@@ -159,18 +263,18 @@ public class Gitlet {
     /** save the commit object into a file in the commit directory.
      * @param c is the input commit we want to save. */
     public static void saveCommit(Commit c) {
-        byte[] commitArray = Utils.serialize(c);
+        long start = Metrics.start();
+        c.writeTree();
+        Metrics.phase("commit.tree", start);
+        byte[] commitArray = c.encode();
         String commitID = Utils.sha1(commitArray);
-        File commitFile = new File(".gitlet/commits/" + commitID);
-        try {
-            commitFile.createNewFile();
-            Utils.writeObject(commitFile, c);
-            updateHead(c, commitID);
-            _tree.setHeadID(commitID);
-            saveBranch(_tree);
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (!objects.contains(ObjectStore.Kind.COMMIT, commitID)) {
+            objects.write(ObjectStore.Kind.COMMIT, commitID, commitArray);
+            messages.add(commitID, c.getLogMessage());
         }
+        updateHead(c, commitID);
+        _tree.setHeadID(commitID);
+        saveBranch(_tree);
     }
 
     /** save the branch input branch into a file in the branch directory.
@@ -178,33 +282,26 @@ public class Gitlet {
     public static void saveBranch(CommitTree currbranch) {
         File commitFile = new File(".gitlet/branches/"
                 + currbranch.getBranchName());
-        try {
-            commitFile.createNewFile();
-            Utils.writeObject(commitFile, currbranch);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        journal.write(commitFile, Utils.serialize(currbranch));
     }
 
     /** save the staging area into a file in the staging directory. */
     public static void saveStaging() {
         File stagingFile = new File(".gitlet/staging/stagingArea.txt");
-        try {
-            stagingFile.createNewFile();
-            Utils.writeObject(stagingFile, staging);
-        } catch (IOException e) {
-            e.printStackTrace();
+        journal.write(stagingFile, staging.encode());
+    }
+
+    /** save the stat cache into the index file, if it changed. */
+    public static void saveStatCache() {
+        if (statCache.isDirty()) {
+            journal.write(statCacheFile, statCache.encode());
+            statCache.clearDirty();
         }
     }
 
     /** save the current head into a head file. */
     public static void saveHead() {
-        try {
-            headFile.createNewFile();
-            Utils.writeObject(headFile, headID);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        journal.write(headFile, Utils.serialize(headID));
     }
 
     /** update the head after a commit.
@@ -219,12 +316,7 @@ public class Gitlet {
     /** save the current branch we are on in to a file. */
     public static void saveCurrBranch() {
         File currBranchFile = new File(".gitlet/staging/branch");
-        try {
-            currBranchFile.createNewFile();
-            Utils.writeObject(currBranchFile, branch);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        journal.write(currBranchFile, Utils.serialize(branch));
     }
 
     /** update the current branch we are on.
@@ -235,12 +327,17 @@ public class Gitlet {
         saveCurrBranch();
     }
 
-    /** print log on this head commit. */
+    /** print log on this head commit, as far back as a shallow fetch
+     * brought the history. */
     public static void log() {
         Commit curr = head;
         String currID = headID;
+        TreeSet<String> shallow = shallowCommits();
         while (curr != null) {
             logFormat(curr, currID);
+            if (shallow.contains(currID)) {
+                break;
+            }
             currID = curr.getParent();
             curr = getCommit(currID);
         }
@@ -248,8 +345,7 @@ public class Gitlet {
 
     /** print global log. */
     public static void globalLog() {
-        List<String> globalCommits =
-                new ArrayList<>(Utils.plainFilenamesIn(commitDir));
+        List<String> globalCommits = objects.list(ObjectStore.Kind.COMMIT);
         for (int i = 0; i < globalCommits.size(); i += 1) {
             String commitID = globalCommits.get(i);
             Commit currCommit = getCommit(commitID);
@@ -276,50 +372,380 @@ public class Gitlet {
      * @param blobID the blob ID
      * @return the blob object that the id refers to.*/
     public static Blob getBlob(String blobID) {
-        File blobFile = new File(".gitlet/blobs/" + blobID + ".txt");
-        Blob result = null;
-        if (blobFile.exists()) {
-            result = Utils.readObject(blobFile, Blob.class);
+        byte[] content = blobCache.get(blobID);
+        if (content == null) {
+            content = readBlobContent(blobID);
+            if (content == null) {
+                return null;
+            }
         }
-        return result;
+        return new Blob(new String(content, StandardCharsets.UTF_8));
+    }
+
+    /** read the content of a blob from the store, and cache it.
+     * @param blobID the blob ID.
+     * @return its content, or null if there is no such blob. */
+    private static byte[] readBlobContent(String blobID) {
+        byte[] blobArray = objects.read(ObjectStore.Kind.BLOB, blobID);
+        if (blobArray == null) {
+            fetchBlobs(Collections.singletonList(blobID));
+            blobArray = objects.read(ObjectStore.Kind.BLOB, blobID);
+        }
+        if (blobArray == null) {
+            return null;
+        }
+        int start = rawBlobStart(blobArray);
+        byte[] content;
+        if (start < 0) {
+            content = Utils.deserialize(blobArray, Blob.class).getContent()
+                .getBytes(StandardCharsets.UTF_8);
+        } else {
+            content = Arrays.copyOfRange(blobArray, start, blobArray.length);
+        }
+        blobCache.put(blobID, content);
+        return content;
     }
 
-    /** save the blob object into a file in the blob directory.
-     * @param b is the input commit we want to save. */
-    public static void saveBlob(Blob b) {
-        byte[] blobArray = Utils.serialize(b);
-        String blobID = Utils.sha1(blobArray);
-        File commitFile = new File(".gitlet/blobs/" + blobID + ".txt");
+    /** find where the content of a raw blob object starts.
+     * @param blobArray the bytes of a blob object.
+     * @return the offset just past its header, or -1 if the object is a
+     * serialized Blob from an older repository. */
+    private static int rawBlobStart(byte[] blobArray) {
+        byte[] tag = BLOB_TAG.getBytes(StandardCharsets.UTF_8);
+        if (blobArray.length < tag.length) {
+            return -1;
+        }
+        for (int i = 0; i < tag.length; i += 1) {
+            if (blobArray[i] != tag[i]) {
+                return -1;
+            }
+        }
+        for (int i = tag.length; i < blobArray.length; i += 1) {
+            if (blobArray[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** save the content of a file as a blob object, unless it is already
+     * stored. Files small enough to diff in memory are stored as a delta
+     * against the version of the same file in the head commit.
+     * @param blobID the blob ID of the file's content.
+     * @param file the file to save.
+     * @param baseID the blob ID of the file in the head commit, or null if
+     * the head does not track it. */
+    public static void saveBlob(String blobID, File file, String baseID) {
+        if (objects.contains(ObjectStore.Kind.BLOB, blobID)) {
+            return;
+        }
+        if (repoFormat < RAW_FORMAT) {
+            String content = Utils.readContentsAsString(file);
+            objects.writeDelta(ObjectStore.Kind.BLOB, blobID,
+                    Utils.serialize(new Blob(content)), baseID);
+            return;
+        }
+        if (baseID != null && file.length() <= ObjectStore.MAX_DELTA_BYTES) {
+            byte[] header = blobHeader(file.length())
+                    .getBytes(StandardCharsets.UTF_8);
+            byte[] content = Utils.readContents(file);
+            byte[] blobArray = new byte[header.length + content.length];
+            System.arraycopy(header, 0, blobArray, 0, header.length);
+            System.arraycopy(content, 0, blobArray, header.length,
+                    content.length);
+            objects.writeDelta(ObjectStore.Kind.BLOB, blobID, blobArray,
+                    baseID);
+            return;
+        }
         try {
-            commitFile.createNewFile();
-            Utils.writeObject(commitFile, b);
+            byte[] header = blobHeader(file.length())
+                    .getBytes(StandardCharsets.UTF_8);
+            objects.write(ObjectStore.Kind.BLOB, blobID, header,
+                    FileChannel.open(file.toPath(), StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** write the content of a blob into a file, streaming it through a
+     * bounded buffer so that files of any size can be checked out.
+     * @param blobID the blob to write.
+     * @param target the file to create or overwrite. */
+    private static void writeBlob(String blobID, File target) {
+        File parent = target.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            copyBlob(blobID, out);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** append the content of a blob to a channel. Raw blobs are streamed
+     * past their header; serialized Blobs from older repositories are
+     * decoded whole.
+     * @param blobID the blob to copy.
+     * @param out the channel to write to.
+     * @throws IOException if reading or writing fails. */
+    private static void copyBlob(String blobID, WritableByteChannel out)
+        throws IOException {
+        byte[] cached = blobCache.get(blobID);
+        if (cached != null) {
+            writeFully(out, ByteBuffer.wrap(cached));
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(BLOB_HEADER_MAX);
+        ReadableByteChannel opened = objects.open(ObjectStore.Kind.BLOB,
+                blobID);
+        if (opened == null) {
+            fetchBlobs(Collections.singletonList(blobID));
+            opened = objects.open(ObjectStore.Kind.BLOB, blobID);
+        }
+        try (ReadableByteChannel in = opened) {
+            if (in == null) {
+                throw Utils.error("Missing blob %s.", blobID);
+            }
+            while (buf.hasRemaining() && in.read(buf) >= 0) {
+                continue;
+            }
+            byte[] start = new byte[buf.position()];
+            buf.flip();
+            buf.get(start);
+            int contentStart = rawBlobStart(start);
+            if (contentStart >= 0) {
+                int tagEnd = BLOB_TAG.length();
+                long size = Long.parseLong(new String(start, tagEnd,
+                        contentStart - 1 - tagEnd, StandardCharsets.UTF_8));
+                if (size > MAX_CACHED_BLOB) {
+                    writeFully(out, ByteBuffer.wrap(start, contentStart,
+                            start.length - contentStart));
+                    ObjectStore.copy(in, out);
+                    return;
+                }
+                ByteBuffer content = ByteBuffer.allocate((int) size);
+                content.put(start, contentStart, start.length - contentStart);
+                while (content.hasRemaining() && in.read(content) >= 0) {
+                    continue;
+                }
+                blobCache.put(blobID, content.array());
+                content.flip();
+                writeFully(out, content);
+                return;
+            }
+        }
+        writeFully(out, ByteBuffer.wrap(readBlobContent(blobID)));
+    }
+
+    /** write all of a buffer to a channel.
+     * @param out the channel to write to.
+     * @param buf the bytes to write.
+     * @throws IOException if writing fails. */
+    private static void writeFully(WritableByteChannel out, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
         }
     }
 
     /** Find a commit object from commit files with the following commitID.
-     * @param commitID the commit ID.
+     * @param commitID the commit ID, or any unique prefix of it at least
+     * four digits long.
      * @return the commit object this ID refers to. */
     public static Commit getCommit(String commitID) {
-        File commitFile = null;
         Commit result = null;
-        if (commitID != null && commitID.length() == 8) {
-            List<String> commits =
-                    new ArrayList<>(Utils.plainFilenamesIn(commitDir));
-            for (String cID: commits) {
-                if (cID.substring(0, 8).equals(commitID)) {
-                    commitFile = new File(".gitlet/commits/" + cID);
-                    break;
+        if (commitID != null && commitID.length() < Utils.UID_LENGTH) {
+            commitID = objects.resolve(ObjectStore.Kind.COMMIT, commitID);
+        }
+        if (commitID == null) {
+            return null;
+        }
+        result = commitCache.get(commitID);
+        if (result != null) {
+            return result;
+        }
+        byte[] commitArray = objects.read(ObjectStore.Kind.COMMIT, commitID);
+        if (commitArray != null) {
+            result = Commit.decode(commitArray);
+            commitCache.put(commitID, result);
+        }
+        return result;
+    }
+
+    /** the commit-graph, opened the first time it is needed.
+     * @return the graph, or null if gc has not written one. */
+    private static CommitGraph graph() {
+        if (!graphLoaded) {
+            graph = CommitGraph.load(graphFile);
+            graphLoaded = true;
+        }
+        return graph;
+    }
+
+    /** find the first parent of a commit, through the commit-graph if it
+     * holds the commit.
+     * @param commitID the commit ID.
+     * @return the ID of its first parent, or null if it has none or does
+     * not exist. */
+    public static String firstParent(String commitID) {
+        CommitGraph g = graph();
+        int i = g == null ? CommitGraph.NONE : g.find(commitID);
+        if (i >= 0) {
+            int p = g.parent(i);
+            return p == CommitGraph.NONE ? null : g.id(p);
+        }
+        Commit c = getCommit(commitID);
+        return c == null ? null : c.getParent();
+    }
+
+    /** check whether one commit is reachable from another by following
+     * parents. Commits in the commit-graph are walked by record number,
+     * skipping any whose generation is too low to reach the ancestor;
+     * only commits made since the last gc are read from the store.
+     * @param ancestorID the possible ancestor.
+     * @param commitID the commit to start from.
+     * @return whether ANCESTORID is COMMITID or one of its ancestors. */
+    public static boolean isAncestor(String ancestorID, String commitID) {
+        if (ancestorID == null || commitID == null) {
+            return false;
+        }
+        CommitGraph g = graph();
+        int target = g == null ? CommitGraph.NONE : g.find(ancestorID);
+        int minGen = target < 0 ? Integer.MAX_VALUE : g.generation(target);
+        ArrayDeque<String> loose = new ArrayDeque<>();
+        HashSet<String> seenLoose = new HashSet<>();
+        ArrayDeque<Integer> packed = new ArrayDeque<>();
+        BitSet seenPacked = new BitSet();
+        loose.push(commitID);
+        seenLoose.add(commitID);
+        while (!loose.isEmpty() || !packed.isEmpty()) {
+            if (!loose.isEmpty()) {
+                String id = loose.pop();
+                if (id.equals(ancestorID)) {
+                    return true;
+                }
+                int i = g == null ? CommitGraph.NONE : g.find(id);
+                if (i >= 0) {
+                    if (!seenPacked.get(i)) {
+                        seenPacked.set(i);
+                        packed.push(i);
+                    }
+                    continue;
+                }
+                Commit c = getCommit(id);
+                if (c == null) {
+                    continue;
+                }
+                for (String p : new String[] {c.getParent(), c.getParent2()}) {
+                    if (p != null && seenLoose.add(p)) {
+                        loose.push(p);
+                    }
+                }
+            } else {
+                int i = packed.pop();
+                if (i == target) {
+                    return true;
+                }
+                if (g.generation(i) <= minGen) {
+                    continue;
+                }
+                for (int p : new int[] {g.parent(i), g.parent2(i)}) {
+                    if (p != CommitGraph.NONE && !seenPacked.get(p)) {
+                        seenPacked.set(p);
+                        packed.push(p);
+                    }
                 }
             }
-        } else {
-            commitFile = new File(".gitlet/commits/" + commitID);
         }
-        if (commitFile != null && commitFile.exists()) {
-            result = Utils.readObject(commitFile, Commit.class);
+        return false;
+    }
+
+    /** apply every metadata change the command made, all together. Called
+     * once as the command finishes, by the shutdown hook set up in
+     * setupPersistence, unless the command ended with an uncaught
+     * exception. */
+    public static void commitMetadata() {
+        long start = Metrics.start();
+        journal.commit();
+        Metrics.phase("journal.apply", start);
+    }
+
+    /** drop the metadata changes of a command that failed, leaving the
+     * repository as it was before the command. */
+    public static void discardMetadata() {
+        journal.discard();
+    }
+
+    /** drop what was read from the packs, the commit-graph and the
+     * message index if some other process has changed them since
+     * markFresh; for a process that runs many commands. Cached commits
+     * and blobs are kept, since objects never change once written.
+     * Metadata is read again by setupPersistence for every command. */
+    public static void refresh() {
+        if (!repositoryStamp().equals(freshStamp)) {
+            objects = new ObjectStore(gitletDir);
+            graph = null;
+            graphLoaded = false;
+            messages = new MessageIndex(new File(".gitlet/messages"));
+            repoFormat = LEGACY_FORMAT;
         }
-        return result;
+    }
+
+    /** record the state of the files refresh watches, once this process
+     * has finished changing them. */
+    public static void markFresh() {
+        freshStamp = repositoryStamp();
+    }
+
+    /** describe the files whose contents are kept in memory between
+     * commands: the packs, the commit-graph, the message index and the
+     * format file.
+     * @return their names, sizes and modification times. */
+    private static String repositoryStamp() {
+        StringBuilder result = new StringBuilder();
+        List<File> files = new ArrayList<>();
+        File[] packs = packDir.listFiles();
+        if (packs != null) {
+            Arrays.sort(packs);
+            files.addAll(Arrays.asList(packs));
+        }
+        files.add(graphFile);
+        files.add(new File(".gitlet/messages"));
+        files.add(formatFile);
+        for (File f : files) {
+            result.append(f.getName()).append(' ').append(f.length())
+                .append(' ').append(f.lastModified()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** read a metadata file, as changed so far by the current command.
+     * @param file the file.
+     * @param expectedClass the class of the object it holds.
+     * @param <T> the type of that object.
+     * @return the object, or null if the file does not exist. */
+    private static <T extends Serializable> T readMetadata(
+        File file, Class<T> expectedClass) {
+        byte[] contents = readMetadata(file);
+        return contents == null ? null
+            : Utils.deserialize(contents, expectedClass);
+    }
+
+    /** read the bytes of a metadata file, as the journal has them if it
+     * holds a change to it.
+     * @param file the metadata file.
+     * @return its contents, or null if there is no such file. */
+    private static byte[] readMetadata(File file) {
+        if (journal.contains(file)) {
+            return journal.get(file);
+        }
+        if (!file.exists()) {
+            return null;
+        }
+        return Utils.readContents(file);
     }
 
     /** find commitTree object in branch file with input branch name.
@@ -327,31 +753,48 @@ public class Gitlet {
      * @return the object that the branch refers to.*/
     public static CommitTree getBranch(String branchName) {
         File branchFile = new File(".gitlet/branches/" + branchName);
-        CommitTree result = null;
-        if (branchFile.exists()) {
-            result = Utils.readObject(branchFile, CommitTree.class);
-        }
-        return result;
+        return readMetadata(branchFile, CommitTree.class);
     }
 
     /** process the find command.
      * @param message the message we want to look for. */
     public static void findMessage(String message) {
-        boolean foundIt = false;
-        List<String> globalCommits = Utils.plainFilenamesIn(commitDir);
-        for (int i = 0; i < globalCommits.size(); i += 1) {
-            String commitID = globalCommits.get(i);
-            Commit currCommit = getCommit(commitID);
-            if (currCommit.getLogMessage().equals(message)) {
-                System.out.println(commitID);
-                foundIt = true;
-            }
+        printFound(messageIndex().find(message));
+    }
+
+    /** process a find over the words of commit messages.
+     * @param query the words every message found must contain. */
+    public static void searchMessages(String query) {
+        printFound(messageIndex().search(query));
+    }
+
+    /** process a find over any part of commit messages.
+     * @param text the text every message found must contain. */
+    public static void findMessageContaining(String text) {
+        printFound(messageIndex().containing(text));
+    }
+
+    /** print the commits a find turned up.
+     * @param found the commit IDs. */
+    private static void printFound(List<String> found) {
+        for (String commitID : found) {
+            System.out.println(commitID);
         }
-        if (!foundIt) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
 
+    /** the message index, built from every commit if this repository
+     * predates it or a command killed while adding to it left it torn.
+     * @return the index. */
+    private static MessageIndex messageIndex() {
+        if (!messages.exists() || messages.isTorn()) {
+            messages.rebuild(objects);
+        }
+        return messages;
+    }
+
     /** get current status on branches, staging, and untracked files. */
     public static void status() {
         System.out.println("=== Branches ===");
@@ -381,36 +824,58 @@ public class Gitlet {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        LinkedHashMap<String, BasicFileAttributes> walked = statFilesInCWD();
         HashMap<String, String> trackedByPrev = head.getBlobs();
         if (trackedByPrev != null) {
-            for (String file : trackedByPrev.keySet()) {
-                File curr = new File(file);
-                if (curr.exists()) {
-                    String currContent = Utils.readContentsAsString(curr);
-                    Blob currBlob = new Blob(currContent);
-                    String blobID = Utils.sha1(Utils.serialize(currBlob));
-                    if (!staging.getToAdd().containsKey(file)
-                            && !staging.getToRm().contains(file)
-                            && head.getBlobs() != null
-                            && !head.findBlob(file).equals(blobID)) {
-                        System.out.println(file + " (modified)");
-                    }
+            long start = Metrics.start();
+            List<String> tracked = new ArrayList<>(trackedByPrev.keySet());
+            String[] changes = new String[tracked.size()];
+            IntStream.range(0, tracked.size()).parallel().forEach(i ->
+                changes[i] = unstagedChange(tracked.get(i),
+                        trackedByPrev.get(tracked.get(i)),
+                        walked.get(tracked.get(i))));
+            Metrics.phase("status.compare", start);
+            for (String change : changes) {
+                if (change != null) {
+                    System.out.println(change);
                 }
-                if (!staging.getToRm().contains(file) && !curr.exists()) {
-                    System.out.println(file + " (deleted)");
-                }
-
             }
         }
+        saveStatCache();
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        List<String> untracked = getUntrackedFiles();
+        List<String> untracked = getUntrackedFiles(walked.keySet());
         for (String file: untracked) {
             System.out.println(file);
         }
         System.out.println();
     }
 
+    /** describe how a tracked file was changed in the working directory
+     * without the change being staged. Safe to call from several threads
+     * at once.
+     * @param file the file name.
+     * @param blobID its blob ID in the head commit.
+     * @param attrs the file's attributes from a walk of the working
+     * tree, or null if the walk did not find it.
+     * @return the status line for the file, or null if it is unchanged. */
+    private static String unstagedChange(String file, String blobID,
+                                         BasicFileAttributes attrs) {
+        if (blobID.equals(statCache.lookup(file, attrs))) {
+            return null;
+        }
+        if (!new File(file).exists()) {
+            return staging.getToRm().contains(file)
+                ? null : file + " (deleted)";
+        }
+        if (staging.getToAdd().containsKey(file)
+                || staging.getToRm().contains(file)
+                || fileBlobID(file).equals(blobID)) {
+            return null;
+        }
+        return file + " (modified)";
+    }
+
     /** checkout file based on the commit.
      * @param commitID the commit ID that we want to search in.
      * @param fileName the specific file we want to checkout. */
@@ -428,17 +893,8 @@ public class Gitlet {
         if (toFind.containsBlob(fileName)) {
             File newFile = new File(fileName);
             String blobID = toFind.findBlob(fileName);
-            Blob toOverWrite = getBlob(blobID);
-            if (newFile.exists()) {
-                Utils.writeContents(newFile, toOverWrite.getContent());
-            } else {
-                try {
-                    newFile.createNewFile();
-                    Utils.writeContents(newFile, toOverWrite.getContent());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            writeBlob(blobID, newFile);
+            statCache.record(fileName, blobID);
         } else {
             System.out.println("File does not exist in that commit.");
         }
@@ -465,25 +921,80 @@ public class Gitlet {
         } else {
             String newHeadID = desiredBranch.getHeadID();
             Commit newHead = getCommit(newHeadID);
-            HashMap<String, String> blobs = newHead.getBlobs();
-            if (blobs != null) {
-                for (String file : blobs.keySet()) {
-                    checkoutFile(newHeadID, file);
-                }
-            }
-            if (head.getBlobs() != null) {
-                for (String file: head.getBlobs().keySet()) {
-                    if (!newHead.containsBlob(file)) {
-                        Utils.restrictedDelete(file);
-                    }
-                }
-            }
+            checkoutCommit(newHead);
             updateHead(newHead, newHeadID);
             updateBranch(branchName);
             saveCurrBranch();
             staging.clearAfterCommit();
             saveStaging();
+            saveStatCache();
+        }
+    }
+
+    /** make the working directory match a commit. The files that differ
+     * between the head's tree and the commit's are found by comparing the
+     * trees, skipping shared subtrees, and tracked files that are the same
+     * in both are rewritten only if they were changed in the working
+     * directory. Files the commit does not track are deleted first; the
+     * blobs of the rest that a partial fetch left out are fetched in one
+     * batch, and then they are written by a bounded pool of
+     * CHECKOUT_THREADS threads, each streaming one blob at a time, so
+     * memory stays bounded however many files change.
+     * @param target the commit to check out.
+     * @return the files the commit tracks. */
+    private static HashMap<String, String> checkoutCommit(Commit target) {
+        long start = Metrics.start();
+        TreeMap<String, String> changes = new TreeMap<>();
+        Tree.diff(objects, head.getTreeID(), target.getTreeID(), "",
+                changes);
+        HashMap<String, String> blobs = target.getBlobs();
+        if (blobs == null) {
+            blobs = new HashMap<>();
+        }
+        List<String> same = new ArrayList<>();
+        for (String file : blobs.keySet()) {
+            if (!changes.containsKey(file)) {
+                same.add(file);
+            }
+        }
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                WorkTree.delete(cwd, e.getKey());
+            } else {
+                writes.add(e.getKey());
+            }
         }
+        Metrics.phase("checkout.diff", start);
+        start = Metrics.start();
+        HashMap<String, String> targetBlobs = blobs;
+        ForkJoinPool pool = new ForkJoinPool(CHECKOUT_THREADS);
+        try {
+            boolean[] dirty = new boolean[same.size()];
+            pool.submit(() -> IntStream.range(0, same.size()).parallel()
+                    .forEach(i -> dirty[i] = !new File(same.get(i)).isFile()
+                        || !fileBlobID(same.get(i))
+                            .equals(targetBlobs.get(same.get(i))))).join();
+            for (int i = 0; i < dirty.length; i += 1) {
+                if (dirty[i]) {
+                    writes.add(same.get(i));
+                }
+            }
+            List<String> needed = new ArrayList<>();
+            for (String file : writes) {
+                needed.add(targetBlobs.get(file));
+            }
+            fetchBlobs(needed);
+            pool.submit(() -> writes.parallelStream().forEach(file -> {
+                String blobID = targetBlobs.get(file);
+                writeBlob(blobID, new File(file));
+                statCache.record(file, blobID);
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        Metrics.phase("checkout.write", start);
+        return blobs;
     }
 
     /** reset to previous commit by checking out all files in that commit
@@ -497,18 +1008,17 @@ public class Gitlet {
                     + "delete it, or add and commit it first. ");
             return;
         }
+        if (commitID.length() < Utils.UID_LENGTH) {
+            commitID = objects.resolve(ObjectStore.Kind.COMMIT, commitID);
+        }
         Commit toCheckout = getCommit(commitID);
         if (toCheckout == null) {
             System.out.println("No commit with that id exists.");
         } else {
-            HashMap<String, String> blobs = toCheckout.getBlobs();
-            for (String file: blobs.keySet()) {
-                checkoutFile(commitID, file);
-            }
+            HashMap<String, String> blobs = checkoutCommit(toCheckout);
             for (String file: getFilesInCWD()) {
                 if (!blobs.containsKey(file)) {
-                    File toDelete = new File(file);
-                    Utils.restrictedDelete(toDelete);
+                    WorkTree.delete(cwd, file);
                 }
             }
             updateHead(toCheckout, commitID);
@@ -517,6 +1027,7 @@ public class Gitlet {
             saveCurrBranch();
             staging.clearAfterCommit();
             saveStaging();
+            saveStatCache();
         }
     }
     /** merge errors.
@@ -546,51 +1057,38 @@ public class Gitlet {
     }
     /** merge errors.
      * @param otherBranchName the branch name.
-     * @param otherBranch the other branch.
      * @param otherHeadID the other head id.
+     * @param splitPointID the split point id.
      * @return whether there is an error. */
     public static boolean mergeErrors2(String otherBranchName,
-                                      CommitTree otherBranch,
-                                      String otherHeadID) {
-        if (otherBranch.getSplitpoint() != null
-                && _tree.containsCommit(otherHeadID)) {
+                                      String otherHeadID,
+                                      String splitPointID) {
+        if (splitPointID == null && !shallowCommits().isEmpty()) {
+            System.out.println("Cannot merge: no common ancestor within "
+                    + "the shallow history; fetch more of it.");
+            return true;
+        }
+        if (otherHeadID.equals(splitPointID)) {
             System.out.println("Given branch is an ancestor "
                     + "of the current branch.");
             return true;
         }
-        if (_tree.getSplitpoint() != null
-                && otherBranch.containsCommit(headID)) {
+        if (headID.equals(splitPointID)) {
             System.out.println("Current branch fast-forwarded.");
             checkoutBranch(otherBranchName);
             return true;
         }
         return false;
     }
-    /** helper function of merge.
-     * @param otherHead the other head.
+    /** helper function of merge: find the latest common ancestor of the
+     * current head and the other head, over both parents of merges.
      * @param otherHeadID the other head ID.
-     * @param otherBranch the other branch.
-     * @return splitPoint commit. */
-    public static Commit findSplitPoint(Commit otherHead, String otherHeadID,
-                                        CommitTree otherBranch) {
-        String currHeadParent1 = otherHead.getParent();
-        String currHeadParent2 = otherHead.getParent2();
-        String splitPointID = otherBranch.getSplitpoint();
-        Commit other = otherHead;
-        String otherID = otherHeadID;
-        while (other != null) {
-            if (otherID.equals(currHeadParent1)) {
-                splitPointID = currHeadParent1;
-                break;
-            }
-            if (otherID.equals(currHeadParent2)) {
-                splitPointID = currHeadParent2;
-                break;
-            }
-            otherID = other.getParent();
-            other = getCommit(otherID);
-        }
-        return getCommit(splitPointID);
+     * @return the split point ID, or null if there is none. */
+    public static String findSplitPoint(String otherHeadID) {
+        long start = Metrics.start();
+        String result = new MergeBase(graph()).find(headID, otherHeadID);
+        Metrics.phase("merge.base", start);
+        return result;
     }
     /** merge helper, deal with files present in otherHead.
      * @param currHeadFiles files in current head.
@@ -641,7 +1139,7 @@ public class Gitlet {
                                 otherHead.findBlob(file));
                         saveStaging();
                     } else {
-                        if (getFilesInCWD().contains(file)) {
+                        if (new File(file).isFile()) {
                             removeFile(file);
                         }
                         staging.stageForRemoval(file);
@@ -693,7 +1191,7 @@ public class Gitlet {
                         mergeConflict(head, file, otherHead, "empty");
                         conflictedMerge = true;
                     } else {
-                        if (getFilesInCWD().contains(file)) {
+                        if (new File(file).isFile()) {
                             removeFile(file);
                         }
                         staging.stageForRemoval(file);
@@ -710,7 +1208,7 @@ public class Gitlet {
                         conflictedMerge = true;
                     } else {
                         if (!staging.getToAdd().containsKey(file)) {
-                            if (getFilesInCWD().contains(file)) {
+                            if (new File(file).isFile()) {
                                 removeFile(file);
                             }
                             staging.stageForRemoval(file);
@@ -733,10 +1231,12 @@ public class Gitlet {
         CommitTree otherBranch = getBranch(otherBranchName);
         String otherHeadID = otherBranch.getHeadID();
         Commit otherHead = getCommit(otherHeadID);
-        Commit splitPoint = findSplitPoint(otherHead, otherHeadID, otherBranch);
-        if (mergeErrors2(otherBranchName, otherBranch, otherHeadID)) {
+        String splitPointID = findSplitPoint(otherHeadID);
+        if (mergeErrors2(otherBranchName, otherHeadID, splitPointID)) {
             return;
         }
+        fetchMergeBlobs(otherHead);
+        Commit splitPoint = getCommit(splitPointID);
         HashMap<String, String> otherHeadFiles = otherHead.getBlobs();
         HashMap<String, String> splitPointFiles = null;
         if (splitPoint != null) {
@@ -757,15 +1257,37 @@ public class Gitlet {
         String message = "Merged " + otherBranchName + " into " + branch + ".";
         Commit merge = new Commit(message, headID, otherHeadID);
         addCommit(merge);
-        byte[] mergeArray = Utils.serialize(merge);
+        byte[] mergeArray = merge.encode();
         String mergeID = Utils.sha1(mergeArray);
         updateHead(merge, mergeID);
         saveHead();
+        saveStatCache();
         if (conflictedMerge) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
+    /** fetch, in one batch, the blobs left out by a partial fetch that a
+     * merge may read: both versions of each file that differs between
+     * the head and the other head.
+     * @param otherHead the other head. */
+    private static void fetchMergeBlobs(Commit otherHead) {
+        if (promisor() == null) {
+            return;
+        }
+        TreeMap<String, String> changes = new TreeMap<>();
+        Tree.diff(objects, head.getTreeID(), otherHead.getTreeID(), "",
+                changes);
+        List<String> needed = new ArrayList<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            needed.add(e.getValue());
+            if (head.containsBlob(e.getKey())) {
+                needed.add(head.findBlob(e.getKey()));
+            }
+        }
+        fetchBlobs(needed);
+    }
+
     /** deals with merge conflict by combining 2 different files.
      * @param c1 current commit file, whose content we want first.
      * @param file1 the file ID in current commit.
@@ -775,34 +1297,43 @@ public class Gitlet {
     public static void mergeConflict(Commit c1, String file1,
                                      Commit c2, String file2) {
         String header = "<<<<<<< HEAD\n";
-        String content1 = "";
-        String content2 = "";
-        if (!file1.equals("empty")) {
-            String blobID = c1.findBlob(file1);
-            File b1 = new File(".gitlet/blobs/" + blobID + ".txt");
-            Blob blob1 = Utils.readObject(b1, Blob.class);
-            content1 += blob1.getContent();
-        }
         String middle = "=======\n";
-        if (!file2.equals("empty")) {
-            String blobID = c2.findBlob(file2);
-            File b2 = new File(".gitlet/blobs/" + blobID + ".txt");
-            Blob blob1 = Utils.readObject(b2, Blob.class);
-            content2 += blob1.getContent();
-        }
         String footer = ">>>>>>>\n";
-        String overall = header + content1 + middle + content2 + footer;
         File toReplace = new File(file1);
-        Utils.writeContents(toReplace, overall);
+        try (FileChannel out = FileChannel.open(toReplace.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.wrap(
+                    header.getBytes(StandardCharsets.UTF_8)));
+            if (!file1.equals("empty")) {
+                copyBlob(c1.findBlob(file1), out);
+            }
+            writeFully(out, ByteBuffer.wrap(
+                    middle.getBytes(StandardCharsets.UTF_8)));
+            if (!file2.equals("empty")) {
+                copyBlob(c2.findBlob(file2), out);
+            }
+            writeFully(out, ByteBuffer.wrap(
+                    footer.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
         addBlob(file1);
     }
 
     /** return a list of untracked files in the current working directory. */
     public static List<String> getUntrackedFiles() {
+        return getUntrackedFiles(getFilesInCWD());
+    }
+
+    /** return a list of the untracked files among some files.
+     * @param from the files of the working directory. */
+    private static List<String> getUntrackedFiles(Collection<String> from) {
         List<String> result = new ArrayList<>();
-        List<String> from = getFilesInCWD();
+        HashMap<String, String> tracked = head.getBlobs();
         for (String file: from) {
-            if (!head.containsBlob(file) && !staging.stagingAddContains(file)
+            if ((tracked == null || !tracked.containsKey(file))
+                    && !staging.stagingAddContains(file)
                     && !staging.stagingRMContains(file)) {
                 result.add(file);
             }
@@ -810,9 +1341,30 @@ public class Gitlet {
         return result;
     }
 
-    /** return a list of files in the working directory. */
+    /** return a list of files in the working directory and, at any depth,
+     * its subdirectories, leaving out ignored ones. */
     public static List<String> getFilesInCWD() {
-        return new ArrayList<>(Utils.plainFilenamesIn("."));
+        long start = Metrics.start();
+        List<String> result = new WorkTree(cwd).files();
+        Metrics.phase("worktree.walk", start);
+        return result;
+    }
+
+    /** return the files getFilesInCWD does, with the attributes the walk
+     * read for each. */
+    private static LinkedHashMap<String, BasicFileAttributes>
+        statFilesInCWD() {
+        long start = Metrics.start();
+        LinkedHashMap<String, BasicFileAttributes> result =
+            new WorkTree(cwd).stat();
+        Metrics.phase("worktree.walk", start);
+        return result;
+    }
+
+    /** accessor for the object store of this repository.
+     * @return the store. */
+    public static ObjectStore getObjects() {
+        return objects;
     }
 
     /** accessor method for head ID.
@@ -826,15 +1378,10 @@ public class Gitlet {
      * @param path the remote path of the new remote.*/
     public static void addRemote(String remoteName, String path) {
         File remote = new File(".gitlet/remotes/" + remoteName);
-        if (remote.exists()) {
+        if (readMetadata(remote, String.class) != null) {
             System.out.println("A remote with that name already exists.");
         } else {
-            try {
-                remote.createNewFile();
-                Utils.writeObject(remote, path);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            journal.write(remote, Utils.serialize(path));
         }
     }
 
@@ -842,8 +1389,8 @@ public class Gitlet {
      * @param remoteName the remote pointer we want to remove. */
     public static void rmRemote(String remoteName) {
         File remote = new File(".gitlet/remotes/" + remoteName);
-        if (remote.exists()) {
-            remote.delete();
+        if (readMetadata(remote, String.class) != null) {
+            journal.delete(remote);
         } else {
             System.out.println("A remote with that name does not exist.");
         }
@@ -854,7 +1401,11 @@ public class Gitlet {
      * @param remoteBranchName the name of branch in the remote directory. */
     public static void push(String remoteName, String remoteBranchName) {
         File remote = new File(".gitlet/remotes/" + remoteName);
-        String remotePath = Utils.readObject(remote, String.class);
+        String remotePath = readMetadata(remote, String.class);
+        if (BundleRemote.isURL(remotePath)) {
+            pushBundle(remotePath, remoteBranchName);
+            return;
+        }
         File remoteFile = new File(remotePath);
         if (!remoteFile.exists()) {
             System.out.println("Remote directory not found.");
@@ -862,63 +1413,84 @@ public class Gitlet {
         }
         File remoteHeadFile = new File(remotePath + "/head.txt");
         String remoteHeadID = Utils.readObject(remoteHeadFile, String.class);
-        if (!_tree.containsCommit(remoteHeadID)) {
+        if (!isAncestor(remoteHeadID, headID)) {
             System.out.println("Please pull down remote changes "
                     + "before pushing.");
             return;
         }
         File remoteBranchFile = new File(remotePath
                 + "/branches/" + remoteBranchName);
-        CommitTree remoteBranch = null;
+        CommitTree remoteBranch;
         if (!remoteBranchFile.exists()) {
-            try {
-                remoteBranchFile.createNewFile();
-                remoteBranch = new CommitTree(remoteBranchName, initID);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            remoteBranch = new CommitTree(remoteBranchName, initID);
         } else {
             remoteBranch = Utils.readObject(remoteBranchFile, CommitTree.class);
         }
-        List<String> allCommits = Utils.plainFilenamesIn(commitDir);
-        for (String commitID: allCommits) {
-            File currRemote = new File(remotePath + "/commits/" + commitID);
-            File currLocal = new File(".gitlet/commits/" + commitID);
-            if (!currRemote.exists()) {
-                try {
-                    currRemote.createNewFile();
-                    Commit c = Utils.readObject(currLocal, Commit.class);
-                    Utils.writeObject(currRemote, c);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        ObjectStore remoteObjects = new ObjectStore(remoteFile);
+        MessageIndex remoteMessages =
+            new MessageIndex(new File(remoteFile, "messages"));
+        Transfer transfer = new Transfer(objects, remoteObjects);
+        transfer.setShallow(shallowCommits(),
+                readShallow(new File(remoteFile, "shallow")));
+        transfer.want(headID);
+        if (!transfer.getShallow().isEmpty()) {
+            System.out.println(SHALLOW_PUSH);
+            return;
         }
-        List<String> allBlobs = Utils.plainFilenamesIn(blobDir);
-        for (String blobID: allBlobs) {
-            File currRemote = new File(remotePath + "/blobs/" + blobID);
-            File currLocal = new File(".gitlet/blobs/" + blobID);
-            if (!currRemote.exists()) {
-                try {
-                    currRemote.createNewFile();
-                    Blob currContent = Utils.readObject(currLocal, Blob.class);
-                    Utils.writeObject(currRemote, currContent);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        fetchBlobs(transfer.getBlobs());
+        for (String id : transfer.copy()) {
+            remoteMessages.add(id, getCommit(id).getLogMessage());
         }
-        Utils.writeObject(remoteHeadFile, headID);
+        Journal remoteJournal =
+            new Journal(new File(remoteFile, PUSH_JOURNAL));
+        remoteJournal.write(remoteHeadFile, Utils.serialize(headID));
         remoteBranch.setHeadID(headID);
-        Utils.writeObject(remoteBranchFile, remoteBranch);
+        remoteJournal.write(remoteBranchFile, Utils.serialize(remoteBranch));
+        remoteJournal.commit();
     }
 
     /** process the fetch command.
      * @param remoteName the name of the remote name.
      * @param remoteBranchName the name of branch in the remote directory. */
     public static void fetch(String remoteName, String remoteBranchName) {
+        fetch(remoteName, remoteBranchName, 0);
+    }
+
+    /** process the fetch command with --depth: fetch only the commits
+     * within DEPTH of the head of the remote branch, and the files they
+     * track. Commits whose parents are left out are recorded as shallow,
+     * and log and merge stop at them; a later fetch with a larger depth,
+     * or none, fills in the history behind them.
+     * @param remoteName the name of the remote name.
+     * @param remoteBranchName the name of branch in the remote directory.
+     * @param depth the number of commits to fetch along each line of
+     * history, or 0 for all of them. */
+    public static void fetch(String remoteName, String remoteBranchName,
+                             int depth) {
+        fetch(remoteName, remoteBranchName, depth, true);
+    }
+
+    /** process the fetch command, with --depth as above, and with
+     * --filter=blob:none if BLOBS is false: fetch the commits and trees
+     * of the branch but no blobs. The remote is recorded as the one to
+     * fetch missing blobs from, and each is fetched the first time a
+     * command needs its contents, batched with the others it needs: a
+     * checkout fetches the files it writes, and a merge both versions of
+     * each file that differs between the heads.
+     * @param remoteName the name of the remote name.
+     * @param remoteBranchName the name of branch in the remote directory.
+     * @param depth the number of commits to fetch along each line of
+     * history, or 0 for all of them.
+     * @param blobs whether to fetch blobs. */
+    public static void fetch(String remoteName, String remoteBranchName,
+                             int depth, boolean blobs) {
         File remote = new File(".gitlet/remotes/" + remoteName);
-        String remotePath = Utils.readObject(remote, String.class);
+        String remotePath = readMetadata(remote, String.class);
+        if (BundleRemote.isURL(remotePath)) {
+            fetchBundle(remoteName, remotePath, remoteBranchName, depth,
+                    blobs);
+            return;
+        }
         File remoteFile = new File(remotePath);
         if (!remoteFile.exists()) {
             System.out.println("Remote directory not found.");
@@ -931,43 +1503,23 @@ public class Gitlet {
             return;
         }
         CommitTree remoteB = Utils.readObject(remoteBFile, CommitTree.class);
-        List<String> allC = Utils.plainFilenamesIn(remotePath + "/commits/");
-        for (String commitID: allC) {
-            File currLocal = new File(".gitlet/commits/" + commitID);
-            File currRemote = new File(remotePath + "/commits/" + commitID);
-            if (!currLocal.exists()) {
-                try {
-                    currLocal.createNewFile();
-                    Commit c = Utils.readObject(currRemote, Commit.class);
-                    Utils.writeObject(currLocal, c);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        List<String> allBlobs = Utils.plainFilenamesIn(remotePath + "/blobs/");
-        for (String blobID: allBlobs) {
-            File currRemote = new File(remotePath + "/blobs/" + blobID);
-            File currLocal = new File(".gitlet/blobs/" + blobID);
-            if (!currLocal.exists()) {
-                try {
-                    currRemote.createNewFile();
-                    Blob currContent = Utils.readObject(currRemote, Blob.class);
-                    Utils.writeObject(currLocal, currContent);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        ObjectStore remoteObjects = new ObjectStore(remoteFile);
+        Transfer transfer = new Transfer(remoteObjects, objects);
+        transfer.setShallow(readShallow(new File(remoteFile, "shallow")),
+                shallowCommits());
+        transfer.setBlobs(blobs);
+        transfer.want(remoteB.getHeadID(), depth);
+        for (String id : transfer.copy()) {
+            messages.add(id, getCommit(id).getLogMessage());
+        }
+        updateShallow(transfer.getShallow());
+        if (!blobs) {
+            setPromisor(remoteName);
         }
         File localCopyFile = new File(".gitlet/branches/" + remoteName
                 + "-" + remoteBranchName);
-        if (!localCopyFile.exists()) {
-            try {
-                localCopyFile.createNewFile();
-                Utils.writeObject(localCopyFile, remoteB);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (readMetadata(localCopyFile, CommitTree.class) == null) {
+            journal.write(localCopyFile, Utils.serialize(remoteB));
         }
 //        String remoteheadID = remoteB.getHeadID();
 //        updateHead(getCommit(remoteheadID), remoteheadID);
@@ -975,6 +1527,297 @@ public class Gitlet {
 //        saveCurrBranch();
     }
 
+    /** push to a served repository.
+     * @param url its gitlet:// URL.
+     * @param remoteBranchName the branch to push to. */
+    private static void pushBundle(String url, String remoteBranchName) {
+        try (BundleRemote remote = new BundleRemote(url)) {
+            TreeMap<String, String> branches = new TreeMap<>();
+            String remoteHeadID = remote.refs(branches);
+            if (!isAncestor(remoteHeadID, headID)) {
+                System.out.println("Please pull down remote changes "
+                        + "before pushing.");
+                return;
+            }
+            List<String> haves = new ArrayList<>(branches.values());
+            haves.add(remoteHeadID);
+            Transfer transfer = new Transfer(objects, haves);
+            transfer.setShallow(shallowCommits(), Collections.emptySet());
+            transfer.want(headID);
+            if (!transfer.getShallow().isEmpty()) {
+                System.out.println(SHALLOW_PUSH);
+                return;
+            }
+            fetchBlobs(transfer.getBlobs());
+            String refused = remote.push(remoteBranchName, remoteHeadID,
+                    headID, transfer);
+            if (refused != null) {
+                System.out.println(refused);
+            }
+        } catch (IOException excp) {
+            System.out.println("Remote directory not found.");
+        }
+    }
+
+    /** fetch from a served repository.
+     * @param remoteName the name of the remote.
+     * @param url its gitlet:// URL.
+     * @param remoteBranchName the branch to fetch.
+     * @param depth as for fetch.
+     * @param blobs as for fetch. */
+    private static void fetchBundle(String remoteName, String url,
+                                    String remoteBranchName, int depth,
+                                    boolean blobs) {
+        List<String> commits = new ArrayList<>();
+        List<String> boundary;
+        String remoteHeadID;
+        try (BundleRemote remote = new BundleRemote(url)) {
+            remoteHeadID = remote.fetch(remoteBranchName,
+                    branchHeads().values(), shallowCommits(), depth,
+                    blobs, objects, commits);
+            boundary = remote.getShallow();
+        } catch (IOException excp) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        if (remoteHeadID == null) {
+            System.out.println("That remote does not have that branch.");
+            return;
+        }
+        for (String id : commits) {
+            messages.add(id, getCommit(id).getLogMessage());
+        }
+        updateShallow(boundary);
+        if (!blobs) {
+            setPromisor(remoteName);
+        }
+        File localCopyFile = new File(".gitlet/branches/" + remoteName
+                + "-" + remoteBranchName);
+        if (readMetadata(localCopyFile, CommitTree.class) == null) {
+            journal.write(localCopyFile, Utils.serialize(
+                    new CommitTree(remoteBranchName, remoteHeadID)));
+        }
+    }
+
+    /** process the clone command: make a repository in the working
+     * directory from a branch of another, fetched as by fetch, with that
+     * branch checked out as the current one.
+     * @param remotePath the directory or gitlet:// URL of the other
+     * repository, added as the remote "origin".
+     * @param remoteBranchName the branch to clone.
+     * @param depth as for fetch. */
+    public static void cloneRemote(String remotePath,
+                                   String remoteBranchName, int depth) {
+        cloneRemote(remotePath, remoteBranchName, depth, true);
+    }
+
+    /** process the clone command, with --filter=blob:none if BLOBS is
+     * false: only the blobs of the files checked out are fetched, and
+     * the rest as they are needed, as for fetch.
+     * @param remotePath the directory or gitlet:// URL of the other
+     * repository, added as the remote "origin".
+     * @param remoteBranchName the branch to clone.
+     * @param depth as for fetch.
+     * @param blobs as for fetch. */
+    public static void cloneRemote(String remotePath,
+                                   String remoteBranchName, int depth,
+                                   boolean blobs) {
+        if (new File(".gitlet/initialized.txt").exists()) {
+            System.out.println("A Gitlet version-control system already "
+                    + "exists in the current directory.");
+            return;
+        }
+        new Gitlet();
+        addRemote(ORIGIN, remotePath);
+        fetch(ORIGIN, remoteBranchName, depth, blobs);
+        CommitTree fetched = getBranch(ORIGIN + "-" + remoteBranchName);
+        if (fetched != null) {
+            reset(fetched.getHeadID());
+        }
+    }
+
+    /** the remote that a partial fetch left blobs on.
+     * @return its name, or null if no fetch has been partial. */
+    private static String promisor() {
+        byte[] contents = readMetadata(promisorFile);
+        return contents == null ? null
+            : new String(contents, StandardCharsets.UTF_8);
+    }
+
+    /** record the remote that a partial fetch left blobs on; blobs are
+     * fetched from the latest such remote.
+     * @param remoteName the name of the remote. */
+    private static void setPromisor(String remoteName) {
+        if (!remoteName.equals(promisor())) {
+            journal.write(promisorFile,
+                    remoteName.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** fetch blobs that a partial fetch left out, all in one transfer,
+     * from the remote it left them on. Does nothing in a repository that
+     * has made no partial fetch.
+     * @param blobIDs the blobs needed, with nulls for none; those already
+     * here are skipped. */
+    private static void fetchBlobs(Collection<String> blobIDs) {
+        String remoteName = promisor();
+        if (remoteName == null) {
+            return;
+        }
+        List<String> missing = new ArrayList<>();
+        for (String id : new HashSet<>(blobIDs)) {
+            if (id != null && !objects.contains(ObjectStore.Kind.BLOB, id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        long start = Metrics.start();
+        String remotePath = readMetadata(new File(".gitlet/remotes/"
+                + remoteName), String.class);
+        if (remotePath == null) {
+            throw Utils.error("Cannot fetch missing blobs: no remote %s.",
+                    remoteName);
+        }
+        if (BundleRemote.isURL(remotePath)) {
+            try (BundleRemote remote = new BundleRemote(remotePath)) {
+                remote.blobs(missing, objects);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot fetch missing blobs from %s: %s",
+                        remoteName, excp.getMessage());
+            }
+        } else {
+            Transfer transfer = new Transfer(
+                    new ObjectStore(new File(remotePath)), objects);
+            transfer.wantBlobs(missing);
+            transfer.copy();
+        }
+        Metrics.phase("blob.fetch", start);
+    }
+
+    /** the commits of this repository that a shallow fetch brought
+     * without their parents.
+     * @return their IDs. */
+    static TreeSet<String> shallowCommits() {
+        return readShallow(readMetadata(shallowFile));
+    }
+
+    /** read the shallow commits of a repository, which may be a remote
+     * one.
+     * @param file its shallow file.
+     * @return their IDs. */
+    private static TreeSet<String> readShallow(File file) {
+        return readShallow(file.exists() ? Utils.readContents(file) : null);
+    }
+
+    /** parse a shallow file: commit IDs, one to a line.
+     * @param contents its contents, or null if there is none.
+     * @return the IDs. */
+    private static TreeSet<String> readShallow(byte[] contents) {
+        TreeSet<String> result = new TreeSet<>();
+        if (contents != null) {
+            for (String id : new String(contents, StandardCharsets.UTF_8)
+                     .split("\n")) {
+                if (!id.isEmpty()) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** record the boundary of a shallow fetch, and drop the shallow
+     * commits whose parents have all been fetched since.
+     * @param boundary the commits fetched without their parents. */
+    private static void updateShallow(Collection<String> boundary) {
+        TreeSet<String> before = shallowCommits();
+        TreeSet<String> shallow = new TreeSet<>(before);
+        shallow.addAll(boundary);
+        shallow.removeIf(id -> {
+            Commit c = getCommit(id);
+            for (String p : new String[] {c.getParent(), c.getParent2()}) {
+                if (p != null
+                        && !objects.contains(ObjectStore.Kind.COMMIT, p)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        if (shallow.equals(before)) {
+            return;
+        }
+        if (shallow.isEmpty()) {
+            journal.delete(shallowFile);
+        } else {
+            journal.write(shallowFile, (String.join("\n", shallow) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** the head of every branch of this repository, for serving it.
+     * @return map from branch name to head commit ID. */
+    static TreeMap<String, String> branchHeads() {
+        TreeMap<String, String> result = new TreeMap<>();
+        List<String> names = Utils.plainFilenamesIn(branchDir);
+        if (names != null) {
+            for (String name : names) {
+                CommitTree b = getBranch(name);
+                if (b != null) {
+                    result.put(name, b.getHeadID());
+                }
+            }
+        }
+        return result;
+    }
+
+    /** move a branch of this repository, and its head, to a commit pushed
+     * to it, as push does to a remote directory. The objects have been
+     * stored already.
+     * @param branchName the branch.
+     * @param oldHeadID the head the pusher saw.
+     * @param newHeadID the pushed commit.
+     * @param commits the commits pushed, each after its parents.
+     * @return null if the branch was moved, or why not. */
+    static String receivePush(String branchName, String oldHeadID,
+                              String newHeadID, List<String> commits) {
+        for (String id : commits) {
+            messages.add(id, getCommit(id).getLogMessage());
+        }
+        if (!headID.equals(oldHeadID)
+                || !objects.contains(ObjectStore.Kind.COMMIT, newHeadID)) {
+            return "Please pull down remote changes before pushing.";
+        }
+        CommitTree b = getBranch(branchName);
+        if (b == null) {
+            b = new CommitTree(branchName, initID);
+        }
+        b.setHeadID(newHeadID);
+        saveBranch(b);
+        updateHead(getCommit(newHeadID), newHeadID);
+        if (branch.equals(branchName)) {
+            _tree = b;
+        }
+        return null;
+    }
+
+    /** process the gc command: fold loose objects into packs and rewrite
+     * the commit-graph. Objects too big to pack are reported. */
+    public static void gc() {
+        long start = Metrics.start();
+        List<String> skipped = new ArrayList<>();
+        objects.repack(skipped);
+        for (String id : skipped) {
+            System.out.println("Object " + id + " is too large to pack; "
+                    + "left loose.");
+        }
+        Metrics.phase("gc.repack", start);
+        start = Metrics.start();
+        CommitGraph.write(graphFile, objects);
+        Metrics.phase("gc.graph", start);
+        graphLoaded = false;
+    }
+
     /** process the pull command.
      * @param remoteName the name of the remote name.
      * @param remoteBranchName the name of branch in the remote directory. */
@@ -1005,9 +1848,59 @@ public class Gitlet {
     /** folder for remote paths. */
     private static File remoteDir = new File(".gitlet/remotes");
 
+    /** folder for pack files. */
+    private static File packDir = new File(".gitlet/packs");
+
+    /** the object store holding blobs and commits, loose or packed. */
+    private static ObjectStore objects = new ObjectStore(gitletDir);
+
+    /** the file recording the repository format version. */
+    private static File formatFile = new File(".gitlet/format");
+
+    /** the commits fetched without their parents, one to a line. */
+    private static File shallowFile = new File(".gitlet/shallow");
+
+    /** the name of the remote a partial fetch left blobs on. */
+    private static File promisorFile = new File(".gitlet/promisor");
+
+    /** the commit-graph file, written by gc. */
+    private static File graphFile = new File(".gitlet/commit-graph");
+
+    /** the commit-graph, if graphLoaded and gc has written one. */
+    private static CommitGraph graph;
+
+    /** whether the commit-graph file has been looked for. */
+    private static boolean graphLoaded;
+
+    /** the index from commit messages to commit IDs. */
+    private static MessageIndex messages =
+        new MessageIndex(new File(".gitlet/messages"));
+
+    /** the working directory. */
+    private static File cwd = new File(".");
+
+    /** the journal of metadata changes made by the current command. */
+    private static Journal journal = new Journal(new File(".gitlet/journal"));
+
+    /** the repositoryStamp at the last markFresh, or null. */
+    private static String freshStamp;
+
+    /** whether the shutdown hook applying the journal has been added. */
+    private static boolean hookAdded;
+
+    /** whether the command ended with an uncaught exception, so that its
+     * journal must not be applied. */
+    private static volatile boolean commandFailed;
+
+    /** the index file holding the stat cache. */
+    private static File statCacheFile = new File(".gitlet/staging/index");
+
     /** staging area. */
     private static StagingArea staging;
 
+    /** stat data of working files, to avoid rehashing unchanged ones. */
+    private static StatCache statCache = new StatCache();
+
     /** Current head commit we are on. **/
     private static Commit head;
 
@@ -1023,4 +1916,59 @@ public class Gitlet {
     /** the id of the initial commit. */
     private static String initID;
 
+    /** number of threads that write files during a checkout; more than
+     * the cores, since the writes mostly wait on the disk. */
+    private static final int CHECKOUT_THREADS =
+        Math.min(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** number of commits kept in commitCache. */
+    private static final int COMMIT_CACHE_SIZE = 1024;
+
+    /** total size of the blob contents kept in blobCache. */
+    private static final long BLOB_CACHE_BYTES = 1L << 25;
+
+    /** size of the largest blob kept in blobCache; larger ones are
+     * streamed without being cached. */
+    private static final long MAX_CACHED_BLOB = 1L << 20;
+
+    /** name of the journal in a remote's .gitlet directory through which
+     * a push changes the remote's metadata, kept apart from the journal
+     * of any command running in the remote. */
+    private static final String PUSH_JOURNAL = "push-journal";
+
+    /** the remote that cloneRemote fetches from. */
+    private static final String ORIGIN = "origin";
+
+    /** why a push of shallow history fails. */
+    private static final String SHALLOW_PUSH =
+        "Cannot push history that a shallow fetch left out.";
+
+    /** format of repositories whose blob IDs hash serialized Blobs. No
+     * command converts them to RAW_FORMAT: that would change the ID of
+     * every blob, tree and commit in their history, and so every ID their
+     * users and remotes know them by. Only repositories made by init or
+     * clone use raw IDs. */
+    private static final int LEGACY_FORMAT = 1;
+
+    /** format of repositories whose blob IDs hash the raw file bytes. */
+    private static final int RAW_FORMAT = 2;
+
+    /** longest possible header of a raw blob object. */
+    private static final int BLOB_HEADER_MAX = 32;
+
+    /** tag at the start of the header of a raw blob object. */
+    private static final String BLOB_TAG = "blob ";
+
+    /** commits read so far in this command, by ID. */
+    private static ObjectCache<Commit> commitCache =
+        new ObjectCache<>(COMMIT_CACHE_SIZE, c -> 1);
+
+    /** contents of blobs read so far in this command, by ID. */
+    private static ObjectCache<byte[]> blobCache =
+        new ObjectCache<>(BLOB_CACHE_BYTES, b -> b.length);
+
+    /** format version of this repository; repositories without a format
+     * file predate raw blob IDs. */
+    private static int repoFormat = LEGACY_FORMAT;
+
 }
@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/** A write-ahead journal for the metadata files of a repository: the
+ * head, the branches, the staging area and the like. A command records
+ * its writes and deletions here instead of making them, and they are
+ * applied together when it finishes, so each file is written at most once
+ * per command however many times it was saved.
+ *
+ * Applying first writes every change to the journal file with a checksum
+ * and syncs it, then replaces each file through a synced temporary file
+ * and an atomic rename, and finally deletes the journal. A command killed
+ * before the journal is complete leaves the old files untouched; one
+ * killed after is finished by recover the next time the repository is
+ * opened, so the files always change all together or not at all.
+ *
+ * Files are recorded by their paths relative to the directory holding
+ * the journal, the .gitlet directory of its repository, so that a journal
+ * written by another process, such as one pushing into the repository
+ * from elsewhere, is recovered into the same files whatever directory
+ * the recovering process runs in.
+ *  @author Grace Chen
+ */
+class Journal {
+
+    /** a journal kept in FILE, for the files of the repository whose
+     * .gitlet directory holds it.
+     * @param file the journal file. */
+    Journal(File file) {
+        _file = file;
+        _root = file.getAbsoluteFile().getParentFile();
+    }
+
+    /** record that a file is to get new contents.
+     * @param target the file.
+     * @param contents its new contents. */
+    void write(File target, byte[] contents) {
+        _pending.put(key(target), contents);
+    }
+
+    /** record that a file is to be deleted.
+     * @param target the file. */
+    void delete(File target) {
+        _pending.put(key(target), null);
+    }
+
+    /** check whether a file has a change that is not yet applied.
+     * @param target the file.
+     * @return whether it will be written or deleted. */
+    boolean contains(File target) {
+        return _pending.containsKey(key(target));
+    }
+
+    /** the contents a file will have once the journal is applied.
+     * @param target a file for which contains is true.
+     * @return its new contents, or null if it will be deleted. */
+    byte[] get(File target) {
+        return _pending.get(key(target));
+    }
+
+    /** drop every recorded change, as when the command making them
+     * fails. */
+    void discard() {
+        _pending.clear();
+    }
+
+    /** apply every recorded change, durably and all together. */
+    void commit() {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        try (FileOutputStream file = new FileOutputStream(_file)) {
+            CheckedOutputStream checked =
+                new CheckedOutputStream(new BufferedOutputStream(file),
+                        new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(_pending.size());
+            for (Map.Entry<String, byte[]> e : _pending.entrySet()) {
+                out.writeUTF(e.getKey());
+                if (e.getValue() == null) {
+                    out.writeInt(DELETED);
+                } else {
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write journal: %s", excp.getMessage());
+        }
+        apply(_pending);
+        _pending.clear();
+    }
+
+    /** finish a journal left by a command that was killed after writing
+     * it, or discard one it did not finish writing. */
+    void recover() {
+        if (!_file.isFile()) {
+            return;
+        }
+        LinkedHashMap<String, byte[]> changes = new LinkedHashMap<>();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        _file.toPath())), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                changes = null;
+            } else {
+                for (int n = in.readInt(); n > 0; n -= 1) {
+                    String path = in.readUTF();
+                    int length = in.readInt();
+                    byte[] contents = null;
+                    if (length != DELETED) {
+                        contents = new byte[length];
+                        in.readFully(contents);
+                    }
+                    changes.put(path, contents);
+                }
+                long sum = checked.getChecksum().getValue();
+                if (in.readLong() != sum) {
+                    changes = null;
+                }
+            }
+        } catch (EOFException excp) {
+            changes = null;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read journal: %s", excp.getMessage());
+        }
+        if (changes == null) {
+            _file.delete();
+        } else {
+            apply(changes);
+        }
+    }
+
+    /** make some changes to the files, then delete the journal. The
+     * directories holding the changed files are synced before the journal
+     * is deleted, so that no rename can be lost once the journal is gone.
+     * @param changes map from path to new contents, or to null to delete
+     * the file. */
+    private void apply(Map<String, byte[]> changes) {
+        File tmp = new File(_file.getParentFile(), "tmp-" + _file.getName());
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        try {
+            for (Map.Entry<String, byte[]> e : changes.entrySet()) {
+                File target = new File(_root, e.getKey());
+                dirs.add(target.getParentFile());
+                if (e.getValue() == null) {
+                    Files.deleteIfExists(target.toPath());
+                    continue;
+                }
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(e.getValue());
+                    out.getFD().sync();
+                }
+                Files.move(tmp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot apply journal: %s", excp.getMessage());
+        }
+        for (File dir : dirs) {
+            Pack.syncDirectory(dir);
+        }
+        _file.delete();
+    }
+
+    /** the path by which a file is recorded.
+     * @param target the file.
+     * @return its path relative to the .gitlet directory. */
+    private String key(File target) {
+        return _root.toPath().normalize().relativize(
+                target.getAbsoluteFile().toPath().normalize()).toString();
+    }
+
+    /** magic number at the start of a journal file. */
+    private static final int MAGIC = 0x474a4e31;
+
+    /** length written for a file that is to be deleted. */
+    private static final int DELETED = -1;
+
+    /** the journal file. */
+    private final File _file;
+
+    /** the directory paths are recorded relative to. */
+    private final File _root;
+
+    /** changes not yet applied, by path, in the order first made; null
+     * contents mean the file is to be deleted. */
+    private final LinkedHashMap<String, byte[]> _pending =
+        new LinkedHashMap<>();
+}
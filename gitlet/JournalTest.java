@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of the metadata journal.
+ *  @author Grace Chen
+ */
+public class JournalTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** a file in the scratch directory.
+     * @param name its path relative to the directory.
+     * @return the file. */
+    private File file(String name) {
+        return new File(tmp.getRoot(), name);
+    }
+
+    /** a journal whose commit fails after applying its first change, as
+     * if the command had been killed there: its second change is to a
+     * file in a directory that does not exist.
+     * @return the journal, committed as far as it got. */
+    private Journal interrupted() {
+        Utils.writeContents(file("a"), "old a");
+        Journal journal = new Journal(file("journal"));
+        journal.write(file("a"), "new a".getBytes());
+        journal.write(file("later/b"), "new b".getBytes());
+        try {
+            journal.commit();
+            fail("journal applied into a missing directory");
+        } catch (GitletException excp) {
+            assertTrue(file("journal").isFile());
+        }
+        return journal;
+    }
+
+    @Test
+    public void commitAppliesEveryChange() {
+        Utils.writeContents(file("a"), "old a");
+        Utils.writeContents(file("gone"), "old");
+        Journal journal = new Journal(file("journal"));
+        journal.write(file("a"), "first".getBytes());
+        journal.write(file("a"), "second".getBytes());
+        journal.write(file("b"), "new b".getBytes());
+        journal.delete(file("gone"));
+        assertTrue(journal.contains(file("a")));
+        assertEquals("second", new String(journal.get(file("a"))));
+        assertNull(journal.get(file("gone")));
+        assertEquals("old a", Utils.readContentsAsString(file("a")));
+        journal.commit();
+        assertEquals("second", Utils.readContentsAsString(file("a")));
+        assertEquals("new b", Utils.readContentsAsString(file("b")));
+        assertFalse(file("gone").exists());
+        assertFalse(file("journal").exists());
+        assertFalse(journal.contains(file("a")));
+    }
+
+    @Test
+    public void discardDropsEveryChange() {
+        Journal journal = new Journal(file("journal"));
+        journal.write(file("a"), "new a".getBytes());
+        journal.discard();
+        journal.commit();
+        assertFalse(file("a").exists());
+        assertFalse(file("journal").exists());
+    }
+
+    @Test
+    public void recoverFinishesACompleteJournal() {
+        interrupted();
+        assertEquals("new a", Utils.readContentsAsString(file("a")));
+        assertTrue(file("later").mkdir());
+        new Journal(file("journal").getAbsoluteFile()).recover();
+        assertEquals("new a", Utils.readContentsAsString(file("a")));
+        assertEquals("new b", Utils.readContentsAsString(file("later/b")));
+        assertFalse(file("journal").exists());
+    }
+
+    @Test
+    public void recoverDiscardsATornJournal() throws IOException {
+        interrupted();
+        Utils.writeContents(file("a"), "old a");
+        try (RandomAccessFile raf =
+                 new RandomAccessFile(file("journal"), "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertTrue(file("later").mkdir());
+        new Journal(file("journal")).recover();
+        assertEquals("old a", Utils.readContentsAsString(file("a")));
+        assertFalse(file("later/b").exists());
+        assertFalse(file("journal").exists());
+    }
+
+    @Test
+    public void recoverDiscardsAJournalWithABadChecksum()
+        throws IOException {
+        interrupted();
+        Utils.writeContents(file("a"), "old a");
+        try (RandomAccessFile raf =
+                 new RandomAccessFile(file("journal"), "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 1);
+        }
+        assertTrue(file("later").mkdir());
+        new Journal(file("journal")).recover();
+        assertEquals("old a", Utils.readContentsAsString(file("a")));
+        assertFalse(file("later/b").exists());
+    }
+
+    @Test
+    public void pathsAreRelativeToTheJournal() throws IOException {
+        File sub = tmp.newFolder("sub");
+        Journal journal = new Journal(new File(sub, "../journal"));
+        journal.write(new File(sub, "../a"), "new a".getBytes());
+        assertTrue(journal.contains(file("a")));
+        journal.write(file("later/b"), "new b".getBytes());
+        try {
+            journal.commit();
+            fail("journal applied into a missing directory");
+        } catch (GitletException excp) {
+            assertTrue(file("later").mkdir());
+        }
+        File moved = new File(tmp.getRoot().getParentFile(),
+                tmp.getRoot().getName() + "-moved");
+        assertTrue(tmp.getRoot().renameTo(moved));
+        try {
+            new Journal(new File(moved, "journal")).recover();
+            assertEquals("new a",
+                    Utils.readContentsAsString(new File(moved, "a")));
+            assertEquals("new b",
+                    Utils.readContentsAsString(new File(moved, "later/b")));
+        } finally {
+            moved.renameTo(tmp.getRoot());
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the merge base of two commits: a common ancestor that is not an
+ * ancestor of any other common ancestor. Both commits are walked together,
+ * highest generation first, and each commit reached is marked in a bitset
+ * for each side that reached it. A commit reached from both sides is a
+ * merge base; it is marked stale, and so are its ancestors as the walk
+ * reaches them, and the walk stops once only stale commits are left.
+ * Visiting in generation order means no commit is visited before all its
+ * descendants in the walk, so the bases found are never ancestors of one
+ * another, even in criss-cross histories.
+ *
+ * Commits are numbered by their commit-graph record when they are in the
+ * graph, and after the graph's records otherwise; those are read from the
+ * store, together with their ancestors back to the graph, the first time
+ * they are reached.
+ *  @author Grace Chen
+ */
+class MergeBase {
+
+    /** a merge base finder over a commit-graph.
+     * @param graph the commit-graph, or null if there is none. */
+    MergeBase(CommitGraph graph) {
+        _graph = graph;
+        _graphSize = graph == null ? 0 : graph.size();
+    }
+
+    /** find the best merge base of two commits: of all merge bases, the
+     * one with the highest generation, then the latest time.
+     * @param a the ID of one commit.
+     * @param b the ID of the other.
+     * @return the ID of the merge base, or null if the commits have no
+     * common ancestor or one does not exist. */
+    String find(String a, String b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        int na = node(a);
+        int nb = node(b);
+        if (na < 0 || nb < 0) {
+            return null;
+        }
+        if (na == nb) {
+            return a;
+        }
+        int best = CommitGraph.NONE;
+        for (int n : all(na, nb)) {
+            if (best == CommitGraph.NONE || compare(n, best) < 0) {
+                best = n;
+            }
+        }
+        return best == CommitGraph.NONE ? null : id(best);
+    }
+
+    /** find every merge base of two commits.
+     * @param na the node of one commit.
+     * @param nb the node of the other.
+     * @return the nodes of the merge bases. */
+    List<Integer> all(int na, int nb) {
+        BitSet side1 = new BitSet();
+        BitSet side2 = new BitSet();
+        BitSet stale = new BitSet();
+        BitSet queued = new BitSet();
+        List<Integer> result = new ArrayList<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(this::compare);
+        side1.set(na);
+        side2.set(nb);
+        queue.add(na);
+        queue.add(nb);
+        queued.set(na);
+        queued.set(nb);
+        int active = 2;
+        while (active > 0) {
+            int n = queue.poll();
+            queued.clear(n);
+            if (!stale.get(n)) {
+                active -= 1;
+            }
+            boolean s1 = side1.get(n);
+            boolean s2 = side2.get(n);
+            if (s1 && s2 && !stale.get(n)) {
+                result.add(n);
+                stale.set(n);
+            }
+            boolean st = stale.get(n);
+            for (int p : parents(n)) {
+                boolean changed = false;
+                if (s1 && !side1.get(p)) {
+                    side1.set(p);
+                    changed = true;
+                }
+                if (s2 && !side2.get(p)) {
+                    side2.set(p);
+                    changed = true;
+                }
+                if (st && !stale.get(p)) {
+                    stale.set(p);
+                    if (queued.get(p)) {
+                        active -= 1;
+                    }
+                    changed = true;
+                }
+                if (changed && !queued.get(p)) {
+                    queue.add(p);
+                    queued.set(p);
+                    if (!stale.get(p)) {
+                        active += 1;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** the node of a commit, reading it and its ancestors outside the
+     * graph if this is the first time it is reached.
+     * @param id the commit ID.
+     * @return its node, or -1 if the commit does not exist. */
+    int node(String id) {
+        int i = _graph == null ? CommitGraph.NONE : _graph.find(id);
+        if (i >= 0) {
+            return i;
+        }
+        Integer known = _looseIndex.get(id);
+        if (known != null) {
+            return known;
+        }
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (_looseIndex.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit c = Gitlet.getCommit(top);
+            if (c == null) {
+                stack.pop();
+                if (top.equals(id)) {
+                    return -1;
+                }
+                _looseIndex.put(top, CommitGraph.NONE);
+                continue;
+            }
+            String pending = null;
+            for (String p : new String[] {c.getParent(), c.getParent2()}) {
+                if (p != null && !_looseIndex.containsKey(p)
+                        && (_graph == null || _graph.find(p) < 0)) {
+                    pending = p;
+                }
+            }
+            if (pending != null) {
+                stack.push(pending);
+                continue;
+            }
+            stack.pop();
+            addLoose(top, c);
+        }
+        return _looseIndex.get(id);
+    }
+
+    /** number a commit outside the graph whose parents are numbered.
+     * @param id the commit ID.
+     * @param c the commit. */
+    private void addLoose(String id, Commit c) {
+        int[] parents = {parentNode(c.getParent()),
+                         parentNode(c.getParent2())};
+        int gen = 1;
+        for (int p : parents) {
+            if (p >= 0) {
+                gen = Math.max(gen, generation(p) + 1);
+            }
+        }
+        _looseIndex.put(id, _graphSize + _looseIDs.size());
+        _looseIDs.add(id);
+        _looseParents.add(parents);
+        _looseGen.add(gen);
+        _looseTime.add(c.getTime());
+    }
+
+    /** the node of a parent that has been numbered.
+     * @param id the parent ID, or null.
+     * @return its node, or NONE if there is no such parent. */
+    private int parentNode(String id) {
+        if (id == null) {
+            return CommitGraph.NONE;
+        }
+        int i = _graph == null ? CommitGraph.NONE : _graph.find(id);
+        if (i >= 0) {
+            return i;
+        }
+        Integer known = _looseIndex.get(id);
+        return known == null ? CommitGraph.NONE : known;
+    }
+
+    /** the parents of a node.
+     * @param n the node.
+     * @return the nodes of its parents, without NONE. */
+    private int[] parents(int n) {
+        int p1;
+        int p2;
+        if (n < _graphSize) {
+            p1 = _graph.parent(n);
+            p2 = _graph.parent2(n);
+        } else {
+            int[] ps = _looseParents.get(n - _graphSize);
+            p1 = ps[0];
+            p2 = ps[1];
+        }
+        if (p1 < 0) {
+            return p2 < 0 ? new int[0] : new int[] {p2};
+        }
+        return p2 < 0 ? new int[] {p1} : new int[] {p1, p2};
+    }
+
+    /** the generation of a node.
+     * @param n the node.
+     * @return its generation. */
+    private int generation(int n) {
+        if (n < _graphSize) {
+            return _graph.generation(n);
+        }
+        return _looseGen.get(n - _graphSize);
+    }
+
+    /** the time of a node.
+     * @param n the node.
+     * @return its commit time. */
+    private long time(int n) {
+        if (n < _graphSize) {
+            return _graph.time(n);
+        }
+        return _looseTime.get(n - _graphSize);
+    }
+
+    /** the commit ID of a node.
+     * @param n the node.
+     * @return its ID. */
+    String id(int n) {
+        if (n < _graphSize) {
+            return _graph.id(n);
+        }
+        return _looseIDs.get(n - _graphSize);
+    }
+
+    /** order nodes highest generation first, then latest first.
+     * @param a one node.
+     * @param b another.
+     * @return negative if A comes first, positive if B does. */
+    private int compare(int a, int b) {
+        int cmp = Integer.compare(generation(b), generation(a));
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Long.compare(time(b), time(a));
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Integer.compare(a, b);
+    }
+
+    /** the commit-graph, or null. */
+    private final CommitGraph _graph;
+
+    /** number of commits in the graph. */
+    private final int _graphSize;
+
+    /** nodes of commits outside the graph by ID; NONE for a missing
+     * commit. */
+    private final HashMap<String, Integer> _looseIndex = new HashMap<>();
+
+    /** IDs of commits outside the graph, by node less _graphSize. */
+    private final List<String> _looseIDs = new ArrayList<>();
+
+    /** parents of commits outside the graph. */
+    private final List<int[]> _looseParents = new ArrayList<>();
+
+    /** generations of commits outside the graph. */
+    private final List<Integer> _looseGen = new ArrayList<>();
+
+    /** times of commits outside the graph. */
+    private final List<Long> _looseTime = new ArrayList<>();
+}
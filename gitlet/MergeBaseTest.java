@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of finding merge bases over a commit-graph.
+ *  @author Grace Chen
+ */
+public class MergeBaseTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** a merge base finder over every commit in a store.
+     * @param store the store.
+     * @return the finder. */
+    private MergeBase finder(ObjectStore store) {
+        File file = new File(tmp.getRoot(), "commit-graph");
+        CommitGraph.write(file, store);
+        return new MergeBase(CommitGraph.load(file));
+    }
+
+    @Test
+    public void forkMeetsAtItsRoot() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String root = history.commit("root");
+        String a = history.commit("a", history.commit("a0", root));
+        String b = history.commit("b", root);
+        MergeBase bases = finder(store);
+        assertEquals(root, bases.find(a, b));
+        assertEquals(root, bases.find(b, a));
+    }
+
+    @Test
+    public void ancestorIsItsOwnMergeBase() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String root = history.commit("root");
+        String a = history.commit("a", root);
+        String c = history.commit("c", history.commit("b", a));
+        MergeBase bases = finder(store);
+        assertEquals(a, bases.find(a, c));
+        assertEquals(a, bases.find(c, a));
+        assertEquals(c, bases.find(c, c));
+    }
+
+    @Test
+    public void mergedBranchMeetsAtTheMergedCommit() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String root = history.commit("root");
+        String side = history.commit("side", root);
+        String main = history.commit("main", root);
+        String merge = history.commit("merge", main, side);
+        String more = history.commit("more", side);
+        MergeBase bases = finder(store);
+        assertEquals(side, bases.find(merge, more));
+    }
+
+    @Test
+    public void crissCrossPicksTheLatestOfItsBases() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String root = history.commit("root");
+        String x1 = history.commit("x1", root);
+        String y1 = history.commit("y1", root);
+        String x2 = history.commit("x2", x1, y1);
+        String y2 = history.commit("y2", y1, x1);
+        MergeBase bases = finder(store);
+        Set<String> all = new HashSet<>();
+        List<Integer> nodes = bases.all(bases.node(x2), bases.node(y2));
+        for (int n : nodes) {
+            all.add(bases.id(n));
+        }
+        assertEquals(Set.of(x1, y1), all);
+        assertEquals(y1, bases.find(x2, y2));
+    }
+
+    @Test
+    public void unrelatedHistoriesHaveNoMergeBase() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String a = history.commit("a", history.commit("root a"));
+        String b = history.commit("b", history.commit("root b"));
+        MergeBase bases = finder(store);
+        assertNull(bases.find(a, b));
+        assertNull(bases.find(a, null));
+    }
+}
@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** The index from commit messages to commit IDs, kept in .gitlet/messages
+ * so that find does not have to read every commit. The file is a log of
+ * records, each a binary commit ID and a length-prefixed UTF-8 message,
+ * appended to as commits are saved or fetched. It is read into a map from
+ * message to IDs the first time it is searched, and an inverted index from
+ * words to IDs is built from that map for word searches.
+ *
+ * Repositories made before the index existed have no file; it is built
+ * from every commit the first time it is needed, and until then nothing
+ * is appended to it. It is built again the same way if a command killed
+ * while appending left a record torn, and nothing is appended after a
+ * torn record, where it could be misread as the rest of that record.
+ *  @author Grace Chen
+ */
+class MessageIndex {
+
+    /** the message index in FILE.
+     * @param file the index file. */
+    MessageIndex(File file) {
+        _file = file;
+    }
+
+    /** check whether the index file exists.
+     * @return whether it has been built. */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /** check whether the index file ends in a torn record, walking its
+     * records the first time this is asked unless it has been read.
+     * @return whether it must be rebuilt. */
+    boolean isTorn() {
+        if (!_checked) {
+            byte[] bytes = readFile();
+            _torn = walk(ByteBuffer.wrap(bytes), false) < bytes.length;
+            _checked = true;
+        }
+        return _torn;
+    }
+
+    /** record the message of a new commit, if the index has been built
+     * and is whole; a torn index is rebuilt, with this commit, the next
+     * time it is searched. The record is appended by a single write.
+     * @param id the commit ID.
+     * @param message its log message. */
+    void add(String id, String message) {
+        if (!exists() || isTorn()) {
+            return;
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (FileOutputStream out = new FileOutputStream(_file, true)) {
+            writeRecord(new DataOutputStream(record), id, message);
+            out.write(record.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_byMessage != null) {
+            remember(id, message);
+        }
+    }
+
+    /** build the index from every commit in a store, replacing any index
+     * file there was.
+     * @param store the object store. */
+    void rebuild(ObjectStore store) {
+        File tmp = new File(_file.getParentFile(), "tmp-messages");
+        _byMessage = new LinkedHashMap<>();
+        _byWord = null;
+        _torn = false;
+        _checked = true;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            for (String id : store.list(ObjectStore.Kind.COMMIT)) {
+                Commit c = Commit.decode(
+                        store.read(ObjectStore.Kind.COMMIT, id));
+                writeRecord(out, id, c.getLogMessage());
+                remember(id, c.getLogMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** find the commits with exactly a message.
+     * @param message the log message.
+     * @return their IDs, in order. */
+    List<String> find(String message) {
+        load();
+        TreeSet<String> ids = _byMessage.get(message);
+        return ids == null ? new ArrayList<>() : new ArrayList<>(ids);
+    }
+
+    /** find the commits whose message contains some text. Each distinct
+     * message is searched once, however many commits share it.
+     * @param text the text to look for.
+     * @return their IDs, in order. */
+    List<String> containing(String text) {
+        load();
+        TreeSet<String> result = new TreeSet<>();
+        for (Map.Entry<String, TreeSet<String>> e : _byMessage.entrySet()) {
+            if (e.getKey().contains(text)) {
+                result.addAll(e.getValue());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** find the commits whose message has every word of a query, in any
+     * order and case, through the inverted index.
+     * @param query the words to look for.
+     * @return their IDs, in order. */
+    List<String> search(String query) {
+        load();
+        if (_byWord == null) {
+            _byWord = new HashMap<>();
+            for (Map.Entry<String, TreeSet<String>> e
+                     : _byMessage.entrySet()) {
+                for (String word : words(e.getKey())) {
+                    _byWord.computeIfAbsent(word, k -> new TreeSet<>())
+                        .addAll(e.getValue());
+                }
+            }
+        }
+        TreeSet<String> result = null;
+        for (String word : words(query)) {
+            TreeSet<String> ids = _byWord.get(word);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            if (result == null) {
+                result = new TreeSet<>(ids);
+            } else {
+                result.retainAll(ids);
+            }
+        }
+        return result == null ? new ArrayList<>() : new ArrayList<>(result);
+    }
+
+    /** read the index file into memory, the first time it is needed.
+     * Reading stops at a record that is cut short or whose length runs
+     * past the end of the file, which marks the index as torn. */
+    private void load() {
+        if (_byMessage != null) {
+            return;
+        }
+        _byMessage = new LinkedHashMap<>();
+        if (!exists()) {
+            return;
+        }
+        byte[] bytes = readFile();
+        _torn = walk(ByteBuffer.wrap(bytes), true) < bytes.length;
+        _checked = true;
+    }
+
+    /** read the whole index file.
+     * @return its bytes. */
+    private byte[] readFile() {
+        try {
+            return Files.readAllBytes(_file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** walk the records of the index file, up to the first that is cut
+     * short or whose length runs past the end of the file.
+     * @param buf the bytes of the file.
+     * @param keep whether to add each record to the in-memory indices.
+     * @return the length of the whole records at the start of BUF. */
+    private int walk(ByteBuffer buf, boolean keep) {
+        byte[] raw = new byte[Pack.ID_BYTES];
+        int end = 0;
+        while (buf.remaining() >= Pack.ID_BYTES + Integer.BYTES) {
+            buf.get(raw);
+            int length = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                break;
+            }
+            if (keep) {
+                remember(Pack.toHex(raw), new String(buf.array(),
+                        buf.position(), length, StandardCharsets.UTF_8));
+            }
+            buf.position(buf.position() + length);
+            end = buf.position();
+        }
+        return end;
+    }
+
+    /** add a commit to the in-memory indices.
+     * @param id the commit ID.
+     * @param message its log message. */
+    private void remember(String id, String message) {
+        _byMessage.computeIfAbsent(message, k -> new TreeSet<>()).add(id);
+        if (_byWord != null) {
+            for (String word : words(message)) {
+                _byWord.computeIfAbsent(word, k -> new TreeSet<>()).add(id);
+            }
+        }
+    }
+
+    /** write one record of the index file.
+     * @param out the stream to write to.
+     * @param id the commit ID.
+     * @param message its log message.
+     * @throws IOException if writing fails. */
+    private static void writeRecord(DataOutputStream out, String id,
+                                    String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.write(Pack.fromHex(id));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** split text into the words the inverted index is keyed by.
+     * @param text the text.
+     * @return its distinct words, in lower case. */
+    private static TreeSet<String> words(String text) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** the index file. */
+    private final File _file;
+
+    /** commit IDs by message, or null before the file is read. */
+    private LinkedHashMap<String, TreeSet<String>> _byMessage;
+
+    /** whether the index file ends in a torn record, once _checked. */
+    private boolean _torn;
+
+    /** whether _torn has been found out. */
+    private boolean _checked;
+
+    /** commit IDs by lower-case word, or null before the first search. */
+    private HashMap<String, TreeSet<String>> _byWord;
+}
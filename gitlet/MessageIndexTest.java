@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of the commit message index.
+ *  @author Grace Chen
+ */
+public class MessageIndexTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** the index file. */
+    private File indexFile() {
+        return new File(tmp.getRoot(), "messages");
+    }
+
+    /** append bytes to a file, as a command killed while adding to the
+     * index might have left.
+     * @param file the file.
+     * @param bytes the bytes. */
+    private static void append(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void builtIndexFindsMessages() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String a = history.commit("Fix the parser");
+        String b = history.commit("fix the PARSER again", a);
+        String c = history.commit("Fix the parser", b);
+        MessageIndex index = new MessageIndex(indexFile());
+        assertFalse(index.exists());
+        index.add(a, "Fix the parser");
+        assertFalse(index.exists());
+        index.rebuild(store);
+        assertEquals(List.of(a, c).stream().sorted().toList(),
+                index.find("Fix the parser"));
+        assertEquals(3, index.search("parser fix").size());
+        assertEquals(List.of(b), index.containing("again"));
+        assertTrue(index.find("nothing").isEmpty());
+    }
+
+    @Test
+    public void addedMessagesAreKept() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String a = history.commit("first");
+        MessageIndex index = new MessageIndex(indexFile());
+        index.rebuild(store);
+        String b = history.commit("second", a);
+        index.add(b, "second");
+        assertEquals(List.of(b), index.find("second"));
+        MessageIndex reread = new MessageIndex(indexFile());
+        assertFalse(reread.isTorn());
+        assertEquals(List.of(b), reread.find("second"));
+        assertEquals(List.of(a), reread.search("FIRST"));
+    }
+
+    @Test
+    public void tornRecordIsFoundAndRebuilt() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String a = history.commit("first");
+        new MessageIndex(indexFile()).rebuild(store);
+        long whole = indexFile().length();
+        append(indexFile(), new byte[Pack.ID_BYTES + 2]);
+        MessageIndex index = new MessageIndex(indexFile());
+        assertTrue(index.isTorn());
+        assertEquals(List.of(a), index.find("first"));
+        index.rebuild(store);
+        assertFalse(index.isTorn());
+        assertEquals(whole, indexFile().length());
+    }
+
+    @Test
+    public void commitAfterATornRecordIsStillFound() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TestHistory history = new TestHistory(store);
+        String a = history.commit("first");
+        new MessageIndex(indexFile()).rebuild(store);
+        byte[] torn = new byte[Pack.ID_BYTES + 4 + 3];
+        torn[Pack.ID_BYTES + 3] = 60;
+        append(indexFile(), torn);
+        long tornLength = indexFile().length();
+
+        MessageIndex index = new MessageIndex(indexFile());
+        String b = history.commit("second", a);
+        index.add(b, "second");
+        assertEquals(tornLength, indexFile().length());
+
+        MessageIndex reread = new MessageIndex(indexFile());
+        assertTrue(reread.isTorn());
+        reread.rebuild(store);
+        assertEquals(List.of(b), reread.find("second"));
+        assertEquals(List.of(a), reread.find("first"));
+        String c = history.commit("third", b);
+        reread.add(c, "third");
+        assertEquals(List.of(c), new MessageIndex(indexFile()).find("third"));
+    }
+}
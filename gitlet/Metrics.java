@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Opt-in timing of Gitlet commands, for finding which part of a slow
+ * command is slow. It is off unless the GITLET_TRACE environment
+ * variable, or the gitlet.trace system property, names a trace file;
+ * then each command appends one line of JSON to it, such as
+ *
+ *     {"command":["add","a.txt"],"start":1760000000000,"ms":12.5,
+ *      "phases":{"add.hash":{"calls":1,"ms":9.1}},
+ *      "io":{"sha1":{"calls":1,"ms":0.4,"bytes":2048}}}
+ *
+ * on a single line. Phases are the steps of commands, such as walking
+ * the working tree or writing the files of a checkout; io counts the
+ * primitive operations under them: hashing, reading and writing objects
+ * and metadata, decoding and listing directories. Times of operations
+ * run in parallel are summed over the threads, so they may add up to
+ * more than the command took. Each line is appended by one write, so
+ * processes sharing a trace file do not interleave their lines.
+ *
+ * When off, start returns 0 and the rest return at once, so that the
+ * calls can stay in the code.
+ *  @author Grace Chen
+ */
+class Metrics {
+
+    /** whether commands are being traced. */
+    static final boolean ENABLED;
+
+    /** the trace file, or null. */
+    private static final Path TRACE;
+
+    static {
+        String trace = System.getProperty("gitlet.trace",
+                System.getenv("GITLET_TRACE"));
+        TRACE = trace == null || trace.isEmpty() ? null : Paths.get(trace);
+        ENABLED = TRACE != null;
+    }
+
+    /** mark the start of a command, dropping what was counted before it.
+     * @param args the command and its arguments. */
+    static void begin(String... args) {
+        if (!ENABLED) {
+            return;
+        }
+        _phases.clear();
+        _io.clear();
+        _command = args.clone();
+        _startMillis = System.currentTimeMillis();
+        _start = System.nanoTime();
+    }
+
+    /** the time at which something to be counted starts.
+     * @return the time in nanoseconds, or 0 when not tracing. */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** count a step of the command.
+     * @param name the phase.
+     * @param start when it started, from start. */
+    static void phase(String name, long start) {
+        if (ENABLED) {
+            counter(_phases, name).add(System.nanoTime() - start, 0);
+        }
+    }
+
+    /** count a primitive operation.
+     * @param name the operation.
+     * @param start when it started, from start.
+     * @param bytes how many bytes it read, wrote or hashed. */
+    static void io(String name, long start, long bytes) {
+        if (ENABLED) {
+            counter(_io, name).add(System.nanoTime() - start, bytes);
+        }
+    }
+
+    /** append the line of the command to the trace file, if anything was
+     * counted since begin, and start counting afresh. A trace that cannot
+     * be written is dropped, leaving the command to finish. */
+    static void end() {
+        if (!ENABLED || _start == 0 && _phases.isEmpty() && _io.isEmpty()) {
+            return;
+        }
+        long nanos = _start == 0 ? 0 : System.nanoTime() - _start;
+        StringBuilder line = new StringBuilder("{\"command\":[");
+        for (int i = 0; _command != null && i < _command.length; i += 1) {
+            line.append(i == 0 ? "" : ",");
+            quote(line, _command[i]);
+        }
+        line.append("],\"start\":").append(_startMillis)
+            .append(",\"ms\":").append(millis(nanos))
+            .append(",\"phases\":");
+        append(line, _phases, false);
+        line.append(",\"io\":");
+        append(line, _io, true);
+        line.append("}\n");
+        try {
+            Files.write(TRACE, line.toString().getBytes(
+                    StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            return;
+        } finally {
+            _phases.clear();
+            _io.clear();
+            _command = null;
+            _start = 0;
+        }
+    }
+
+    /** the counter of a name, made the first time.
+     * @param counters the phases or the operations.
+     * @param name the name.
+     * @return its counter. */
+    private static Counter counter(Map<String, Counter> counters,
+                                   String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /** append counters as a JSON object, sorted by name.
+     * @param line the line being built.
+     * @param counters the counters.
+     * @param bytes whether to give their byte counts. */
+    private static void append(StringBuilder line,
+                               Map<String, Counter> counters,
+                               boolean bytes) {
+        line.append('{');
+        String sep = "";
+        for (Map.Entry<String, Counter> e
+                 : new TreeMap<>(counters).entrySet()) {
+            Counter c = e.getValue();
+            line.append(sep);
+            quote(line, e.getKey());
+            line.append(":{\"calls\":").append(c._calls.sum())
+                .append(",\"ms\":").append(millis(c._nanos.sum()));
+            if (bytes) {
+                line.append(",\"bytes\":").append(c._bytes.sum());
+            }
+            line.append('}');
+            sep = ",";
+        }
+        line.append('}');
+    }
+
+    /** append a string as a JSON string.
+     * @param line the line being built.
+     * @param s the string. */
+    private static void quote(StringBuilder line, String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < ' ') {
+                line.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /** a duration in milliseconds, to a microsecond.
+     * @param nanos the duration in nanoseconds.
+     * @return the milliseconds, as JSON. */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /** The calls, time and bytes of one phase or operation. Safe to add
+     * to from several threads at once. */
+    private static class Counter {
+
+        /** count one call.
+         * @param nanos how long it took.
+         * @param bytes how many bytes it handled. */
+        void add(long nanos, long bytes) {
+            _calls.increment();
+            _nanos.add(nanos);
+            _bytes.add(bytes);
+        }
+
+        /** number of calls. */
+        private final LongAdder _calls = new LongAdder();
+
+        /** total nanoseconds. */
+        private final LongAdder _nanos = new LongAdder();
+
+        /** total bytes. */
+        private final LongAdder _bytes = new LongAdder();
+    }
+
+    /** the phases of the current command, by name. */
+    private static final Map<String, Counter> _phases =
+        new ConcurrentHashMap<>();
+
+    /** the operations of the current command, by name. */
+    private static final Map<String, Counter> _io =
+        new ConcurrentHashMap<>();
+
+    /** the arguments of the current command, or null if begin was not
+     * called. */
+    private static String[] _command;
+
+    /** when the current command started, in milliseconds since the
+     * epoch. */
+    private static long _startMillis;
+
+    /** when the current command started, from start, or 0. */
+    private static long _start;
+}
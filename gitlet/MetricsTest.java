@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of command tracing. Whether tracing is on is fixed when Metrics
+ * is loaded, so traced commands are run in a JVM of their own, by main.
+ *  @author Grace Chen
+ */
+public class MetricsTest {
+
+    /** a scratch directory for trace files. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** run some traced commands, as the tests expect them.
+     * @param args unused. */
+    public static void main(String... args) throws InterruptedException {
+        Metrics.begin("add", "a \"b\"\n");
+        long start = Metrics.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i += 1) {
+            Thread t = new Thread(() -> {
+                for (int j = 0; j < CALLS; j += 1) {
+                    Metrics.io("sha1", Metrics.start(), BYTES);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Metrics.phase("add.hash", start);
+        Metrics.end();
+        Metrics.end();
+        Metrics.begin("status");
+        Metrics.end();
+        System.out.println("done");
+    }
+
+    /** run main in another JVM.
+     * @param trace the trace file it is given.
+     * @return what it printed. */
+    private static String runTraced(File trace)
+        throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"),
+                "-Dgitlet.trace=" + trace.getPath(),
+                MetricsTest.class.getName())
+            .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        assertEquals(output, 0, process.waitFor());
+        return output;
+    }
+
+    @Test
+    public void tracedCommandsAppendALineEach() throws Exception {
+        File trace = new File(tmp.getRoot(), "trace.json");
+        Files.writeString(trace.toPath(), "earlier\n");
+        assertEquals("done\n", runTraced(trace));
+        List<String> lines = Files.readAllLines(trace.toPath());
+        assertEquals(3, lines.size());
+        assertEquals("earlier", lines.get(0));
+        String add = lines.get(1);
+        assertTrue(add, add.startsWith(
+                "{\"command\":[\"add\",\"a \\\"b\\\"\\u000a\"],\"start\":"));
+        assertTrue(add, add.contains(
+                ",\"phases\":{\"add.hash\":{\"calls\":1,\"ms\":"));
+        assertTrue(add, add.matches(".*\"add.hash\":\\{[^}]*\\d}.*"));
+        assertTrue(add, add.contains(",\"io\":{\"sha1\":{\"calls\":"
+                + THREADS * CALLS + ",\"ms\":"));
+        assertTrue(add, add.endsWith(",\"bytes\":"
+                + THREADS * CALLS * BYTES + "}}}"));
+        assertTrue(lines.get(2), lines.get(2).matches(
+                "\\{\"command\":\\[\"status\"],\"start\":\\d+,"
+                + "\"ms\":\\d+\\.\\d{3},\"phases\":\\{},\"io\":\\{}}"));
+    }
+
+    @Test
+    public void unwritableTracesAreDropped() throws Exception {
+        File trace = new File(tmp.getRoot(), "none/trace.json");
+        assertEquals("done\n", runTraced(trace));
+        assertFalse(trace.exists());
+    }
+
+    @Test
+    public void untracedCommandsCountNothing() {
+        Assume.assumeFalse(Metrics.ENABLED);
+        assertEquals(0, Metrics.start());
+        Metrics.begin("status");
+        Metrics.phase("status.walk", 0);
+        Metrics.io("stat", 0, 1);
+        Metrics.end();
+    }
+
+    /** threads counting operations at once. */
+    private static final int THREADS = 4;
+
+    /** operations counted by each thread. */
+    private static final int CALLS = 1000;
+
+    /** bytes of each operation. */
+    private static final int BYTES = 10;
+}
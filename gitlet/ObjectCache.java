@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/** A cache of objects already read and parsed in this process, by object
+ * ID, so that a command reading the same commit or blob again does no
+ * I/O. It holds objects up to a total weight, evicting the least recently
+ * used first, and counts its hits and misses. Objects are immutable once
+ * stored, so an entry never goes stale. It may be used from several
+ * threads at once.
+ *  @param <V> the type of the cached objects.
+ *  @author Grace Chen
+ */
+class ObjectCache<V> {
+
+    /** a cache of objects up to some total weight.
+     * @param capacity the largest total weight it holds.
+     * @param weigher the weight of an object. */
+    ObjectCache(long capacity, ToLongFunction<V> weigher) {
+        _capacity = capacity;
+        _weigher = weigher;
+    }
+
+    /** look up an object, making it the most recently used.
+     * @param id the object ID.
+     * @return the object, or null if it is not cached. */
+    synchronized V get(String id) {
+        V result = _entries.get(id);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** add an object, evicting the least recently used ones beyond the
+     * capacity. An object heavier than the whole cache is not kept.
+     * @param id the object ID.
+     * @param value the object. */
+    synchronized void put(String id, V value) {
+        long weight = _weigher.applyAsLong(value);
+        if (weight > _capacity) {
+            return;
+        }
+        V old = _entries.put(id, value);
+        _weight += weight - (old == null ? 0 : _weigher.applyAsLong(old));
+        Iterator<Map.Entry<String, V>> eldest =
+            _entries.entrySet().iterator();
+        while (_weight > _capacity) {
+            _weight -= _weigher.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /** accessor for the number of lookups that found their object.
+     * @return the hits so far. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** accessor for the number of lookups that did not.
+     * @return the misses so far. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** the largest total weight. */
+    private final long _capacity;
+
+    /** the weight of an object. */
+    private final ToLongFunction<V> _weigher;
+
+    /** the objects by ID, least recently used first. */
+    private final LinkedHashMap<String, V> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** total weight of the objects in _entries. */
+    private long _weight;
+
+    /** number of lookups that found their object. */
+    private long _hits;
+
+    /** number of lookups that did not. */
+    private long _misses;
+}
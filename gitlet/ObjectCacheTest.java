@@ -0,0 +1,58 @@
+package gitlet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of the LRU object cache.
+ *  @author Grace Chen
+ */
+public class ObjectCacheTest {
+
+    @Test
+    public void countsHitsAndMisses() {
+        ObjectCache<String> cache = new ObjectCache<>(10, s -> 1);
+        assertNull(cache.get("a"));
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a"));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        ObjectCache<String> cache = new ObjectCache<>(3, s -> 1);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.get("a");
+        cache.put("d", "D");
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+    }
+
+    @Test
+    public void boundsTheTotalWeight() {
+        ObjectCache<byte[]> cache = new ObjectCache<>(100, b -> b.length);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.put("c", new byte[40]);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        cache.put("b", new byte[90]);
+        assertNull(cache.get("c"));
+        assertEquals(90, cache.get("b").length);
+    }
+
+    @Test
+    public void keepsNothingHeavierThanItself() {
+        ObjectCache<byte[]> cache = new ObjectCache<>(100, b -> b.length);
+        cache.put("a", new byte[10]);
+        cache.put("big", new byte[101]);
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("a"));
+    }
+}
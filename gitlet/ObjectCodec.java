@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The encodings an object may be stored in. A stored object starts with a
+ * short header: three magic bytes and a byte naming its codec. Objects
+ * written before compression existed have no header and are read as they
+ * are, since neither a raw blob nor a Java-serialized object can start
+ * with the magic bytes.
+ *  @author Grace Chen
+ */
+enum ObjectCodec {
+    /** bytes stored as they are. */
+    NONE((byte) '0'),
+    /** bytes compressed with the JDK Deflater. */
+    DEFLATE((byte) 'z'),
+    /** a delta against a base object, which only the store can resolve;
+     * see ObjectStore.writeDelta. */
+    DELTA((byte) 'd');
+
+    /** a codec.
+     * @param code the byte naming this codec in object headers. */
+    ObjectCodec(byte code) {
+        _code = code;
+    }
+
+    /** accessor for the header code.
+     * @return the byte naming this codec. */
+    byte code() {
+        return _code;
+    }
+
+    /** the header of an object stored with this codec.
+     * @return the header bytes. */
+    byte[] header() {
+        byte[] result = new byte[HEADER_SIZE];
+        System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+        result[MAGIC.length] = _code;
+        return result;
+    }
+
+    /** wrap a channel so that what is written to it is encoded with this
+     * codec. Closing the result finishes the encoding and closes OUT.
+     * @param out the channel the encoded bytes go to, just past the
+     * header.
+     * @param level the Deflater compression level.
+     * @return a channel taking the plain bytes. */
+    WritableByteChannel encoder(WritableByteChannel out, int level) {
+        if (this == NONE) {
+            return out;
+        }
+        if (this == DELTA) {
+            throw Utils.error("Deltas are not written through an encoder.");
+        }
+        Deflater deflater = new Deflater(level);
+        DeflaterOutputStream stream = new DeflaterOutputStream(
+                Channels.newOutputStream(out), deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        return Channels.newChannel(stream);
+    }
+
+    /** find the codec named in the header at the start of some bytes.
+     * @param start the first bytes of a stored object.
+     * @param length how many of them there are.
+     * @return the codec, or null if the object has no header. */
+    static ObjectCodec of(byte[] start, int length) {
+        if (length < HEADER_SIZE) {
+            return null;
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (start[i] != MAGIC[i]) {
+                return null;
+            }
+        }
+        for (ObjectCodec codec : values()) {
+            if (codec._code == start[MAGIC.length]) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown object codec %d.", start[MAGIC.length]);
+    }
+
+    /** decode a whole stored object that is not a delta.
+     * @param stored the bytes of the object as stored.
+     * @return its plain bytes. */
+    static byte[] decode(byte[] stored) {
+        ObjectCodec codec = of(stored, stored.length);
+        if (codec == null) {
+            return stored;
+        }
+        if (codec == DELTA) {
+            throw Utils.error("A delta cannot be decoded on its own.");
+        }
+        return inflate(stored, HEADER_SIZE, codec);
+    }
+
+    /** decode the part of some bytes past a header.
+     * @param stored the bytes.
+     * @param offset where the encoded bytes start.
+     * @param codec the codec they are encoded with.
+     * @return the plain bytes. */
+    static byte[] inflate(byte[] stored, int offset, ObjectCodec codec) {
+        InputStream in = new ByteArrayInputStream(stored, offset,
+                stored.length - offset);
+        try (InputStream plain = codec.decoder(in)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = plain.read(buf)) > 0) {
+                result.write(buf, 0, n);
+            }
+            return result.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** read the first bytes of a stored object, where its header is.
+     * @param in the channel over the stored object.
+     * @param start a buffer of HEADER_SIZE bytes to read into.
+     * @return the number of bytes read, less than HEADER_SIZE only if the
+     * object is shorter.
+     * @throws IOException if reading fails. */
+    static int readStart(ReadableByteChannel in, byte[] start)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(start, 0, HEADER_SIZE);
+        while (buf.hasRemaining() && in.read(buf) >= 0) {
+            continue;
+        }
+        return buf.position();
+    }
+
+    /** wrap a channel over a stored object that is not a delta so that it
+     * yields the plain bytes. A file channel of an unencoded object is
+     * handed back as it is, positioned past any header, so that it can
+     * still be copied with transferTo.
+     * @param in the channel over the stored object, positioned just past
+     * START; it is closed along with the result.
+     * @param start the first bytes of the object, from readStart.
+     * @param length how many of them there are.
+     * @return a channel over the plain bytes.
+     * @throws IOException if reading fails. */
+    static ReadableByteChannel decode(ReadableByteChannel in, byte[] start,
+                                      int length) throws IOException {
+        ObjectCodec codec = of(start, length);
+        if (codec == DELTA) {
+            throw Utils.error("A delta cannot be decoded on its own.");
+        }
+        if (codec == NONE) {
+            return in;
+        }
+        if (codec != null) {
+            return Channels.newChannel(
+                    codec.decoder(Channels.newInputStream(in)));
+        }
+        if (in instanceof FileChannel) {
+            ((FileChannel) in).position(0);
+            return in;
+        }
+        return Channels.newChannel(new SequenceInputStream(
+                new ByteArrayInputStream(start, 0, length),
+                Channels.newInputStream(in)));
+    }
+
+    /** wrap a stream of encoded bytes so that it yields the plain bytes.
+     * @param in the encoded bytes, just past the header.
+     * @return a stream of the plain bytes. */
+    private InputStream decoder(InputStream in) {
+        if (this == NONE) {
+            return in;
+        }
+        return new InflaterInputStream(in);
+    }
+
+    /** bytes at the start of every object with a header; 0xc7 starts
+     * neither a raw blob nor a Java serialization stream. */
+    private static final byte[] MAGIC = {(byte) 0xc7, 'G', 'O'};
+
+    /** size of an object header. */
+    static final int HEADER_SIZE = MAGIC.length + 1;
+
+    /** size of the buffers used while encoding and decoding. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** the byte naming this codec in object headers. */
+    private final byte _code;
+}
@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of the codecs objects are stored with.
+ *  @author Grace Chen
+ */
+public class ObjectCodecTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** some bytes that compress well.
+     * @return the bytes. */
+    private static byte[] text() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            result.append("line ").append(i % 10).append('\n');
+        }
+        return result.toString().getBytes();
+    }
+
+    @Test
+    public void everyCodecRoundTrips() {
+        byte[] text = text();
+        String id = Utils.sha1(text);
+        for (ObjectCodec codec : new ObjectCodec[] {
+                ObjectCodec.NONE, ObjectCodec.DEFLATE }) {
+            ObjectStore store = new ObjectStore(tmp.getRoot().toPath()
+                    .resolve(codec.name()).toFile());
+            store.setCodec(codec, Deflater.BEST_SPEED);
+            store.write(ObjectStore.Kind.BLOB, id, text);
+            byte[] stored = store.readStored(ObjectStore.Kind.BLOB, id);
+            assertEquals(codec, ObjectCodec.of(stored, stored.length));
+            assertArrayEquals(text, store.read(ObjectStore.Kind.BLOB, id));
+            assertArrayEquals(text, ObjectCodec.decode(stored));
+        }
+    }
+
+    @Test
+    public void deflatedObjectsAreSmaller() {
+        byte[] text = text();
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        store.write(ObjectStore.Kind.BLOB, Utils.sha1(text), text);
+        byte[] stored = store.readStored(ObjectStore.Kind.BLOB,
+                Utils.sha1(text));
+        assertEquals(ObjectCodec.DEFLATE,
+                ObjectCodec.of(stored, stored.length));
+        assertTrue(stored.length < text.length / 10);
+    }
+
+    @Test
+    public void objectsWithoutAHeaderAreReadAsTheyAre() {
+        byte[] old = "written before codecs".getBytes();
+        String id = Utils.sha1(old);
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        store.writeStored(ObjectStore.Kind.COMMIT, id, old);
+        assertNull(ObjectCodec.of(old, old.length));
+        assertArrayEquals(old, store.read(ObjectStore.Kind.COMMIT, id));
+    }
+
+    @Test
+    public void shortOrUnmarkedBytesHaveNoCodec() {
+        byte[] header = ObjectCodec.DEFLATE.header();
+        assertNull(ObjectCodec.of(header, ObjectCodec.HEADER_SIZE - 1));
+        byte[] unmarked = Arrays.copyOf(header, header.length);
+        unmarked[0] = 'x';
+        assertNull(ObjectCodec.of(unmarked, unmarked.length));
+        assertEquals(ObjectCodec.DELTA, ObjectCodec.of(
+                ObjectCodec.DELTA.header(), ObjectCodec.HEADER_SIZE));
+    }
+}
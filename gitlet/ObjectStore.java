@@ -0,0 +1,810 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/** The object database of a Gitlet repository. An object is either loose,
+ * in its own file under .gitlet/blobs, .gitlet/commits or .gitlet/trees,
+ * or packed into one of the packs under .gitlet/packs. Readers never need
+ * to know which. New objects are stored compressed, behind a header
+ * naming their codec, or as deltas against an earlier version; see
+ * ObjectCodec and Delta. Objects may be read and written from several
+ * threads at once.
+ *  @author Grace Chen
+ */
+class ObjectStore {
+
+    /** The kinds of object kept in a store. */
+    enum Kind {
+        /** file contents. */
+        BLOB("blobs", ".txt", (byte) 'b'),
+        /** commit objects. */
+        COMMIT("commits", "", (byte) 'c'),
+        /** directory trees of commits. */
+        TREE("trees", "", (byte) 't');
+
+        /** a kind of object.
+         * @param dir the directory holding loose objects of this kind.
+         * @param suffix the suffix of loose object files.
+         * @param code the code of this kind in pack indices. */
+        Kind(String dir, String suffix, byte code) {
+            _dir = dir;
+            _suffix = suffix;
+            _code = code;
+        }
+
+        /** accessor for the loose object directory.
+         * @return the directory name under .gitlet. */
+        String dir() {
+            return _dir;
+        }
+
+        /** accessor for the loose object file suffix.
+         * @return the suffix. */
+        String suffix() {
+            return _suffix;
+        }
+
+        /** accessor for the pack index code.
+         * @return the code. */
+        byte code() {
+            return _code;
+        }
+
+        /** loose object directory. */
+        private final String _dir;
+
+        /** loose object file suffix. */
+        private final String _suffix;
+
+        /** pack index code. */
+        private final byte _code;
+    }
+
+    /** the object store of the repository whose .gitlet directory is ROOT.
+     * @param root the .gitlet directory. */
+    ObjectStore(File root) {
+        _root = root;
+        _packDir = new File(root, "packs");
+        _codec = ObjectCodec.DEFLATE;
+        _level = Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /** choose how objects written from now on are encoded.
+     * @param codec the codec.
+     * @param level the Deflater compression level. */
+    void setCodec(ObjectCodec codec, int level) {
+        _codec = codec;
+        _level = level;
+    }
+
+    /** limit the size of the packs written by repack from now on.
+     * @param bytes the most bytes of objects in one pack, at most
+     * MAX_PACK_BYTES. */
+    void setMaxPackBytes(long bytes) {
+        _maxPackBytes = Math.min(bytes, MAX_PACK_BYTES);
+    }
+
+    /** the file a loose object is, or would be, stored in.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return the loose object file. */
+    File looseFile(Kind kind, String id) {
+        return new File(new File(_root, kind.dir()), id + kind.suffix());
+    }
+
+    /** check whether the store holds an object, loose or packed.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return whether the object exists. */
+    boolean contains(Kind kind, String id) {
+        if (id == null) {
+            return false;
+        }
+        if (looseFile(kind, id).exists()) {
+            return true;
+        }
+        for (Pack p : packs()) {
+            if (p.contains(kind, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** read the decoded bytes of an object, loose or packed.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return the bytes of the object, or null if it does not exist. */
+    byte[] read(Kind kind, String id) {
+        long start = Metrics.start();
+        byte[] stored = readStored(kind, id);
+        if (stored == null) {
+            return null;
+        }
+        byte[] result;
+        if (ObjectCodec.of(stored, stored.length) == ObjectCodec.DELTA) {
+            result = resolveDelta(kind, stored);
+        } else {
+            result = ObjectCodec.decode(stored);
+        }
+        Metrics.io("object.read", start, result.length);
+        return result;
+    }
+
+    /** read the bytes of an object as stored, loose or packed.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return the stored bytes, or null if the object does not exist. */
+    byte[] readStored(Kind kind, String id) {
+        if (id == null) {
+            return null;
+        }
+        File loose = looseFile(kind, id);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (Pack p : packs()) {
+            byte[] result = p.read(kind, id);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** open an object for streaming its decoded bytes, loose or packed.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return a channel over the bytes of the object, or null if it does
+     * not exist. */
+    ReadableByteChannel open(Kind kind, String id) {
+        ReadableByteChannel stored = openStored(kind, id);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            byte[] start = new byte[ObjectCodec.HEADER_SIZE];
+            int length = ObjectCodec.readStart(stored, start);
+            if (ObjectCodec.of(start, length) == ObjectCodec.DELTA) {
+                stored.close();
+                return new BufferChannel(ByteBuffer.wrap(read(kind, id)));
+            }
+            return ObjectCodec.decode(stored, start, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** open an object for streaming its bytes as stored, header and all.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return a channel over the stored bytes of the object, or null if it
+     * does not exist. */
+    ReadableByteChannel openStored(Kind kind, String id) {
+        if (id == null) {
+            return null;
+        }
+        File loose = looseFile(kind, id);
+        if (loose.isFile()) {
+            try {
+                return FileChannel.open(loose.toPath(),
+                        StandardOpenOption.READ);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (Pack p : packs()) {
+            ByteBuffer slice = p.slice(kind, id);
+            if (slice != null) {
+                return new BufferChannel(slice);
+            }
+        }
+        return null;
+    }
+
+    /** open an object for sending to another store, as it is stored
+     * unless it is a delta, whose base the other store may lack; a delta
+     * is resolved and given the header of an unencoded object.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return a channel over the bytes to send, or null if the object
+     * does not exist. */
+    ReadableByteChannel openWhole(Kind kind, String id) {
+        ReadableByteChannel stored = openStored(kind, id);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            byte[] start = new byte[ObjectCodec.HEADER_SIZE];
+            int length = ObjectCodec.readStart(stored, start);
+            if (ObjectCodec.of(start, length) == ObjectCodec.DELTA) {
+                stored.close();
+                ByteArrayOutputStream whole = new ByteArrayOutputStream();
+                whole.writeBytes(ObjectCodec.NONE.header());
+                whole.writeBytes(read(kind, id));
+                return new BufferChannel(
+                        ByteBuffer.wrap(whole.toByteArray()));
+            }
+            if (stored instanceof FileChannel) {
+                ((FileChannel) stored).position(0);
+                return stored;
+            }
+            return Channels.newChannel(new SequenceInputStream(
+                    new ByteArrayInputStream(start, 0, length),
+                    Channels.newInputStream(stored)));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** store an object as a loose file unless the store already has it.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param bytes the bytes of the object. */
+    void write(Kind kind, String id, byte[] bytes) {
+        write(kind, id, bytes, null);
+    }
+
+    /** store an object as a loose file unless the store already has it,
+     * streaming its bytes and encoding them with the current codec. The
+     * file is written under a temporary name and renamed into place, so a
+     * reader never sees a partial object.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param header bytes to write before BODY.
+     * @param body the rest of the object, or null; it is always closed. */
+    void write(Kind kind, String id, byte[] header,
+               ReadableByteChannel body) {
+        long start = Metrics.start();
+        try (ReadableByteChannel in = body) {
+            if (contains(kind, id)) {
+                return;
+            }
+            long size = header.length;
+            Path tmp = tempFile();
+            try (FileChannel file = FileChannel.open(tmp,
+                    StandardOpenOption.WRITE);
+                 WritableByteChannel out = _codec.encoder(file, _level)) {
+                ByteBuffer codecHeader = ByteBuffer.wrap(_codec.header());
+                while (codecHeader.hasRemaining()) {
+                    file.write(codecHeader);
+                }
+                ByteBuffer buf = ByteBuffer.wrap(header);
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                if (in != null) {
+                    size += copy(in, out);
+                }
+            }
+            install(tmp, kind, id);
+            Metrics.io("object.write", start, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** store an object as a delta against a base object, unless the store
+     * already has it. The object is stored whole instead if it is too big
+     * to diff in memory, if the base is missing or already at the end of a
+     * chain of MAX_DELTA_DEPTH deltas, or if the delta saves too little.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param bytes the bytes of the object.
+     * @param baseID the ID of the base object, or null. */
+    void writeDelta(Kind kind, String id, byte[] bytes, String baseID) {
+        if (contains(kind, id)) {
+            return;
+        }
+        byte[] baseStored = null;
+        if (baseID != null && !baseID.equals(id)
+                && bytes.length <= MAX_DELTA_BYTES
+                && Pack.fromHex(baseID) != null) {
+            baseStored = readStored(kind, baseID);
+        }
+        int depth = baseStored == null ? MAX_DELTA_DEPTH
+                : deltaDepth(baseStored);
+        if (depth >= MAX_DELTA_DEPTH) {
+            write(kind, id, bytes);
+            return;
+        }
+        byte[] base = deltaBase(kind, baseID, baseStored);
+        byte[] delta = Delta.create(base, bytes);
+        if (delta.length > bytes.length / 2) {
+            write(kind, id, bytes);
+            return;
+        }
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        stored.write(ObjectCodec.DELTA.header(), 0, ObjectCodec.HEADER_SIZE);
+        stored.write(Pack.fromHex(baseID), 0, Pack.ID_BYTES);
+        stored.write(depth + 1);
+        try (DeflaterOutputStream out =
+                     new DeflaterOutputStream(stored)) {
+            out.write(delta);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeStored(kind, id, stored.toByteArray());
+        cacheBase(kind, id, bytes);
+    }
+
+    /** store the bytes of an object exactly as given, as a loose file,
+     * unless the store already has it.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param stored the bytes of the object as they are to be stored. */
+    void writeStored(Kind kind, String id, byte[] stored) {
+        writeStored(kind, id, new BufferChannel(ByteBuffer.wrap(stored)));
+    }
+
+    /** store the bytes of an object exactly as they are read from a
+     * channel, as a loose file. The bytes are read to the end even if the
+     * store already has the object, so that a stream of objects can go on.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param stored the bytes of the object as they are to be stored. */
+    void writeStored(Kind kind, String id, ReadableByteChannel stored) {
+        long start = Metrics.start();
+        try {
+            if (contains(kind, id)) {
+                copy(stored, Channels.newChannel(
+                        OutputStream.nullOutputStream()));
+                return;
+            }
+            Path tmp = tempFile();
+            long size;
+            try (FileChannel out = FileChannel.open(tmp,
+                    StandardOpenOption.WRITE)) {
+                size = copy(stored, out);
+            }
+            install(tmp, kind, id);
+            Metrics.io("object.write", start, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** copy an object from another store as it is stored there, unless
+     * this store already has it. A loose object is hard-linked into place
+     * when both stores are on one file system, which is safe since a
+     * stored object is never changed, and otherwise has its bytes
+     * transferred by the file system; a packed one is written from its
+     * mapped bytes. Nothing is decoded, except a delta, which is stored
+     * whole, since its base may not be here.
+     * @param from the other store.
+     * @param kind the kind of object.
+     * @param id the object ID. */
+    void copyFrom(ObjectStore from, Kind kind, String id) {
+        long start = Metrics.start();
+        if (contains(kind, id)) {
+            return;
+        }
+        ReadableByteChannel in = from.openStored(kind, id);
+        if (in == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        try (ReadableByteChannel stored = in) {
+            byte[] header = new byte[ObjectCodec.HEADER_SIZE];
+            int length = ObjectCodec.readStart(stored, header);
+            if (ObjectCodec.of(header, length) == ObjectCodec.DELTA) {
+                write(kind, id, new byte[0], from.open(kind, id));
+                return;
+            }
+            File loose = looseFile(kind, id);
+            if (stored instanceof FileChannel && link(loose,
+                    from.looseFile(kind, id))) {
+                Metrics.io("object.link", start, 0);
+                return;
+            }
+            Path tmp = tempFile();
+            long size = length;
+            try (FileChannel out = FileChannel.open(tmp,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(header, 0, length);
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                size += copy(stored, out);
+            }
+            install(tmp, kind, id);
+            Metrics.io("object.copy", start, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** hard-link a loose object into place.
+     * @param loose where the object goes in this store.
+     * @param source the loose object in another store.
+     * @return whether it is now in place; false if the file system cannot
+     * link the two. */
+    private static boolean link(File loose, File source) {
+        loose.getParentFile().mkdirs();
+        try {
+            Files.createLink(loose.toPath(), source.toPath());
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            return true;
+        } catch (IOException | UnsupportedOperationException excp) {
+            return false;
+        }
+    }
+
+    /** make a temporary file to write an object into.
+     * @return the path of the new, empty file.
+     * @throws IOException if it cannot be made. */
+    private Path tempFile() throws IOException {
+        File tmpDir = new File(_root, "tmp");
+        tmpDir.mkdirs();
+        return Files.createTempFile(tmpDir.toPath(), "obj", null);
+    }
+
+    /** rename a finished temporary file into place as a loose object.
+     * @param tmp the temporary file.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @throws IOException if it cannot be moved. */
+    private void install(Path tmp, Kind kind, String id) throws IOException {
+        File loose = looseFile(kind, id);
+        loose.getParentFile().mkdirs();
+        Files.move(tmp, loose.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** find how many deltas deep a stored object is.
+     * @param stored the stored bytes of the object.
+     * @return the length of its delta chain, 0 if it is stored whole. */
+    private static int deltaDepth(byte[] stored) {
+        if (ObjectCodec.of(stored, stored.length) != ObjectCodec.DELTA) {
+            return 0;
+        }
+        return stored[DELTA_DEPTH_OFFSET] & 0xff;
+    }
+
+    /** rebuild an object stored as a delta.
+     * @param kind the kind of object.
+     * @param stored the stored bytes of the delta.
+     * @return the bytes of the object. */
+    private byte[] resolveDelta(Kind kind, byte[] stored) {
+        byte[] rawID = new byte[Pack.ID_BYTES];
+        System.arraycopy(stored, ObjectCodec.HEADER_SIZE, rawID, 0,
+                Pack.ID_BYTES);
+        String baseID = Pack.toHex(rawID);
+        byte[] base = deltaBase(kind, baseID, null);
+        if (base == null) {
+            throw Utils.error("Missing delta base %s.", baseID);
+        }
+        byte[] delta = ObjectCodec.inflate(stored, DELTA_DEPTH_OFFSET + 1,
+                ObjectCodec.DEFLATE);
+        return Delta.apply(base, delta);
+    }
+
+    /** get the bytes of a delta base, from the cache of reconstructed
+     * bases if possible.
+     * @param kind the kind of object.
+     * @param id the base ID.
+     * @param stored the stored bytes of the base, or null to read them.
+     * @return the bytes of the base, or null if it does not exist. */
+    private byte[] deltaBase(Kind kind, String id, byte[] stored) {
+        String key = kind.code() + id;
+        byte[] result;
+        synchronized (_baseCache) {
+            result = _baseCache.get(key);
+        }
+        if (result != null) {
+            return result;
+        }
+        if (stored == null) {
+            result = read(kind, id);
+        } else if (deltaDepth(stored) > 0) {
+            result = resolveDelta(kind, stored);
+        } else {
+            result = ObjectCodec.decode(stored);
+        }
+        if (result != null) {
+            cacheBase(kind, id, result);
+        }
+        return result;
+    }
+
+    /** remember the bytes of an object that later deltas may be based on,
+     * evicting the least recently used bases beyond BASE_CACHE_BYTES.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @param bytes the bytes of the object. */
+    private void cacheBase(Kind kind, String id, byte[] bytes) {
+        if (bytes.length > BASE_CACHE_BYTES) {
+            return;
+        }
+        synchronized (_baseCache) {
+            byte[] old = _baseCache.put(kind.code() + id, bytes);
+            _baseCacheBytes += bytes.length - (old == null ? 0 : old.length);
+            Iterator<byte[]> eldest = _baseCache.values().iterator();
+            while (_baseCacheBytes > BASE_CACHE_BYTES) {
+                _baseCacheBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** copy everything left in one channel into another, by the file
+     * system if IN is a file, and otherwise through a bounded buffer. A
+     * file the file system stops transferring, as when OUT takes nothing,
+     * goes on through the buffer from where it stopped.
+     * @param in the channel to read.
+     * @param out the channel to write.
+     * @return the number of bytes copied.
+     * @throws IOException if either channel fails, or OUT takes nothing. */
+    static long copy(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        long done = 0;
+        if (in instanceof FileChannel) {
+            FileChannel file = (FileChannel) in;
+            long start = file.position();
+            long size = file.size() - start;
+            while (done < size) {
+                long n = file.transferTo(start + done, size - done, out);
+                if (n <= 0) {
+                    break;
+                }
+                done += n;
+            }
+            if (done == size) {
+                return done;
+            }
+            file.position(start + done);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        while (in.read(buf) >= 0 || buf.position() > 0) {
+            buf.flip();
+            int n = out.write(buf);
+            if (n == 0) {
+                throw new IOException("channel accepted no bytes");
+            }
+            done += n;
+            buf.compact();
+        }
+        return done;
+    }
+
+    /** list every object of a kind, loose or packed.
+     * @param kind the kind of object.
+     * @return the object IDs in lexicographic order. */
+    List<String> list(Kind kind) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String name : looseNames(kind)) {
+            result.add(name.substring(0,
+                    name.length() - kind.suffix().length()));
+        }
+        for (Pack p : packs()) {
+            result.addAll(p.list(kind));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** find the one object of a kind whose ID starts with a prefix. Packs
+     * are searched by binary search on their sorted indices; only loose
+     * objects, those written since the last gc, are scanned.
+     * @param kind the kind of object.
+     * @param prefix a hexadecimal ID prefix of at least MIN_PREFIX digits.
+     * @return the full ID, or null if no object matches.
+     * @throws GitletException if more than one object matches. */
+    String resolve(Kind kind, String prefix) {
+        prefix = prefix.toLowerCase();
+        if (prefix.length() < MIN_PREFIX
+                || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]*")) {
+            return null;
+        }
+        TreeSet<String> found = new TreeSet<>();
+        for (String name : looseNames(kind)) {
+            if (name.startsWith(prefix)) {
+                found.add(name.substring(0,
+                        name.length() - kind.suffix().length()));
+            }
+        }
+        for (Pack p : packs()) {
+            found.addAll(p.withPrefix(kind, prefix, 2));
+        }
+        if (found.size() > 1) {
+            throw Utils.error("Ambiguous id %s.", prefix);
+        }
+        return found.isEmpty() ? null : found.first();
+    }
+
+    /** fold every loose object into new packs and delete the loose files,
+     * once every pack is safely on disk. An object bigger than a pack may
+     * be is left loose, since a pack is mapped whole and addressed by int
+     * offsets.
+     * @param skipped where to add the IDs of the objects left loose.
+     * @return the number of objects packed. */
+    int repack(List<String> skipped) {
+        _packDir.mkdirs();
+        List<Pack.Entry> batch = new ArrayList<>();
+        List<File> packed = new ArrayList<>();
+        List<File> batchFiles = new ArrayList<>();
+        long batchBytes = 0;
+        int total = 0;
+        for (Kind kind : Kind.values()) {
+            for (String name : looseNames(kind)) {
+                String id = name.substring(0,
+                        name.length() - kind.suffix().length());
+                File loose = looseFile(kind, id);
+                if (Pack.fromHex(id) == null) {
+                    continue;
+                }
+                if (loose.length() > _maxPackBytes) {
+                    skipped.add(id);
+                    continue;
+                }
+                if (!batch.isEmpty()
+                        && batchBytes + loose.length() > _maxPackBytes) {
+                    Pack.write(_packDir, this, batch);
+                    packed.addAll(batchFiles);
+                    batch.clear();
+                    batchFiles.clear();
+                    batchBytes = 0;
+                }
+                batch.add(new Pack.Entry(kind, id));
+                batchFiles.add(loose);
+                batchBytes += loose.length();
+                total += 1;
+            }
+        }
+        if (!batch.isEmpty()) {
+            Pack.write(_packDir, this, batch);
+            packed.addAll(batchFiles);
+        }
+        for (File f : packed) {
+            f.delete();
+        }
+        _packs = null;
+        return total;
+    }
+
+    /** list the names of loose object files of a kind.
+     * @param kind the kind of object.
+     * @return the file names, possibly empty. */
+    private List<String> looseNames(Kind kind) {
+        List<String> names =
+                Utils.plainFilenamesIn(new File(_root, kind.dir()));
+        List<String> result = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(kind.suffix())) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** open the packs of this store, the first time they are needed.
+     * @return the packs, possibly none. */
+    private synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(_packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(Pack.IDX_SUFFIX)
+                            && !name.startsWith("tmp")) {
+                        _packs.add(new Pack(new File(_packDir, name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** A channel reading the bytes of a buffer. */
+    private static class BufferChannel implements ReadableByteChannel {
+
+        /** a channel over BUF.
+         * @param buf the bytes to read. */
+        BufferChannel(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!_buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), _buf.remaining());
+            ByteBuffer chunk = _buf.duplicate();
+            chunk.limit(chunk.position() + n);
+            dst.put(chunk);
+            _buf.position(_buf.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public void close() {
+            _open = false;
+        }
+
+        /** the bytes left to read. */
+        private final ByteBuffer _buf;
+
+        /** whether the channel is open. */
+        private boolean _open = true;
+    }
+
+    /** shortest ID prefix that resolve accepts. */
+    static final int MIN_PREFIX = 4;
+
+    /** longest chain of deltas an object may sit at the end of. */
+    static final int MAX_DELTA_DEPTH = 50;
+
+    /** largest object that is stored as a delta, since both it and its
+     * base are held in memory. */
+    static final long MAX_DELTA_BYTES = 1L << 24;
+
+    /** offset of the chain depth in a stored delta, after the codec
+     * header and the base ID. */
+    private static final int DELTA_DEPTH_OFFSET =
+        ObjectCodec.HEADER_SIZE + Pack.ID_BYTES;
+
+    /** total size of the reconstructed bases kept in memory. */
+    private static final long BASE_CACHE_BYTES = 1L << 25;
+
+    /** size of the buffer used to copy between channels. */
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    /** largest pack written by repack, so that it can be mapped whole;
+     * bigger objects stay loose. */
+    private static final long MAX_PACK_BYTES = 1L << 30;
+
+    /** the .gitlet directory of this store. */
+    private final File _root;
+
+    /** the directory holding packs. */
+    private final File _packDir;
+
+    /** the codec new objects are written with. */
+    private ObjectCodec _codec;
+
+    /** the compression level new objects are written with. */
+    private int _level;
+
+    /** the most bytes of objects repack puts in one pack. */
+    private long _maxPackBytes = MAX_PACK_BYTES;
+
+    /** reconstructed delta bases by kind code and ID, least recently used
+     * first. */
+    private final LinkedHashMap<String, byte[]> _baseCache =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** total size of the bases in _baseCache. */
+    private long _baseCacheBytes;
+
+    /** packs opened so far, or null before the first lookup. */
+    private List<Pack> _packs;
+}
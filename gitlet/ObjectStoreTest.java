@@ -0,0 +1,244 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of streaming objects into and out of an object store, and of
+ * copying them between stores.
+ *  @author Grace Chen
+ */
+public class ObjectStoreTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** A channel that takes nothing for its first STALLS writes, then
+     * everything it is given. */
+    private static class StallingChannel implements WritableByteChannel {
+
+        /** a channel that stalls STALLS times.
+         * @param stalls the number of writes that take nothing. */
+        StallingChannel(int stalls) {
+            _stalls = stalls;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            if (_stalls > 0) {
+                _stalls -= 1;
+                return 0;
+            }
+            int n = src.remaining();
+            byte[] bytes = new byte[n];
+            src.get(bytes);
+            _written.writeBytes(bytes);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** writes left that take nothing. */
+        private int _stalls;
+
+        /** what has been written. */
+        private final ByteArrayOutputStream _written =
+            new ByteArrayOutputStream();
+    }
+
+    /** a file of random bytes.
+     * @param size its size.
+     * @return the file. */
+    private File noiseFile(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        File file = new File(tmp.getRoot(), "noise" + size);
+        Utils.writeContents(file, bytes);
+        return file;
+    }
+
+    @Test
+    public void copyFromAFileFallsBackWhenTheTransferStalls()
+        throws IOException {
+        File file = noiseFile(100000);
+        StallingChannel out = new StallingChannel(1);
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            assertEquals(100000, ObjectStore.copy(in, out));
+        }
+        assertArrayEquals(Utils.readContents(file),
+                out._written.toByteArray());
+    }
+
+    @Test(timeout = 10000, expected = IOException.class)
+    public void copyIntoAChannelThatTakesNothingFails()
+        throws IOException {
+        File file = noiseFile(1000);
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ObjectStore.copy(in, new StallingChannel(Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void copyFromAStreamCopiesEverything() throws IOException {
+        File file = noiseFile(200000);
+        StallingChannel out = new StallingChannel(0);
+        ReadableByteChannel in = Channels.newChannel(
+                new FileInputStream(file));
+        assertEquals(200000, ObjectStore.copy(in, out));
+        assertArrayEquals(Utils.readContents(file),
+                out._written.toByteArray());
+    }
+
+    @Test
+    public void streamedObjectReadsBackWhole() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        File file = noiseFile(300000);
+        byte[] header = "blob 300000\0".getBytes();
+        String id = Utils.sha1("blob 300000\0", file);
+        store.write(ObjectStore.Kind.BLOB, id, header, FileChannel.open(
+                file.toPath(), StandardOpenOption.READ));
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (ReadableByteChannel in = store.open(ObjectStore.Kind.BLOB,
+                id)) {
+            ObjectStore.copy(in, Channels.newChannel(read));
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes(header);
+        expected.writeBytes(Utils.readContents(file));
+        assertArrayEquals(expected.toByteArray(), read.toByteArray());
+        assertNull(store.open(ObjectStore.Kind.BLOB, Utils.sha1("none")));
+    }
+
+    @Test
+    public void deltasWrittenFromManyThreadsReadBack() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        byte[] base = new byte[50000];
+        new Random(7).nextBytes(base);
+        String baseID = Utils.sha1(base);
+        store.write(ObjectStore.Kind.BLOB, baseID, base);
+        byte[][] versions = new byte[64][];
+        String[] ids = new String[versions.length];
+        for (int i = 0; i < versions.length; i += 1) {
+            versions[i] = base.clone();
+            versions[i][i * 700] ^= 1;
+            ids[i] = Utils.sha1(versions[i]);
+        }
+        IntStream.range(0, versions.length).parallel().forEach(i ->
+            store.writeDelta(ObjectStore.Kind.BLOB, ids[i], versions[i],
+                    baseID));
+        IntStream.range(0, versions.length).parallel().forEach(i ->
+            assertArrayEquals(versions[i],
+                    store.read(ObjectStore.Kind.BLOB, ids[i])));
+    }
+
+    /** a store in a directory of the scratch directory.
+     * @param name the directory.
+     * @return the store. */
+    private ObjectStore store(String name) {
+        return new ObjectStore(new File(tmp.getRoot(), name));
+    }
+
+    /** random bytes.
+     * @param size how many.
+     * @return the bytes. */
+    private static byte[] noise(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void copyFromLinksLooseObjects() throws IOException {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        byte[] bytes = noise(5000);
+        String id = Utils.sha1(bytes);
+        from.write(ObjectStore.Kind.BLOB, id, bytes);
+        to.copyFrom(from, ObjectStore.Kind.BLOB, id);
+        assertTrue(Files.isSameFile(
+                from.looseFile(ObjectStore.Kind.BLOB, id).toPath(),
+                to.looseFile(ObjectStore.Kind.BLOB, id).toPath()));
+        assertArrayEquals(bytes, to.read(ObjectStore.Kind.BLOB, id));
+        to.copyFrom(from, ObjectStore.Kind.BLOB, id);
+        assertArrayEquals(bytes, to.read(ObjectStore.Kind.BLOB, id));
+    }
+
+    @Test
+    public void copyFromWritesPackedObjectsAsStored() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        from.setCodec(ObjectCodec.DEFLATE, Deflater.BEST_SPEED);
+        byte[] bytes = new byte[50000];
+        String id = Utils.sha1(bytes);
+        from.write(ObjectStore.Kind.TREE, id, bytes);
+        assertEquals(1, from.repack(new ArrayList<>()));
+        assertFalse(from.looseFile(ObjectStore.Kind.TREE, id).exists());
+        to.copyFrom(from, ObjectStore.Kind.TREE, id);
+        byte[] stored = from.readStored(ObjectStore.Kind.TREE, id);
+        assertTrue(stored.length < bytes.length);
+        assertArrayEquals(stored, Utils.readContents(
+                to.looseFile(ObjectStore.Kind.TREE, id)));
+        assertArrayEquals(bytes, to.read(ObjectStore.Kind.TREE, id));
+    }
+
+    @Test
+    public void copyFromStoresDeltasWhole() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        byte[] base = noise(20000);
+        String baseID = Utils.sha1(base);
+        byte[] bytes = base.clone();
+        bytes[100] ^= 1;
+        String id = Utils.sha1(bytes);
+        from.write(ObjectStore.Kind.BLOB, baseID, base);
+        from.writeDelta(ObjectStore.Kind.BLOB, id, bytes, baseID);
+        byte[] delta = from.readStored(ObjectStore.Kind.BLOB, id);
+        assertEquals(ObjectCodec.DELTA, ObjectCodec.of(delta,
+                delta.length));
+        to.copyFrom(from, ObjectStore.Kind.BLOB, id);
+        assertFalse(to.contains(ObjectStore.Kind.BLOB, baseID));
+        byte[] stored = to.readStored(ObjectStore.Kind.BLOB, id);
+        assertNotEquals(ObjectCodec.DELTA, ObjectCodec.of(stored,
+                stored.length));
+        assertArrayEquals(bytes, to.read(ObjectStore.Kind.BLOB, id));
+    }
+
+    @Test
+    public void copyFromFailsOnAMissingObject() {
+        try {
+            store("to").copyFrom(store("from"), ObjectStore.Kind.BLOB,
+                    Utils.sha1("none"));
+            fail("copied an object the store lacks");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("Missing object"));
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A read-only pack of Gitlet objects. A pack is a pair of files: NAME.pack
+ * holds the stored bytes of every object back to back, and NAME.idx holds one
+ * fixed-size record per object, sorted by object ID, giving its kind, offset
+ * and length in the pack. Both files are memory-mapped and looked up by
+ * binary search, so reading an object costs no file open.
+ *  @author Grace Chen
+ */
+class Pack {
+
+    /** Open the pack whose index file is IDXFILE.
+     * @param idxFile the .idx file of the pack. */
+    Pack(File idxFile) {
+        String name = idxFile.getName();
+        _name = name.substring(0, name.length() - IDX_SUFFIX.length());
+        File packFile = new File(idxFile.getParentFile(), _name + PACK_SUFFIX);
+        _index = map(idxFile);
+        _data = map(packFile);
+        if (_index.getInt(0) != IDX_MAGIC || _data.getInt(0) != PACK_MAGIC) {
+            throw Utils.error("Corrupt pack %s.", _name);
+        }
+        _count = _index.getInt(8);
+    }
+
+    /** accessor for the name of this pack.
+     * @return the pack name, without suffix. */
+    String getName() {
+        return _name;
+    }
+
+    /** check whether this pack holds an object.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return whether the object is in this pack. */
+    boolean contains(ObjectStore.Kind kind, String id) {
+        return find(kind, id) >= 0;
+    }
+
+    /** read an object out of this pack.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return the bytes of the object as stored, or null if it is not
+     * here. */
+    byte[] read(ObjectStore.Kind kind, String id) {
+        ByteBuffer slice = slice(kind, id);
+        if (slice == null) {
+            return null;
+        }
+        byte[] result = new byte[slice.remaining()];
+        slice.get(result);
+        return result;
+    }
+
+    /** view an object in this pack without copying it.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return a buffer over the mapped bytes of the object, or null if it
+     * is not here. */
+    ByteBuffer slice(ObjectStore.Kind kind, String id) {
+        int i = find(kind, id);
+        if (i < 0) {
+            return null;
+        }
+        int rec = HEADER_SIZE + i * RECORD_SIZE;
+        long offset = _index.getLong(rec + ID_BYTES + 1);
+        int length = _index.getInt(rec + ID_BYTES + 1 + 8);
+        ByteBuffer data = _data.duplicate();
+        data.position((int) offset);
+        data.limit((int) offset + length);
+        return data.slice();
+    }
+
+    /** list the IDs of every object of a kind in this pack.
+     * @param kind the kind of object.
+     * @return the object IDs, in sorted order. */
+    List<String> list(ObjectStore.Kind kind) {
+        List<String> result = new ArrayList<>();
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = 0; i < _count; i += 1) {
+            int rec = HEADER_SIZE + i * RECORD_SIZE;
+            if (_index.get(rec + ID_BYTES) == kind.code()) {
+                _index.duplicate().position(rec).get(raw);
+                result.add(toHex(raw));
+            }
+        }
+        return result;
+    }
+
+    /** find the objects of a kind whose IDs start with a prefix, by
+     * binary search for the first ID not below it.
+     * @param kind the kind of object.
+     * @param prefix a hexadecimal ID prefix, in lower case.
+     * @param limit the most IDs to return.
+     * @return the matching IDs, in order. */
+    List<String> withPrefix(ObjectStore.Kind kind, String prefix,
+                            int limit) {
+        StringBuilder low = new StringBuilder(prefix);
+        while (low.length() < Utils.UID_LENGTH) {
+            low.append('0');
+        }
+        byte[] key = fromHex(low.toString());
+        List<String> result = new ArrayList<>();
+        if (key == null) {
+            return result;
+        }
+        int lo = 0;
+        int hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareRecord(mid, key, (byte) 0) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = lo; i < _count && result.size() < limit; i += 1) {
+            int rec = HEADER_SIZE + i * RECORD_SIZE;
+            _index.duplicate().position(rec).get(raw);
+            String id = toHex(raw);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if (_index.get(rec + ID_BYTES) == kind.code()) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** binary search the index for an object.
+     * @param kind the kind of object.
+     * @param id the object ID.
+     * @return the record number, or -1 if absent. */
+    private int find(ObjectStore.Kind kind, String id) {
+        byte[] key = fromHex(id);
+        if (key == null) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareRecord(mid, key, kind.code());
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** compare index record I against an ID and kind.
+     * @param i the record number.
+     * @param key the binary object ID.
+     * @param code the kind code.
+     * @return negative, zero or positive as the record sorts before,
+     * equal to or after the key. */
+    private int compareRecord(int i, byte[] key, byte code) {
+        int rec = HEADER_SIZE + i * RECORD_SIZE;
+        for (int j = 0; j < ID_BYTES; j += 1) {
+            int a = _index.get(rec + j) & 0xff;
+            int b = key[j] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return _index.get(rec + ID_BYTES) - code;
+    }
+
+    /** write a new pack into a directory. The pack only becomes visible
+     * once its index has been renamed into place, and both files are on
+     * disk before they are renamed, and the renames before this returns,
+     * so that the caller may then delete the objects' other copies.
+     * @param dir the pack directory.
+     * @param store the store the objects are read from.
+     * @param entries the objects to pack.
+     * @return the name of the new pack. */
+    static String write(File dir, ObjectStore store, List<Entry> entries) {
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted);
+        File tmpPack = new File(dir, "tmp" + PACK_SUFFIX);
+        File tmpIdx = new File(dir, "tmp" + IDX_SUFFIX);
+        List<String> ids = new ArrayList<>();
+        try (FileChannel pack = FileChannel.open(tmpPack.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+            header.putInt(PACK_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                pack.write(header);
+            }
+            long offset = PACK_HEADER_SIZE;
+            for (Entry e : sorted) {
+                try (ReadableByteChannel in =
+                             store.openStored(e._kind, e._id)) {
+                    long length = ObjectStore.copy(in, pack);
+                    if (offset + length > MAX_DATA_BYTES) {
+                        throw Utils.error("Pack too large at object %s.",
+                                e._id);
+                    }
+                    e._offset = offset;
+                    e._length = (int) length;
+                    offset += length;
+                }
+                ids.add(e._id);
+            }
+            pack.force(true);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+        try (FileOutputStream file = new FileOutputStream(tmpIdx)) {
+            DataOutputStream idx = new DataOutputStream(
+                    new BufferedOutputStream(file));
+            idx.writeInt(IDX_MAGIC);
+            idx.writeInt(VERSION);
+            idx.writeInt(sorted.length);
+            for (Entry e : sorted) {
+                idx.write(fromHex(e._id));
+                idx.writeByte(e._kind.code());
+                idx.writeLong(e._offset);
+                idx.writeInt(e._length);
+            }
+            idx.flush();
+            file.getFD().sync();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+        String name = "pack-" + Utils.sha1(new ArrayList<Object>(ids));
+        try {
+            Files.move(tmpPack.toPath(), new File(dir, name + PACK_SUFFIX)
+                    .toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpIdx.toPath(), new File(dir, name + IDX_SUFFIX)
+                    .toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+        syncDirectory(dir);
+        return name;
+    }
+
+    /** force the entries of a directory, such as files just renamed into
+     * it, to disk. Systems that cannot open a directory, such as Windows,
+     * make renames durable without it.
+     * @param dir the directory. */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** map a whole file read-only into memory.
+     * @param file the file to map.
+     * @return the mapped buffer. */
+    private static MappedByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot open pack %s.", file.getName());
+        }
+    }
+
+    /** convert a hexadecimal object ID to bytes.
+     * @param id the object ID.
+     * @return its binary form, or null if ID is not a full SHA-1 ID. */
+    static byte[] fromHex(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return null;
+        }
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int hi = Character.digit(id.charAt(2 * i), 16);
+            int lo = Character.digit(id.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
+    /** convert a binary object ID to hexadecimal.
+     * @param raw the binary object ID.
+     * @return its hexadecimal form. */
+    static String toHex(byte[] raw) {
+        StringBuilder result = new StringBuilder(Utils.UID_LENGTH);
+        for (byte b : raw) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** An object to be written into a pack. */
+    static class Entry implements Comparable<Entry> {
+
+        /** an entry for an object.
+         * @param kind the kind of object.
+         * @param id the object ID. */
+        Entry(ObjectStore.Kind kind, String id) {
+            _kind = kind;
+            _id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = _id.compareTo(other._id);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return _kind.code() - other._kind.code();
+        }
+
+        /** kind of the object. */
+        private ObjectStore.Kind _kind;
+
+        /** ID of the object. */
+        private String _id;
+
+        /** offset of the object in the pack. */
+        private long _offset;
+
+        /** length of the object in bytes. */
+        private int _length;
+    }
+
+    /** suffix of pack data files. */
+    static final String PACK_SUFFIX = ".pack";
+
+    /** suffix of pack index files. */
+    static final String IDX_SUFFIX = ".idx";
+
+    /** magic number at the start of a pack data file. */
+    private static final int PACK_MAGIC = 0x47504b31;
+
+    /** magic number at the start of a pack index file. */
+    private static final int IDX_MAGIC = 0x47494431;
+
+    /** version of the pack format. */
+    private static final int VERSION = 1;
+
+    /** largest pack data file, whose objects can all be sliced from one
+     * mapping by int offsets. */
+    private static final long MAX_DATA_BYTES = Integer.MAX_VALUE;
+
+    /** size of the pack data header: magic and version. */
+    private static final int PACK_HEADER_SIZE = 8;
+
+    /** size of the index header: magic, version and count. */
+    private static final int HEADER_SIZE = 12;
+
+    /** length of a binary SHA-1 ID. */
+    static final int ID_BYTES = 20;
+
+    /** size of an index record: ID, kind, offset and length. */
+    private static final int RECORD_SIZE = ID_BYTES + 1 + 8 + 4;
+
+    /** the name of this pack. */
+    private final String _name;
+
+    /** the mapped index file. */
+    private final MappedByteBuffer _index;
+
+    /** the mapped data file. */
+    private final MappedByteBuffer _data;
+
+    /** number of objects in this pack. */
+    private final int _count;
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of packs and of repacking an object store.
+ *  @author Grace Chen
+ */
+public class PackTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** store some bytes as a blob.
+     * @param store the store.
+     * @param bytes the contents.
+     * @return the blob ID. */
+    private static String put(ObjectStore store, byte[] bytes) {
+        String id = Utils.sha1(bytes);
+        store.write(ObjectStore.Kind.BLOB, id, bytes);
+        return id;
+    }
+
+    /** some bytes that do not compress.
+     * @param seed the random seed.
+     * @param size the number of bytes.
+     * @return the bytes. */
+    private static byte[] noise(long seed, int size) {
+        byte[] result = new byte[size];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void repackedObjectsAreFoundInThePack() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i += 1) {
+            ids.add(put(store, ("blob " + i).getBytes()));
+        }
+        String commit = Utils.sha1("commit");
+        store.write(ObjectStore.Kind.COMMIT, commit, "commit".getBytes());
+        List<String> skipped = new ArrayList<>();
+        assertEquals(51, store.repack(skipped));
+        assertTrue(skipped.isEmpty());
+
+        ObjectStore reopened = new ObjectStore(tmp.getRoot());
+        for (int i = 0; i < ids.size(); i += 1) {
+            String id = ids.get(i);
+            assertFalse(reopened.looseFile(ObjectStore.Kind.BLOB, id)
+                    .exists());
+            assertTrue(reopened.contains(ObjectStore.Kind.BLOB, id));
+            assertArrayEquals(("blob " + i).getBytes(),
+                    reopened.read(ObjectStore.Kind.BLOB, id));
+        }
+        assertArrayEquals("commit".getBytes(),
+                reopened.read(ObjectStore.Kind.COMMIT, commit));
+        assertFalse(reopened.contains(ObjectStore.Kind.COMMIT, ids.get(0)));
+        assertNull(reopened.read(ObjectStore.Kind.BLOB, commit));
+        assertEquals(ids.size(), reopened.list(ObjectStore.Kind.BLOB).size());
+    }
+
+    @Test
+    public void objectsOverThePackLimitAreLeftLooseAndReported() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        store.setMaxPackBytes(4096);
+        byte[] big = noise(1, 8192);
+        String bigID = put(store, big);
+        List<String> small = new ArrayList<>();
+        for (int i = 0; i < 6; i += 1) {
+            small.add(put(store, noise(i + 2, 1000)));
+        }
+        List<String> skipped = new ArrayList<>();
+        assertEquals(small.size(), store.repack(skipped));
+        assertEquals(List.of(bigID), skipped);
+        assertTrue(store.looseFile(ObjectStore.Kind.BLOB, bigID).exists());
+        assertArrayEquals(big, store.read(ObjectStore.Kind.BLOB, bigID));
+
+        File[] packs = new File(tmp.getRoot(), "packs").listFiles(
+            (dir, name) -> name.endsWith(Pack.PACK_SUFFIX));
+        assertTrue("objects split across packs", packs.length > 1);
+        for (File pack : packs) {
+            assertTrue(pack.length() <= 4096 + 8);
+        }
+        for (int i = 0; i < small.size(); i += 1) {
+            assertArrayEquals(noise(i + 2, 1000),
+                    store.read(ObjectStore.Kind.BLOB, small.get(i)));
+        }
+    }
+
+    @Test
+    public void packsAreReadAfterLooseCopiesAreGone() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String id = put(store, "contents".getBytes());
+        store.repack(new ArrayList<>());
+        File tmpDir = new File(tmp.getRoot(), "packs");
+        for (String name : Utils.plainFilenamesIn(tmpDir)) {
+            assertFalse(name.startsWith("tmp"));
+        }
+        assertArrayEquals("contents".getBytes(),
+                new ObjectStore(tmp.getRoot()).read(ObjectStore.Kind.BLOB,
+                        id));
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of resolving abbreviated object IDs.
+ *  @author Grace Chen
+ */
+public class ResolveTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** a full ID made from a prefix.
+     * @param prefix the hexadecimal start of the ID.
+     * @return PREFIX padded with zeros to a full ID. */
+    private static String id(String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < Utils.UID_LENGTH) {
+            result.append('0');
+        }
+        return result.toString();
+    }
+
+    /** store an object with a given ID.
+     * @param store the store.
+     * @param kind the kind of object.
+     * @param id its ID. */
+    private static void put(ObjectStore store, ObjectStore.Kind kind,
+                            String id) {
+        store.write(kind, id, id.getBytes());
+    }
+
+    @Test
+    public void uniquePrefixResolvesLooseAndPacked() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        put(store, ObjectStore.Kind.COMMIT, id("abcd1"));
+        put(store, ObjectStore.Kind.COMMIT, id("abce2"));
+        assertEquals(id("abcd1"),
+                store.resolve(ObjectStore.Kind.COMMIT, "abcd"));
+        store.repack(new ArrayList<>());
+        put(store, ObjectStore.Kind.COMMIT, id("ffff"));
+        assertEquals(id("abcd1"),
+                store.resolve(ObjectStore.Kind.COMMIT, "ABCD"));
+        assertEquals(id("abce2"),
+                store.resolve(ObjectStore.Kind.COMMIT, "abce2"));
+        assertEquals(id("ffff"),
+                store.resolve(ObjectStore.Kind.COMMIT, "ffff0"));
+        assertNull(store.resolve(ObjectStore.Kind.COMMIT, "abcf"));
+    }
+
+    @Test(expected = GitletException.class)
+    public void sharedPrefixInOnePackIsAmbiguous() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        put(store, ObjectStore.Kind.COMMIT, id("1234a"));
+        put(store, ObjectStore.Kind.COMMIT, id("1234b"));
+        store.repack(new ArrayList<>());
+        store.resolve(ObjectStore.Kind.COMMIT, "1234");
+    }
+
+    @Test(expected = GitletException.class)
+    public void sharedPrefixAcrossLooseAndPackedIsAmbiguous() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        put(store, ObjectStore.Kind.COMMIT, id("1234a"));
+        store.repack(new ArrayList<>());
+        put(store, ObjectStore.Kind.COMMIT, id("1234b"));
+        store.resolve(ObjectStore.Kind.COMMIT, "1234");
+    }
+
+    @Test
+    public void otherKindsDoNotMakeAPrefixAmbiguous() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        put(store, ObjectStore.Kind.COMMIT, id("5678a"));
+        put(store, ObjectStore.Kind.BLOB, id("5678b"));
+        put(store, ObjectStore.Kind.TREE, id("5678c"));
+        store.repack(new ArrayList<>());
+        assertEquals(id("5678a"),
+                store.resolve(ObjectStore.Kind.COMMIT, "5678"));
+    }
+
+    @Test
+    public void shortOrMalformedPrefixesResolveToNothing() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        put(store, ObjectStore.Kind.COMMIT, id("abcd"));
+        assertNull(store.resolve(ObjectStore.Kind.COMMIT, "abc"));
+        assertNull(store.resolve(ObjectStore.Kind.COMMIT, "abcg"));
+        assertNull(store.resolve(ObjectStore.Kind.COMMIT, id("abcd") + "0"));
+    }
+}
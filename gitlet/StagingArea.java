@@ -3,19 +3,57 @@ package gitlet;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** The staging area
  * Gitlet, the tiny stupid version-control system.
+ * It is stored in the Binary format, with its paths sorted so that they
+ * share their directories; one written by Java serialization is still
+ * read.
  *  @author Grace Chen
  */
 public class StagingArea implements Serializable {
 
+    /** serial version of staging areas written by Java serialization
+     * before the Binary format, so that they can still be read. */
+    private static final long serialVersionUID = -2395914700624306663L;
+
     /** constructor. */
     public StagingArea() {
         stagingAdd = new HashMap<>();
         stagingRm = new HashSet<>();
     }
 
+    /** read a staging area.
+     * @param bytes a stored staging area, in the Binary format or Java
+     * serialized.
+     * @return the staging area. */
+    static StagingArea decode(byte[] bytes) {
+        if (!Binary.isRecord(bytes, MAGIC)) {
+            return Utils.deserialize(bytes, StagingArea.class);
+        }
+        StagingArea result = new StagingArea();
+        Binary.Reader in = new Binary.Reader(bytes, MAGIC);
+        while (in.next()) {
+            if (in.tag() == ADD) {
+                result.stagingAdd.putAll(in.files());
+            } else if (in.tag() == RM) {
+                result.stagingRm.addAll(in.paths());
+            }
+        }
+        return result;
+    }
+
+    /** the bytes of this staging area as it is stored.
+     * @return the record. */
+    byte[] encode() {
+        return new Binary.Writer(MAGIC)
+            .files(ADD, new TreeMap<>(stagingAdd))
+            .paths(RM, new TreeSet<>(stagingRm))
+            .toByteArray();
+    }
+
     /** accessor method for staging add.
      * @return stagingAdd hashMap.*/
     public HashMap<String, String> getToAdd() {
@@ -94,4 +132,13 @@ public class StagingArea implements Serializable {
     /** staging for removing. */
     private HashSet<String> stagingRm;
 
+    /** magic bytes of a staging area record. */
+    private static final String MAGIC = "GS";
+
+    /** record field: the files staged for addition. */
+    private static final int ADD = 1;
+
+    /** record field: the files staged for removal. */
+    private static final int RM = 2;
+
 }
@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The stat cache of the working directory. For each file it remembers
+ * the size, modification time and inode the file had when it was last
+ * hashed, together with the blob ID it hashed to, so that a file whose
+ * stat data is unchanged does not have to be read again. Lookups and
+ * updates may come from several threads at once.
+ *
+ * It is stored in the Binary format, as its paths, sorted so that they
+ * share their directories, followed by their blob IDs and each part of
+ * their stat data as one list in the same order; one written by Java
+ * serialization is still read.
+ *  @author Grace Chen
+ */
+public class StatCache implements Serializable {
+
+    /** serial version of the saved cache, pinned so that changes to the
+     * class do not make existing indices unreadable. */
+    private static final long serialVersionUID = 697755302945674698L;
+
+    /** constructor. */
+    public StatCache() {
+        entries = new HashMap<>();
+    }
+
+    /** read a stat cache. One that was Java serialized comes back dirty,
+     * so that it is saved again in the Binary format.
+     * @param bytes a stored cache, in the Binary format or Java
+     * serialized.
+     * @return the cache. */
+    static StatCache decode(byte[] bytes) {
+        if (!Binary.isRecord(bytes, MAGIC)) {
+            StatCache result = Utils.deserialize(bytes, StatCache.class);
+            result.dirty = true;
+            return result;
+        }
+        List<String> paths = null;
+        List<String> ids = null;
+        long[] sizes = null;
+        long[] mtimes = null;
+        long[] recorded = null;
+        List<String> inodes = null;
+        Binary.Reader in = new Binary.Reader(bytes, MAGIC);
+        while (in.next()) {
+            if (in.tag() == PATHS) {
+                paths = in.paths();
+            } else if (in.tag() == IDS) {
+                ids = in.ids();
+            } else if (in.tag() == SIZES) {
+                sizes = in.numbers();
+            } else if (in.tag() == MTIMES) {
+                mtimes = in.numbers();
+            } else if (in.tag() == INODES) {
+                inodes = in.paths();
+            } else if (in.tag() == RECORDED) {
+                recorded = in.numbers();
+            }
+        }
+        StatCache result = new StatCache();
+        if (paths == null || ids == null || sizes == null || mtimes == null
+                || inodes == null || recorded == null) {
+            return result;
+        }
+        result.entries = new HashMap<>(2 * paths.size());
+        for (int i = 0; i < paths.size(); i += 1) {
+            result.entries.put(paths.get(i), new Entry(sizes[i], mtimes[i],
+                    inodes.get(i), ids.get(i), recorded[i]));
+        }
+        return result;
+    }
+
+    /** the bytes of this cache as it is stored.
+     * @return the record. */
+    synchronized byte[] encode() {
+        TreeMap<String, Entry> sorted = new TreeMap<>(entries);
+        List<String> ids = new ArrayList<>(sorted.size());
+        long[] sizes = new long[sorted.size()];
+        long[] mtimes = new long[sorted.size()];
+        long[] recorded = new long[sorted.size()];
+        List<String> inodes = new ArrayList<>(sorted.size());
+        int i = 0;
+        for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+            Entry entry = e.getValue();
+            ids.add(entry.blobID);
+            sizes[i] = entry.size;
+            mtimes[i] = entry.mtime;
+            recorded[i] = entry.recorded;
+            inodes.add(entry.inode);
+            i += 1;
+        }
+        return new Binary.Writer(MAGIC)
+            .paths(PATHS, sorted.keySet())
+            .ids(IDS, ids)
+            .numbers(SIZES, sizes)
+            .numbers(MTIMES, mtimes)
+            .paths(INODES, inodes)
+            .numbers(RECORDED, recorded)
+            .toByteArray();
+    }
+
+    /** look up the blob ID of a file whose stat data is unchanged.
+     * @param filename the file name.
+     * @return the cached blob ID, or null if the file must be rehashed. */
+    public String lookup(String filename) {
+        return lookup(filename, null);
+    }
+
+    /** look up the blob ID of a file whose stat data is unchanged, given
+     * stat data already read, as by a walk of the working tree.
+     * @param filename the file name.
+     * @param attrs the file's attributes, or null to read them.
+     * @return the cached blob ID, or null if the file must be rehashed. */
+    public String lookup(String filename, BasicFileAttributes attrs) {
+        Entry cached = get(filename);
+        if (cached == null) {
+            return null;
+        }
+        Entry current = attrs == null ? stat(filename, cached.blobID)
+            : entry(attrs, cached.blobID);
+        if (current == null || !current.sameStat(cached)
+                || cached.isRacy()) {
+            return null;
+        }
+        return cached.blobID;
+    }
+
+    /** remember the blob ID a file currently hashes to.
+     * @param filename the file name.
+     * @param blobID the blob ID of its current content. */
+    public void record(String filename, String blobID) {
+        Entry current = stat(filename, blobID);
+        if (current == null) {
+            forget(filename);
+        } else {
+            put(filename, current);
+        }
+    }
+
+    /** drop the entry for a file.
+     * @param filename the file name. */
+    public synchronized void forget(String filename) {
+        if (entries.remove(filename) != null) {
+            dirty = true;
+        }
+    }
+
+    /** check whether the cache changed since it was loaded.
+     * @return whether it needs saving. */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /** mark the cache as saved. */
+    public synchronized void clearDirty() {
+        dirty = false;
+    }
+
+    /** the entry for a file. The file itself is read by the callers,
+     * outside the lock, so that threads stat files in parallel.
+     * @param filename the file name.
+     * @return its entry, or null if there is none. */
+    private synchronized Entry get(String filename) {
+        return entries.get(filename);
+    }
+
+    /** set the entry for a file.
+     * @param filename the file name.
+     * @param entry its new entry. */
+    private synchronized void put(String filename, Entry entry) {
+        entries.put(filename, entry);
+        dirty = true;
+    }
+
+    /** read the stat data of a file.
+     * @param filename the file name.
+     * @param blobID the blob ID to attach to the entry.
+     * @return the entry, or null if the file is not a normal file. */
+    private static Entry stat(String filename, String blobID) {
+        try {
+            return entry(Files.readAttributes(new File(filename).toPath(),
+                    BasicFileAttributes.class), blobID);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** make an entry from stat data.
+     * @param attrs the attributes of the file.
+     * @param blobID the blob ID to attach to the entry.
+     * @return the entry, or null if the file is not a normal file. */
+    private static Entry entry(BasicFileAttributes attrs, String blobID) {
+        if (!attrs.isRegularFile()) {
+            return null;
+        }
+        Object key = attrs.fileKey();
+        return new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                key == null ? "" : key.toString(), blobID);
+    }
+
+    /** The stat data recorded for one file. */
+    private static class Entry implements Serializable {
+
+        /** serial version of saved entries. */
+        private static final long serialVersionUID = 1418334053110210717L;
+
+        /** an entry.
+         * @param fileSize the size in bytes.
+         * @param modified the modification time in milliseconds.
+         * @param fileKey the inode, as reported by the file system.
+         * @param id the blob ID. */
+        Entry(long fileSize, long modified, String fileKey, String id) {
+            this(fileSize, modified, fileKey, id,
+                    System.currentTimeMillis());
+        }
+
+        /** an entry read back from a stored cache.
+         * @param fileSize the size in bytes.
+         * @param modified the modification time in milliseconds.
+         * @param fileKey the inode, as reported by the file system.
+         * @param id the blob ID.
+         * @param when the time the entry was recorded. */
+        Entry(long fileSize, long modified, String fileKey, String id,
+              long when) {
+            size = fileSize;
+            mtime = modified;
+            inode = fileKey;
+            blobID = id;
+            recorded = when;
+        }
+
+        /** compare stat data.
+         * @param other another entry for the same file.
+         * @return whether size, mtime and inode all match. */
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && inode.equals(other.inode);
+        }
+
+        /** a file modified within the timestamp granularity of the moment
+         * it was hashed may have changed again without its mtime moving,
+         * so such an entry is never trusted.
+         * @return whether this entry must be rehashed. */
+        boolean isRacy() {
+            return mtime >= recorded - RACY_WINDOW;
+        }
+
+        /** size of the file. */
+        private long size;
+
+        /** modification time of the file. */
+        private long mtime;
+
+        /** inode of the file. */
+        private String inode;
+
+        /** blob ID of the file content. */
+        private String blobID;
+
+        /** when this entry was recorded. */
+        private long recorded;
+    }
+
+    /** magic bytes of a stored stat cache. */
+    private static final String MAGIC = "GI";
+
+    /** field of the paths of the files. */
+    private static final int PATHS = 1;
+
+    /** field of the blob IDs of the files. */
+    private static final int IDS = 2;
+
+    /** field of the sizes of the files. */
+    private static final int SIZES = 3;
+
+    /** field of the modification times of the files. */
+    private static final int MTIMES = 4;
+
+    /** field of the inodes of the files. */
+    private static final int INODES = 5;
+
+    /** field of the times the entries were recorded. */
+    private static final int RECORDED = 6;
+
+    /** coarsest file system timestamp granularity we guard against. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** entries by file name. */
+    private HashMap<String, Entry> entries;
+
+    /** whether the cache changed since it was loaded. */
+    private transient boolean dirty;
+}
@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of the stat cache.
+ *  @author Grace Chen
+ */
+public class StatCacheTest {
+
+    /** a scratch working directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** write a file and date it well before now, so that it is not racy.
+     * @param name the file name.
+     * @param contents its contents.
+     * @return the path of the file. */
+    private String oldFile(String name, String contents) {
+        File file = new File(tmp.getRoot(), name);
+        Utils.writeContents(file, contents);
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        return file.getPath();
+    }
+
+    @Test
+    public void unchangedFileIsNotRehashed() {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        cache.record(f, "id1");
+        assertTrue(cache.isDirty());
+        assertEquals("id1", cache.lookup(f));
+    }
+
+    @Test
+    public void changedFileIsRehashed() {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        cache.record(f, "id1");
+        oldFile("f.txt", "hello, world");
+        assertNull(cache.lookup(f));
+        new File(f).delete();
+        assertNull(cache.lookup(f));
+    }
+
+    @Test
+    public void fileModifiedJustNowIsRacy() {
+        StatCache cache = new StatCache();
+        File f = new File(tmp.getRoot(), "f.txt");
+        Utils.writeContents(f, "hello");
+        cache.record(f.getPath(), "id1");
+        assertNull(cache.lookup(f.getPath()));
+    }
+
+    @Test
+    public void forgetDropsTheEntry() {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        cache.record(f, "id1");
+        cache.clearDirty();
+        cache.forget(f);
+        assertTrue(cache.isDirty());
+        assertNull(cache.lookup(f));
+        cache.clearDirty();
+        cache.forget(f);
+        assertFalse(cache.isDirty());
+    }
+
+    @Test
+    public void savedCacheIsReadBack() {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        cache.record(f, "id1");
+        StatCache read = Utils.deserialize(Utils.serialize(cache),
+                StatCache.class);
+        assertEquals("id1", read.lookup(f));
+        assertFalse(read.isDirty());
+    }
+
+    @Test
+    public void recordsFromManyThreadsAllLand() {
+        StatCache cache = new StatCache();
+        String[] files = new String[200];
+        for (int i = 0; i < files.length; i += 1) {
+            files[i] = oldFile("f" + i, "contents " + i);
+        }
+        IntStream.range(0, files.length).parallel().forEach(i ->
+            cache.record(files[i], "id" + i));
+        for (int i = 0; i < files.length; i += 1) {
+            assertEquals("id" + i, cache.lookup(files[i]));
+        }
+    }
+
+    @Test
+    public void encodedCacheIsReadBack() {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        String g = oldFile("g.txt", "world");
+        cache.record(f, Utils.sha1("f"));
+        cache.record(g, Utils.sha1("g"));
+        StatCache read = StatCache.decode(cache.encode());
+        assertEquals(Utils.sha1("f"), read.lookup(f));
+        assertEquals(Utils.sha1("g"), read.lookup(g));
+        assertFalse(read.isDirty());
+        assertArrayEquals(cache.encode(), read.encode());
+    }
+
+    @Test
+    public void serializedCacheIsReadAndSavedAgain() {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        cache.record(f, "id1");
+        StatCache read = StatCache.decode(Utils.serialize(cache));
+        assertEquals("id1", read.lookup(f));
+        assertTrue(read.isDirty());
+    }
+
+    @Test
+    public void lookupTrustsTheAttributesItIsGiven() throws IOException {
+        StatCache cache = new StatCache();
+        String f = oldFile("f.txt", "hello");
+        cache.record(f, "id1");
+        BasicFileAttributes attrs = Files.readAttributes(
+                new File(f).toPath(), BasicFileAttributes.class);
+        assertEquals("id1", cache.lookup(f, attrs));
+        oldFile("f.txt", "hello, world");
+        assertEquals("id1", cache.lookup(f, attrs));
+        assertNull(cache.lookup(f, null));
+    }
+
+    @Test
+    public void serialVersionsArePinned() {
+        assertEquals(697755302945674698L, ObjectStreamClass
+                .lookup(StatCache.class).getSerialVersionUID());
+    }
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Commit histories written straight into an object store, for tests
+ * of the code that walks them. The commits are records as Commit writes
+ * them, but are made without a repository, and track no files unless
+ * they are given some.
+ *  @author Grace Chen
+ */
+class TestHistory {
+
+    /** a history in STORE.
+     * @param store the object store the commits are written to. */
+    TestHistory(ObjectStore store) {
+        _store = store;
+    }
+
+    /** write a commit, a minute after the last one.
+     * @param message its log message.
+     * @param parents its parents: none, one, or two for a merge.
+     * @return its ID. */
+    String commit(String message, String... parents) {
+        _time += MINUTE;
+        return commit(_time, message, parents);
+    }
+
+    /** write a commit.
+     * @param time its time in milliseconds since the epoch.
+     * @param message its log message.
+     * @param parents its parents: none, one, or two for a merge.
+     * @return its ID. */
+    String commit(long time, String message, String... parents) {
+        return write(time, message, null, parents);
+    }
+
+    /** write a commit of some files, a minute after the last one, with
+     * their blobs and trees.
+     * @param files map from the path of each file to its contents.
+     * @param message its log message.
+     * @param parents its parents: none, one, or two for a merge.
+     * @return its ID. */
+    String commit(Map<String, String> files, String message,
+                  String... parents) {
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            byte[] contents = e.getValue().getBytes(StandardCharsets.UTF_8);
+            String id = blob(e.getValue());
+            _store.write(ObjectStore.Kind.BLOB, id, contents);
+            blobs.put(e.getKey(), id);
+        }
+        _time += MINUTE;
+        return write(_time, message, Tree.update(_store, null, blobs),
+                parents);
+    }
+
+    /** the ID of the blob of some contents, as commit(FILES, ...) writes
+     * it.
+     * @param contents the contents.
+     * @return its ID. */
+    static String blob(String contents) {
+        return Utils.sha1(contents);
+    }
+
+    /** write a commit.
+     * @param time its time in milliseconds since the epoch.
+     * @param message its log message.
+     * @param tree its root tree, or null.
+     * @param parents its parents.
+     * @return its ID. */
+    private String write(long time, String message, String tree,
+                         String[] parents) {
+        byte[] bytes = new Binary.Writer(MAGIC)
+            .string(MESSAGE, message)
+            .number(TIME, time)
+            .number(ZONE, 0)
+            .id(TREE, tree)
+            .id(PARENT, parents.length > 0 ? parents[0] : null)
+            .id(PARENT2, parents.length > 1 ? parents[1] : null)
+            .toByteArray();
+        String id = Utils.sha1(bytes);
+        _store.write(ObjectStore.Kind.COMMIT, id, bytes);
+        return id;
+    }
+
+    /** magic bytes of a commit record, as in Commit. */
+    private static final String MAGIC = "GC";
+
+    /** record field: the log message, as in Commit. */
+    private static final int MESSAGE = 1;
+
+    /** record field: the time, as in Commit. */
+    private static final int TIME = 2;
+
+    /** record field: the time zone offset, as in Commit. */
+    private static final int ZONE = 3;
+
+    /** record field: the root tree, as in Commit. */
+    private static final int TREE = 5;
+
+    /** record field: the first parent, as in Commit. */
+    private static final int PARENT = 6;
+
+    /** record field: the second parent, as in Commit. */
+    private static final int PARENT2 = 7;
+
+    /** one minute in milliseconds. */
+    private static final long MINUTE = 60000;
+
+    /** the store commits are written to. */
+    private final ObjectStore _store;
+
+    /** the time of the last commit made by commit(MESSAGE, PARENTS). */
+    private long _time = 1000000000000L;
+}
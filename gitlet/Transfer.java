@@ -0,0 +1,431 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/** The objects one store must send another for the other to have a
+ * commit and everything it reaches, as push and fetch move a branch.
+ *
+ * The sender walks back from the commit it wants the other store to
+ * have, stopping at the commits that store already has. Objects are
+ * always stored after everything they refer to, so a store that has a
+ * commit has its whole history, trees and blobs too, and each commit is
+ * a "have" that ends the walk. Only the trees of the missing commits are
+ * then read, skipping subtrees that are unchanged from the first parent
+ * or that the other store has, so moving a branch by one commit reads
+ * and probes a handful of objects however large the stores are. The
+ * objects are copied blobs first, then trees and then commits, each
+ * after what it refers to, so that a transfer cut short leaves the same
+ * guarantee behind. Objects are copied as they are stored, without being
+ * decoded; see ObjectStore.copyFrom.
+ *
+ * A store at the other end of a connection cannot be probed; it names
+ * the commits it has instead, and only the trees that differ from a
+ * commit's first parent are sent, which the other store skips if it has
+ * them. The objects then go down the connection as a Bundle.
+ *
+ * A shallow transfer sends only the commits within some depth of the
+ * wanted one, as a shallow fetch does; the commits it sends whose parents
+ * it leaves out are its boundary, which the other store records as
+ * shallow. A commit that either store holds as shallow has no history
+ * there: the sender does not walk past its own shallow commits, and a
+ * shallow commit of the other store is not taken to bring its history
+ * along, so that a later, deeper transfer fills that history in.
+ *
+ * A partial transfer sends commits and trees but no blobs, leaving the
+ * other store to ask for the blobs it needs later, a few at a time, by
+ * wantBlobs.
+ *  @author Grace Chen
+ */
+class Transfer {
+
+    /** a transfer between two stores.
+     * @param from the store that has the objects.
+     * @param to the store to copy them into. */
+    Transfer(ObjectStore from, ObjectStore to) {
+        _from = from;
+        _to = to;
+        _haves = null;
+    }
+
+    /** a transfer to a store that cannot be probed, such as one at the
+     * other end of a connection, which has named the commits it has; it
+     * has everything they reach, too.
+     * @param from the store that has the objects.
+     * @param haves the commits the other store has, such as the heads of
+     * its branches; those that FROM lacks are ignored. */
+    Transfer(ObjectStore from, Collection<String> haves) {
+        _from = from;
+        _to = null;
+        _haves = haves;
+    }
+
+    /** mark commits of either store as shallow: present without their
+     * parents.
+     * @param fromShallow the shallow commits of the sending store.
+     * @param toShallow the shallow commits of the other store. */
+    void setShallow(Collection<String> fromShallow,
+                    Collection<String> toShallow) {
+        _fromShallow = new HashSet<>(fromShallow);
+        _toShallow = new HashSet<>(toShallow);
+    }
+
+    /** choose whether the transfer sends blobs, as it does unless made
+     * partial.
+     * @param blobs whether to send the blobs of the commits wanted. */
+    void setBlobs(boolean blobs) {
+        _sendBlobs = blobs;
+    }
+
+    /** find what the other store lacks of a commit and its history.
+     * @param commitID the commit. */
+    void want(String commitID) {
+        want(commitID, 0);
+    }
+
+    /** find what the other store lacks of a commit and of its history
+     * within a depth, and of the history behind its shallow commits
+     * within that depth.
+     * @param commitID the commit.
+     * @param depth the number of commits to send along each line of
+     * history, counting COMMITID as the first; 0 for all of them. */
+    void want(String commitID, int depth) {
+        long start = Metrics.start();
+        List<String> wants = new ArrayList<>();
+        wants.add(commitID);
+        for (String id : _toShallow) {
+            if (_from.contains(ObjectStore.Kind.COMMIT, id)) {
+                wants.add(id);
+            }
+        }
+        if (_haves != null) {
+            exclude(wants);
+        }
+        HashSet<String> within = depth > 0 ? within(commitID, depth) : null;
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        HashSet<String> done = new HashSet<>();
+        HashMap<String, Commit> walked = new HashMap<>();
+        for (String id : wants) {
+            push(stack, done, within, id);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            Commit c = walked.get(id);
+            if (c == null) {
+                c = commit(id);
+                walked.put(id, c);
+                for (String p : parents(id, c)) {
+                    push(stack, done, within, p);
+                }
+                continue;
+            }
+            stack.pop();
+            if (!done.add(id)) {
+                continue;
+            }
+            _commits.add(id);
+            boolean cut = _fromShallow.contains(id);
+            for (String p : parents(id, c)) {
+                cut = cut || !done.contains(p) && !had(p);
+            }
+            if (cut) {
+                _shallow.add(id);
+            }
+            if (c.getLegacyBlobs() == null) {
+                String parentID = _fromShallow.contains(id) ? null
+                    : c.getParent();
+                if (parentID != null && !done.contains(parentID)
+                        && !had(parentID)) {
+                    parentID = null;
+                }
+                Commit parent = parentID == null ? null
+                    : walked.get(parentID);
+                if (parent == null && parentID != null) {
+                    parent = commit(parentID);
+                }
+                String baseID = parent == null
+                    || parent.getLegacyBlobs() != null
+                    ? null : parent.getTreeID();
+                Tree.missing(_from, _to, c.getTreeID(), baseID, _trees,
+                        _sendBlobs ? _blobs : null);
+            } else if (_sendBlobs) {
+                for (String blobID : c.getLegacyBlobs().values()) {
+                    if (_to == null
+                        || !_to.contains(ObjectStore.Kind.BLOB, blobID)) {
+                        _blobs.add(blobID);
+                    }
+                }
+            }
+        }
+        Metrics.phase("transfer.negotiate", start);
+    }
+
+    /** ask for blobs by ID, such as those a partial transfer left out.
+     * @param blobIDs the blobs; those the sending store lacks, or the
+     * other store has, are skipped. */
+    void wantBlobs(Collection<String> blobIDs) {
+        for (String id : blobIDs) {
+            if (_from.contains(ObjectStore.Kind.BLOB, id)
+                    && (_to == null
+                        || !_to.contains(ObjectStore.Kind.BLOB, id))) {
+                _blobs.add(id);
+            }
+        }
+    }
+
+    /** copy the missing objects.
+     * @return the IDs of the commits copied, each after its parents. */
+    List<String> copy() {
+        long start = Metrics.start();
+        List<String> blobs = new ArrayList<>(_blobs);
+        ForkJoinPool pool = new ForkJoinPool(COPY_THREADS);
+        try {
+            pool.submit(() -> blobs.parallelStream().forEach(id ->
+                _to.copyFrom(_from, ObjectStore.Kind.BLOB, id))).join();
+        } finally {
+            pool.shutdown();
+        }
+        copy(ObjectStore.Kind.TREE, _trees);
+        copy(ObjectStore.Kind.COMMIT, _commits);
+        Metrics.phase("transfer.copy", start);
+        return _commits;
+    }
+
+    /** send the missing objects down a stream as a bundle, in the order
+     * copy writes them.
+     * @param out the stream.
+     * @return the number of objects sent.
+     * @throws IOException if writing fails. */
+    int send(DataOutputStream out) throws IOException {
+        long start = Metrics.start();
+        for (String id : _blobs) {
+            Bundle.writeObject(_from, ObjectStore.Kind.BLOB, id, out);
+        }
+        for (String id : _trees) {
+            Bundle.writeObject(_from, ObjectStore.Kind.TREE, id, out);
+        }
+        for (String id : _commits) {
+            Bundle.writeObject(_from, ObjectStore.Kind.COMMIT, id, out);
+        }
+        Bundle.writeEnd(out);
+        Metrics.phase("transfer.send", start);
+        return size();
+    }
+
+    /** accessor for the blobs to send.
+     * @return the blobs found missing or asked for. */
+    Collection<String> getBlobs() {
+        return _blobs;
+    }
+
+    /** accessor for the boundary of a shallow transfer.
+     * @return the commits to be sent whose parents are not sent and
+     * that the other store lacks, in the order they are sent. */
+    List<String> getShallow() {
+        return _shallow;
+    }
+
+    /** accessor for the number of objects to copy.
+     * @return the commits, trees and blobs found missing. */
+    int size() {
+        return _commits.size() + _trees.size() + _blobs.size();
+    }
+
+    /** find the commits that the haves reach, as far back as they matter
+     * for the wanted commits, and take them as had. Commits are walked
+     * from the wants and the haves together, newest first, marking the
+     * parents of a had commit as had, until every commit left to walk is
+     * had; no commit older than those can then be reached from a want but
+     * not the haves, unless clocks were wrong, which only costs commits
+     * sent twice.
+     * @param wants the wanted commits. */
+    private void exclude(Collection<String> wants) {
+        HashMap<String, Commit> read = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>(
+                Comparator.comparingLong((String id) -> read.get(id).getTime())
+                .reversed());
+        HashSet<String> queued = new HashSet<>();
+        HashSet<String> pending = new HashSet<>();
+        for (String id : _haves) {
+            if (!_toShallow.contains(id)
+                    && _from.contains(ObjectStore.Kind.COMMIT, id)
+                    && queued.add(id)) {
+                read.put(id, commit(id));
+                _have.add(id);
+                queue.add(id);
+            }
+        }
+        for (String want : wants) {
+            if (queued.add(want)) {
+                read.put(want, commit(want));
+                pending.add(want);
+                queue.add(want);
+            }
+        }
+        while (!pending.isEmpty()) {
+            String id = queue.poll();
+            pending.remove(id);
+            boolean had = _have.contains(id);
+            Commit c = read.get(id);
+            for (String p : parents(id, c)) {
+                if (had && !_toShallow.contains(p) && _have.add(p)) {
+                    pending.remove(p);
+                }
+                if (queued.add(p)) {
+                    read.put(p, commit(p));
+                    queue.add(p);
+                    if (!_have.contains(p)) {
+                        pending.add(p);
+                    }
+                }
+            }
+        }
+    }
+
+    /** find the commits within a depth of a wanted commit, stopping at
+     * those the other store has, unless it has shallow commits whose
+     * history is to be filled in.
+     * @param want the wanted commit.
+     * @param depth the depth, counting WANT as 1.
+     * @return the commits. */
+    private HashSet<String> within(String want, int depth) {
+        HashSet<String> result = new HashSet<>();
+        List<String> level = new ArrayList<>();
+        level.add(want);
+        result.add(want);
+        for (int d = 1; d < depth && !level.isEmpty(); d += 1) {
+            List<String> next = new ArrayList<>();
+            for (String id : level) {
+                if (_toShallow.isEmpty() && had(id)) {
+                    continue;
+                }
+                for (String p : parents(id, commit(id))) {
+                    if (result.add(p)) {
+                        next.add(p);
+                    }
+                }
+            }
+            level = next;
+        }
+        return result;
+    }
+
+    /** queue a commit for the walk, unless it is done, the other store
+     * has it or it is beyond the depth of the transfer. A commit may be
+     * queued again by a later child, so that it is still done before all
+     * of its children.
+     * @param stack the commits being walked.
+     * @param done the commits walked so far.
+     * @param within the commits within the depth, or null for all.
+     * @param id the commit. */
+    private void push(ArrayDeque<String> stack, HashSet<String> done,
+                      HashSet<String> within, String id) {
+        if (done.contains(id) || within != null && !within.contains(id)
+                || had(id)) {
+            return;
+        }
+        stack.push(id);
+    }
+
+    /** check whether the other store has a commit and its history,
+     * probing it if it can be probed.
+     * @param id the commit.
+     * @return whether it has them. */
+    private boolean had(String id) {
+        if (_have.contains(id)) {
+            return true;
+        }
+        if (_to != null && !_toShallow.contains(id)
+                && _to.contains(ObjectStore.Kind.COMMIT, id)) {
+            _have.add(id);
+            return true;
+        }
+        return false;
+    }
+
+    /** the parents of a commit that the sending store has: none if it
+     * is shallow there.
+     * @param id the commit ID.
+     * @param c the commit.
+     * @return its parents, without nulls. */
+    private String[] parents(String id, Commit c) {
+        if (_fromShallow.contains(id) || c.getParent() == null) {
+            return new String[0];
+        }
+        if (c.getParent2() == null) {
+            return new String[] {c.getParent()};
+        }
+        return new String[] {c.getParent(), c.getParent2()};
+    }
+
+    /** read a commit of the sending store.
+     * @param id the commit ID.
+     * @return the commit. */
+    private Commit commit(String id) {
+        byte[] bytes = _from.read(ObjectStore.Kind.COMMIT, id);
+        if (bytes == null) {
+            throw Utils.error("Missing commit %s.", id);
+        }
+        return Commit.decode(bytes);
+    }
+
+    /** copy objects of one kind, one after another, as they are stored.
+     * @param kind the kind.
+     * @param ids the objects, in the order to write them. */
+    private void copy(ObjectStore.Kind kind, Collection<String> ids) {
+        for (String id : ids) {
+            _to.copyFrom(_from, kind, id);
+        }
+    }
+
+    /** number of blobs copied at once. Blobs refer to nothing, so they
+     * can be written in any order; trees and commits are few and small,
+     * and are copied in order. */
+    private static final int COPY_THREADS =
+        Math.min(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** the store that has the objects. */
+    private final ObjectStore _from;
+
+    /** the store to copy them into, or null if it cannot be probed. */
+    private final ObjectStore _to;
+
+    /** the commits the other store says it has, if it cannot be
+     * probed. */
+    private final Collection<String> _haves;
+
+    /** whether the blobs of the commits wanted are sent. */
+    private boolean _sendBlobs = true;
+
+    /** the shallow commits of the sending store. */
+    private HashSet<String> _fromShallow = new HashSet<>();
+
+    /** the shallow commits of the other store. */
+    private HashSet<String> _toShallow = new HashSet<>();
+
+    /** the boundary of a shallow transfer. */
+    private final List<String> _shallow = new ArrayList<>();
+
+    /** the commits found in the other store, or reached from its
+     * haves. */
+    private final HashSet<String> _have = new HashSet<>();
+
+    /** the missing commits, each after its parents. */
+    private final List<String> _commits = new ArrayList<>();
+
+    /** the missing trees, each after the trees under it. */
+    private final LinkedHashSet<String> _trees = new LinkedHashSet<>();
+
+    /** the missing blobs. */
+    private final LinkedHashSet<String> _blobs = new LinkedHashSet<>();
+}
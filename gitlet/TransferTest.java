@@ -0,0 +1,302 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of finding and copying what one store lacks of another.
+ *  @author Grace Chen
+ */
+public class TransferTest {
+
+    /** the stores of each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** a new, empty store.
+     * @param name its directory.
+     * @return the store. */
+    private ObjectStore store(String name) {
+        return new ObjectStore(new File(tmp.getRoot(), name));
+    }
+
+    /** copy a commit and its history from one store to another.
+     * @param from the store that has it.
+     * @param to the store to copy it into.
+     * @param id the commit.
+     * @return the commits copied. */
+    private static List<String> fetch(ObjectStore from, ObjectStore to,
+                                      String id) {
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(id);
+        return transfer.copy();
+    }
+
+    /** write a line of commits, each changing one file.
+     * @param history where to write them.
+     * @param n how many.
+     * @return their IDs, oldest first. */
+    private static List<String> line(TestHistory history, int n) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String[] parents = result.isEmpty() ? new String[0]
+                : new String[] {result.get(i - 1)};
+            result.add(history.commit(Map.of("f", "v" + i), "c" + i,
+                    parents));
+        }
+        return result;
+    }
+
+    @Test
+    public void copiesAHistoryIntoAnEmptyStore() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1", "d/b", "2"), "one");
+        String c2 = history.commit(Map.of("a", "1", "d/b", "3"), "two",
+                c1);
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(c2);
+        assertEquals(2 + 4 + 3, transfer.size());
+        assertEquals(List.of(c1, c2), transfer.copy());
+        for (String id : List.of(c1, c2)) {
+            assertArrayEquals(from.read(ObjectStore.Kind.COMMIT, id),
+                    to.read(ObjectStore.Kind.COMMIT, id));
+        }
+        for (String contents : List.of("1", "2", "3")) {
+            assertEquals(contents, new String(to.read(ObjectStore.Kind.BLOB,
+                    TestHistory.blob(contents))));
+        }
+    }
+
+    @Test
+    public void sendsOnlyWhatTheOtherStoreLacks() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1", "d/b", "2", "e/c", "4"),
+                "one");
+        String c2 = history.commit(Map.of("a", "1", "d/b", "3", "e/c", "4"),
+                "two", c1);
+        fetch(from, to, c1);
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(c2);
+        assertEquals(List.of(TestHistory.blob("3")),
+                List.copyOf(transfer.getBlobs()));
+        assertEquals(1 + 2 + 1, transfer.size());
+        assertEquals(List.of(c2), transfer.copy());
+        assertTrue(to.contains(ObjectStore.Kind.COMMIT, c2));
+    }
+
+    @Test
+    public void sendsNothingToAStoreThatIsUpToDate() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1"), "one");
+        String c2 = history.commit(Map.of("a", "2"), "two", c1);
+        fetch(from, to, c2);
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(c1);
+        assertEquals(0, transfer.size());
+        assertEquals(List.of(), transfer.copy());
+    }
+
+    @Test
+    public void sendsTheMissingSideOfAMerge() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String base = history.commit(Map.of("a", "1"), "base");
+        String left = history.commit(Map.of("a", "2"), "left", base);
+        String right = history.commit(Map.of("b", "3"), "right", base);
+        String merge = history.commit(Map.of("a", "2", "b", "3"), "merge",
+                left, right);
+        fetch(from, to, left);
+        assertEquals(List.of(right, merge), fetch(from, to, merge));
+        assertEquals(List.of(), fetch(from, to, merge));
+    }
+
+    @Test
+    public void namedHavesStandForTheirHistory() {
+        ObjectStore from = store("from");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1"), "one");
+        String side = history.commit(Map.of("a", "1", "s", "5"), "side",
+                c1);
+        String c2 = history.commit(Map.of("a", "2"), "two", c1);
+        String c3 = history.commit(Map.of("a", "3"), "three", c2);
+        String unknown = Utils.sha1("no such commit");
+        Transfer transfer = new Transfer(from, List.of(side, unknown));
+        transfer.want(c3);
+        assertEquals(Set.of(TestHistory.blob("2"), TestHistory.blob("3")),
+                Set.copyOf(transfer.getBlobs()));
+        assertEquals(2 + 2 + 2, transfer.size());
+    }
+
+    @Test
+    public void wantedHavesSendNothing() {
+        ObjectStore from = store("from");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1"), "one");
+        String c2 = history.commit(Map.of("a", "2"), "two", c1);
+        Transfer transfer = new Transfer(from, List.of(c2));
+        transfer.want(c1);
+        assertEquals(0, transfer.size());
+    }
+
+    @Test
+    public void aMissingCommitIsAnError() {
+        Transfer transfer = new Transfer(store("from"), store("to"));
+        try {
+            transfer.want(Utils.sha1("no such commit"));
+            fail("wanted a commit the store lacks");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("Missing commit"));
+        }
+    }
+
+    @Test
+    public void depthLimitsTheCommitsSent() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        List<String> c = line(new TestHistory(from), 4);
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(c.get(3), 2);
+        assertEquals(List.of(c.get(2)), transfer.getShallow());
+        assertEquals(List.of(c.get(2), c.get(3)), transfer.copy());
+        assertFalse(to.contains(ObjectStore.Kind.COMMIT, c.get(1)));
+        assertFalse(to.contains(ObjectStore.Kind.BLOB,
+                TestHistory.blob("v1")));
+        assertTrue(to.contains(ObjectStore.Kind.BLOB,
+                TestHistory.blob("v2")));
+    }
+
+    @Test
+    public void depthStopsAtWhatTheOtherStoreHas() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        List<String> c = line(new TestHistory(from), 4);
+        fetch(from, to, c.get(1));
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(c.get(3), 10);
+        assertEquals(List.of(), transfer.getShallow());
+        assertEquals(List.of(c.get(2), c.get(3)), transfer.copy());
+    }
+
+    @Test
+    public void deeperTransfersFillInShallowHistory() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        List<String> c = line(new TestHistory(from), 4);
+        Transfer shallow = new Transfer(from, to);
+        shallow.want(c.get(3), 1);
+        shallow.copy();
+        assertEquals(List.of(c.get(3)), shallow.getShallow());
+        Transfer deeper = new Transfer(from, to);
+        deeper.setShallow(List.of(), shallow.getShallow());
+        deeper.want(c.get(3), 3);
+        assertEquals(List.of(c.get(1)), deeper.getShallow());
+        assertTrue(deeper.copy().containsAll(List.of(c.get(1), c.get(2))));
+        Transfer whole = new Transfer(from, to);
+        whole.setShallow(List.of(), deeper.getShallow());
+        whole.want(c.get(3));
+        assertEquals(List.of(), whole.getShallow());
+        assertTrue(whole.copy().contains(c.get(0)));
+    }
+
+    @Test
+    public void depthCountsAlongBothSidesOfAMerge() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String base = history.commit(Map.of("a", "1"), "base");
+        String left = history.commit(Map.of("a", "2"), "left", base);
+        String right = history.commit(Map.of("a", "3"), "right", base);
+        String merge = history.commit(Map.of("a", "4"), "merge", left,
+                right);
+        Transfer transfer = new Transfer(from, to);
+        transfer.want(merge, 2);
+        assertEquals(Set.of(left, right), Set.copyOf(transfer.getShallow()));
+        assertEquals(Set.of(left, right, merge), Set.copyOf(transfer.copy()));
+    }
+
+    @Test
+    public void shallowSendersStopAtTheirShallowCommits() {
+        ObjectStore full = store("full");
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        List<String> c = line(new TestHistory(full), 3);
+        Transfer clone = new Transfer(full, from);
+        clone.want(c.get(2), 2);
+        clone.copy();
+        Transfer transfer = new Transfer(from, to);
+        transfer.setShallow(clone.getShallow(), List.of());
+        transfer.want(c.get(2));
+        assertEquals(List.of(c.get(1)), transfer.getShallow());
+        assertEquals(List.of(c.get(1), c.get(2)), transfer.copy());
+    }
+
+    @Test
+    public void partialTransfersSendNoBlobs() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1", "d/b", "2"), "one");
+        String c2 = history.commit(Map.of("a", "3", "d/b", "2"), "two",
+                c1);
+        Transfer transfer = new Transfer(from, to);
+        transfer.setBlobs(false);
+        transfer.want(c2);
+        assertTrue(transfer.getBlobs().isEmpty());
+        assertEquals(2 + 3, transfer.size());
+        assertEquals(List.of(c1, c2), transfer.copy());
+        for (String contents : List.of("1", "2", "3")) {
+            assertFalse(to.contains(ObjectStore.Kind.BLOB,
+                    TestHistory.blob(contents)));
+        }
+    }
+
+    @Test
+    public void blobsLeftOutAreFetchedWhenWanted() {
+        ObjectStore from = store("from");
+        ObjectStore to = store("to");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1", "b", "2", "c", "3"),
+                "one");
+        Transfer partial = new Transfer(from, to);
+        partial.setBlobs(false);
+        partial.want(c1);
+        partial.copy();
+        to.copyFrom(from, ObjectStore.Kind.BLOB, TestHistory.blob("3"));
+        Transfer blobs = new Transfer(from, to);
+        blobs.wantBlobs(List.of(TestHistory.blob("1"), TestHistory.blob("2"),
+                TestHistory.blob("3"), Utils.sha1("not on the server")));
+        assertEquals(List.of(TestHistory.blob("1"), TestHistory.blob("2")),
+                List.copyOf(blobs.getBlobs()));
+        assertEquals(List.of(), blobs.copy());
+        assertEquals("2", new String(to.read(ObjectStore.Kind.BLOB,
+                TestHistory.blob("2"))));
+    }
+
+    @Test
+    public void partialBundlesCarryNoBlobs() {
+        ObjectStore from = store("from");
+        TestHistory history = new TestHistory(from);
+        String c1 = history.commit(Map.of("a", "1"), "one");
+        String c2 = history.commit(Map.of("a", "2", "b", "3"), "two", c1);
+        Transfer transfer = new Transfer(from, List.of(c1));
+        transfer.setBlobs(false);
+        transfer.want(c2);
+        assertTrue(transfer.getBlobs().isEmpty());
+        assertEquals(1 + 1, transfer.size());
+    }
+}
@@ -0,0 +1,279 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** Tree objects: the contents of one directory of a commit. A tree maps
+ * each name in the directory to a blob, or to the tree of a
+ * subdirectory. Trees are content-addressed, so a commit that changes a
+ * few files writes new trees only for the directories on their paths and
+ * shares every other tree with its parent.
+ *
+ * A stored tree is its entries sorted by name, each a type byte ('b' for
+ * a blob, 't' for a tree), the UTF-8 name, a zero byte and the binary ID.
+ * Its ID is the SHA-1 of "tree " followed by those bytes.
+ *  @author Grace Chen
+ */
+class Tree {
+
+    /** separator of the directories in a path. */
+    static final String SEPARATOR = "/";
+
+    /** find the blob at a path.
+     * @param store the object store.
+     * @param rootID the ID of the root tree, or null for an empty tree.
+     * @param path the file path.
+     * @return the blob ID, or null if nothing is tracked there. */
+    static String lookup(ObjectStore store, String rootID, String path) {
+        String treeID = rootID;
+        String[] parts = path.split(SEPARATOR);
+        for (int i = 0; i < parts.length && treeID != null; i += 1) {
+            Entry e = read(store, treeID).get(parts[i]);
+            if (e == null) {
+                return null;
+            }
+            if (i == parts.length - 1) {
+                return e._isTree ? null : e._id;
+            }
+            treeID = e._isTree ? e._id : null;
+        }
+        return null;
+    }
+
+    /** list every file under a tree.
+     * @param store the object store.
+     * @param rootID the ID of the tree, or null for an empty tree.
+     * @param prefix the path of the tree's directory, ending in SEPARATOR,
+     * or empty for the root.
+     * @param out map from path to blob ID to add the files to. */
+    static void flatten(ObjectStore store, String rootID, String prefix,
+                        Map<String, String> out) {
+        if (rootID == null) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e : read(store, rootID).entrySet()) {
+            String path = prefix + e.getKey();
+            if (e.getValue()._isTree) {
+                flatten(store, e.getValue()._id, path + SEPARATOR, out);
+            } else {
+                out.put(path, e.getValue()._id);
+            }
+        }
+    }
+
+    /** find the files that differ between two trees. Subtrees with the
+     * same ID are skipped without being read.
+     * @param store the object store.
+     * @param fromID the ID of the old tree, or null for an empty tree.
+     * @param toID the ID of the new tree, or null for an empty tree.
+     * @param prefix the path of the trees' directory, ending in SEPARATOR,
+     * or empty for the root.
+     * @param out map from path to its blob ID in the new tree, or to null
+     * if it is not there, to add the differences to. */
+    static void diff(ObjectStore store, String fromID, String toID,
+                     String prefix, Map<String, String> out) {
+        if (fromID == null ? toID == null : fromID.equals(toID)) {
+            return;
+        }
+        TreeMap<String, Entry> from = fromID == null
+                ? new TreeMap<>() : read(store, fromID);
+        TreeMap<String, Entry> to = toID == null
+                ? new TreeMap<>() : read(store, toID);
+        TreeMap<String, Entry> names = new TreeMap<>(from);
+        names.putAll(to);
+        for (String name : names.keySet()) {
+            Entry a = from.get(name);
+            Entry b = to.get(name);
+            String path = prefix + name;
+            String aTree = a != null && a._isTree ? a._id : null;
+            String bTree = b != null && b._isTree ? b._id : null;
+            String aBlob = a != null && !a._isTree ? a._id : null;
+            String bBlob = b != null && !b._isTree ? b._id : null;
+            diff(store, aTree, bTree, path + SEPARATOR, out);
+            if (aBlob == null ? bBlob != null : !aBlob.equals(bBlob)) {
+                out.put(path, bBlob);
+            }
+        }
+    }
+
+    /** find the trees and blobs under a tree that one store has and
+     * another lacks. A tree the other store has is taken to have
+     * everything under it there too, and is not read; nor is anything
+     * the same as in a base tree, whose objects the other store has or is
+     * being sent.
+     * @param from the store that has the tree.
+     * @param to the other store, or null if it cannot be probed.
+     * @param id the ID of the tree, or null for an empty tree.
+     * @param baseID the ID of the base tree, or null for none.
+     * @param trees the trees found missing, to add to, each after the
+     * trees under it; a tree already there is not walked again.
+     * @param blobs the blobs found missing, to add to, or null to find
+     * only trees. */
+    static void missing(ObjectStore from, ObjectStore to, String id,
+                        String baseID, Collection<String> trees,
+                        Collection<String> blobs) {
+        if (id == null || id.equals(baseID) || trees.contains(id)
+                || to != null && to.contains(ObjectStore.Kind.TREE, id)) {
+            return;
+        }
+        TreeMap<String, Entry> base = baseID == null
+                ? new TreeMap<>() : read(from, baseID);
+        for (Map.Entry<String, Entry> e : read(from, id).entrySet()) {
+            Entry entry = e.getValue();
+            Entry old = base.get(e.getKey());
+            if (entry._isTree) {
+                missing(from, to, entry._id,
+                        old != null && old._isTree ? old._id : null,
+                        trees, blobs);
+            } else if (blobs != null && (old == null || old._isTree
+                       || !old._id.equals(entry._id))) {
+                if (to == null
+                        || !to.contains(ObjectStore.Kind.BLOB, entry._id)) {
+                    blobs.add(entry._id);
+                }
+            }
+        }
+        trees.add(id);
+    }
+
+    /** apply changes to a tree, writing new trees only for the directories
+     * that change.
+     * @param store the object store.
+     * @param rootID the ID of the tree, or null for an empty tree.
+     * @param edits map from path to its new blob ID, or to null to remove
+     * the file.
+     * @return the ID of the new tree, or null if it is empty. */
+    static String update(ObjectStore store, String rootID,
+                         SortedMap<String, String> edits) {
+        if (edits.isEmpty()) {
+            return rootID;
+        }
+        TreeMap<String, Entry> entries = rootID == null
+                ? new TreeMap<>() : new TreeMap<>(read(store, rootID));
+        TreeMap<String, TreeMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> e : edits.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash < 0) {
+                if (e.getValue() == null) {
+                    entries.remove(path);
+                } else {
+                    entries.put(path, new Entry(false, e.getValue()));
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e
+                 : below.entrySet()) {
+            Entry old = entries.get(e.getKey());
+            String oldID = old != null && old._isTree ? old._id : null;
+            String newID = update(store, oldID, e.getValue());
+            if (newID == null) {
+                entries.remove(e.getKey());
+            } else {
+                entries.put(e.getKey(), new Entry(true, newID));
+            }
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        return write(store, entries);
+    }
+
+    /** read the entries of a tree. Trees already read are taken from
+     * CACHE, so a walk down a path inflates each tree on it only once
+     * however many files below it are looked up.
+     * @param store the object store.
+     * @param id the tree ID.
+     * @return its entries by name, which the caller must not change. */
+    private static TreeMap<String, Entry> read(ObjectStore store,
+                                               String id) {
+        TreeMap<String, Entry> cached = CACHE.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] bytes = store.read(ObjectStore.Kind.TREE, id);
+        if (bytes == null) {
+            throw Utils.error("Missing tree %s.", id);
+        }
+        TreeMap<String, Entry> result = new TreeMap<>();
+        int i = 0;
+        while (i < bytes.length) {
+            boolean isTree = bytes[i] == TREE;
+            int end = i + 1;
+            while (bytes[end] != 0) {
+                end += 1;
+            }
+            String name = new String(bytes, i + 1, end - i - 1,
+                    StandardCharsets.UTF_8);
+            byte[] raw = new byte[Pack.ID_BYTES];
+            System.arraycopy(bytes, end + 1, raw, 0, Pack.ID_BYTES);
+            result.put(name, new Entry(isTree, Pack.toHex(raw)));
+            i = end + 1 + Pack.ID_BYTES;
+        }
+        CACHE.put(id, result);
+        return result;
+    }
+
+    /** store a tree.
+     * @param store the object store.
+     * @param entries its entries by name.
+     * @return its ID. */
+    private static String write(ObjectStore store,
+                                TreeMap<String, Entry> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            out.write(e.getValue()._isTree ? TREE : BLOB);
+            out.write(name, 0, name.length);
+            out.write(0);
+            out.write(Pack.fromHex(e.getValue()._id), 0, Pack.ID_BYTES);
+        }
+        byte[] bytes = out.toByteArray();
+        String id = Utils.sha1(TREE_TAG, bytes);
+        store.write(ObjectStore.Kind.TREE, id, bytes);
+        return id;
+    }
+
+    /** An entry of a tree. */
+    private static class Entry {
+
+        /** an entry.
+         * @param isTree whether it names a subdirectory.
+         * @param id the ID of its tree or blob. */
+        Entry(boolean isTree, String id) {
+            _isTree = isTree;
+            _id = id;
+        }
+
+        /** whether the entry names a subdirectory. */
+        private final boolean _isTree;
+
+        /** the ID of its tree or blob. */
+        private final String _id;
+    }
+
+    /** type byte of a blob entry. */
+    private static final byte BLOB = 'b';
+
+    /** type byte of a tree entry. */
+    private static final byte TREE = 't';
+
+    /** tag hashed before the bytes of a tree. */
+    private static final String TREE_TAG = "tree ";
+
+    /** total number of entries of the trees kept in CACHE. */
+    private static final long CACHE_ENTRIES = 1L << 18;
+
+    /** trees read so far, by ID. A tree's ID is the hash of its entries,
+     * so one read from any store stays valid. */
+    private static final ObjectCache<TreeMap<String, Entry>> CACHE =
+        new ObjectCache<>(CACHE_ENTRIES, t -> 1 + t.size());
+}
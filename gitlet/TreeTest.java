@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of tree objects.
+ *  @author Grace Chen
+ */
+public class TreeTest {
+
+    /** a scratch .gitlet directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** a made-up blob ID.
+     * @param name what the blob stands for.
+     * @return its ID. */
+    private static String blob(String name) {
+        return Utils.sha1("blob ", name);
+    }
+
+    /** a map of paths to made-up blob IDs.
+     * @param paths the paths.
+     * @return map from each path to blob(path). */
+    private static TreeMap<String, String> files(String... paths) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (String path : paths) {
+            result.put(path, blob(path));
+        }
+        return result;
+    }
+
+    /** every file under a tree.
+     * @param store the object store.
+     * @param id the tree ID.
+     * @return map from path to blob ID. */
+    private static Map<String, String> flatten(ObjectStore store,
+                                               String id) {
+        Map<String, String> result = new TreeMap<>();
+        Tree.flatten(store, id, "", result);
+        return result;
+    }
+
+    @Test
+    public void updateThenFlattenRoundTrips() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        TreeMap<String, String> files =
+            files("a.txt", "src/x.java", "src/util/y.java", "z");
+        String root = Tree.update(store, null, files);
+        assertEquals(files, flatten(store, root));
+        assertEquals(root, Tree.update(store, null, files));
+    }
+
+    @Test
+    public void lookupFindsOnlyFiles() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String root = Tree.update(store, null,
+                files("a.txt", "src/util/y.java"));
+        assertEquals(blob("src/util/y.java"),
+                Tree.lookup(store, root, "src/util/y.java"));
+        assertEquals(blob("a.txt"), Tree.lookup(store, root, "a.txt"));
+        assertNull(Tree.lookup(store, root, "src/util"));
+        assertNull(Tree.lookup(store, root, "a.txt/b"));
+        assertNull(Tree.lookup(store, root, "src/none.java"));
+        assertNull(Tree.lookup(store, null, "a.txt"));
+    }
+
+    @Test
+    public void updateRemovesEmptyDirectories() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String root = Tree.update(store, null,
+                files("a.txt", "src/util/y.java"));
+        TreeMap<String, String> edits = new TreeMap<>();
+        edits.put("src/util/y.java", null);
+        String after = Tree.update(store, root, edits);
+        assertEquals(files("a.txt"), flatten(store, after));
+        edits.put("a.txt", null);
+        assertNull(Tree.update(store, root, edits));
+    }
+
+    @Test
+    public void updateLeavesTheOldTreeAlone() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String root = Tree.update(store, null, files("a", "d/b"));
+        assertEquals(blob("a"), Tree.lookup(store, root, "a"));
+        TreeMap<String, String> edits = files("c", "d/e");
+        edits.put("a", null);
+        Tree.update(store, root, edits);
+        assertEquals(files("a", "d/b"), flatten(store, root));
+    }
+
+    @Test
+    public void diffReportsChangesAndRemovals() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String from = Tree.update(store, null,
+                files("a", "same/b", "gone/c", "file"));
+        TreeMap<String, String> edits = new TreeMap<>();
+        edits.put("a", blob("a2"));
+        edits.put("gone/c", null);
+        edits.put("new/d", blob("new/d"));
+        edits.put("file", null);
+        edits.put("file/e", blob("file/e"));
+        String to = Tree.update(store, from, edits);
+        Map<String, String> diff = new HashMap<>();
+        Tree.diff(store, from, to, "", diff);
+        assertEquals(edits, new TreeMap<>(diff));
+        diff.clear();
+        Tree.diff(store, to, to, "", diff);
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void diffDoesNotReadSharedSubtrees() throws IOException {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String from = Tree.update(store, null,
+                files("changed", "shared/unread/f", "shared/g"));
+        TreeMap<String, String> edits = new TreeMap<>();
+        edits.put("changed", blob("changed2"));
+        String to = Tree.update(store, from, edits);
+        TreeMap<String, String> sharedFiles = new TreeMap<>();
+        sharedFiles.put("unread/f", blob("shared/unread/f"));
+        sharedFiles.put("g", blob("shared/g"));
+        String sharedID = Tree.update(new ObjectStore(tmp.newFolder()),
+                null, sharedFiles);
+        assertTrue(store.looseFile(ObjectStore.Kind.TREE, sharedID)
+                .delete());
+        Map<String, String> diff = new HashMap<>();
+        Tree.diff(store, from, to, "", diff);
+        assertEquals(edits, diff);
+    }
+
+    @Test
+    public void missingSkipsWhatTheOtherStoreHas() {
+        ObjectStore from = new ObjectStore(tmp.getRoot());
+        ObjectStore to = new ObjectStore(new File(tmp.getRoot(), "other"));
+        Tree.update(to, null, files("lib/a"));
+        String root = Tree.update(from, null, files("lib/a", "b"));
+        List<String> trees = new ArrayList<>();
+        List<String> blobs = new ArrayList<>();
+        Tree.missing(from, to, root, null, trees, blobs);
+        assertEquals(List.of(root), trees);
+        assertEquals(List.of(blob("b")), blobs);
+    }
+
+    @Test
+    public void missingSkipsWhatTheBaseHas() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String base = Tree.update(store, null, files("d/a", "d/b"));
+        TreeMap<String, String> edits = files("d/c");
+        String root = Tree.update(store, base, edits);
+        List<String> trees = new ArrayList<>();
+        List<String> blobs = new ArrayList<>();
+        Tree.missing(store, null, root, base, trees, blobs);
+        assertEquals(2, trees.size());
+        assertEquals(root, trees.get(1));
+        assertEquals(List.of(blob("d/c")), blobs);
+    }
+
+    @Test
+    public void missingListsNoBlobsWhenNotAsked() {
+        ObjectStore store = new ObjectStore(tmp.getRoot());
+        String root = Tree.update(store, null, files("a", "d/b"));
+        List<String> trees = new ArrayList<>();
+        Tree.missing(store, null, root, null, trees, null);
+        assertEquals(2, trees.size());
+        assertEquals(root, trees.get(1));
+    }
+}
@@ -1,11 +1,13 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -32,27 +34,82 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        long start = Metrics.start();
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long bytes = 0;
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    bytes += ((byte[]) val).length;
                 } else if (val instanceof String) {
                     md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    bytes += ((String) val).length();
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            String result = toHex(md.digest());
+            Metrics.io("sha1", start, bytes);
+            return result;
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the SHA-1 hash of HEADER followed by the contents of FILE.
+     *  The file is read in fixed-size chunks through a digest and buffer
+     *  reused by the calling thread, so memory use does not grow with the
+     *  size of FILE.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static String sha1(String header, File file) {
+        long start = Metrics.start();
+        long bytes = header.length();
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        md.update(header.getBytes(StandardCharsets.UTF_8));
+        byte[] chunk = CHUNK.get();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                md.update(chunk, 0, n);
+                bytes += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String result = toHex(md.digest());
+        Metrics.io("sha1", start, bytes);
+        return result;
+    }
+
+    /** Returns the hexadecimal numeral for the bytes of DIGEST. */
+    private static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Size of the chunks in which files are hashed. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** A SHA-1 digest for each thread, reused across calls. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /** A read buffer for each thread, reused across calls. */
+    private static final ThreadLocal<byte[]> CHUNK =
+        ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -93,8 +150,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Metrics.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Metrics.io("readContents", start, result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -112,6 +172,7 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Metrics.start();
         try {
             if (file.isDirectory()) {
                 throw
@@ -127,6 +188,7 @@ class Utils {
                 }
             }
             str.close();
+            Metrics.io("writeContents", start, file.length());
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -136,11 +198,32 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Metrics.start();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Metrics.io("readObject", start, file.length());
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return an object of type T read from the serialized bytes in BYTES,
+     *  casting it to EXPECTEDCLASS.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        long start = Metrics.start();
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            Metrics.io("deserialize", start, bytes.length);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -150,7 +233,10 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Metrics.start();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        Metrics.io("writeObject", start, bytes.length);
     }
 
     /* DIRECTORIES */
@@ -168,11 +254,13 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Metrics.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
             Arrays.sort(files);
+            Metrics.io("plainFilenamesIn", start, 0);
             return Arrays.asList(files);
         }
     }
@@ -0,0 +1,48 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of the streaming hash behind raw blob IDs.
+ *  @author Grace Chen
+ */
+public class UtilsTest {
+
+    /** a scratch directory for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void rawBlobIDIsStable() {
+        File file = new File(tmp.getRoot(), "hello");
+        Utils.writeContents(file, "hello");
+        assertEquals("b6fc4c620b67d95f953a5c1c1230aaab5db5a1b0",
+                Utils.sha1("blob 5\0", file));
+    }
+
+    @Test
+    public void streamedHashMatchesHashOfAllBytes() {
+        byte[] contents = new byte[(1 << 18) + 17];
+        new Random(3).nextBytes(contents);
+        File file = new File(tmp.getRoot(), "big");
+        Utils.writeContents(file, contents);
+        String header = "blob " + contents.length + "\0";
+        assertEquals(Utils.sha1(header, contents),
+                Utils.sha1(header, file));
+        assertEquals(Utils.sha1(header, contents),
+                Utils.sha1(header, file));
+    }
+
+    @Test
+    public void emptyFileHashesHeaderOnly() {
+        File file = new File(tmp.getRoot(), "empty");
+        Utils.writeContents(file, "");
+        assertEquals(Utils.sha1("blob 0\0"), Utils.sha1("blob 0\0", file));
+    }
+}
@@ -0,0 +1,308 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/** The working tree of a repository: every file under its root, at any
+ * depth, named by its path from the root with Tree.SEPARATOR between
+ * directories. Directories are listed in parallel, one fork-join task
+ * each, on the common pool.
+ *
+ * The .gitlet directory is never walked, nor is any subdirectory holding
+ * a .gitlet directory of its own, since that is another repository. The
+ * root may also have a .gitletignore file with one glob per line; blank
+ * lines and lines starting with '#' are skipped. A glob containing a
+ * SEPARATOR is matched against the whole path and others against the
+ * name alone, and one ending in SEPARATOR matches only directories. An
+ * ignored directory is pruned without being listed.
+ *  @author Grace Chen
+ */
+class WorkTree {
+
+    /** the working tree under ROOT.
+     * @param root the root directory. */
+    WorkTree(File root) {
+        _root = root;
+        File ignore = new File(root, IGNORE_FILE);
+        if (ignore.isFile()) {
+            String text = Utils.readContentsAsString(ignore);
+            for (String line : text.split("\r?\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    _rules.add(new Rule(line));
+                }
+            }
+        }
+    }
+
+    /** list every file in the working tree that is not ignored.
+     * @return their paths, in the order of a tree: by name within each
+     * directory, with the files of a subdirectory in its place. */
+    List<String> files() {
+        return new ArrayList<>(stat().keySet());
+    }
+
+    /** list every file in the working tree that is not ignored, with the
+     * attributes the walk read for it, so that callers such as the stat
+     * cache need not read them again.
+     * @return map from path to attributes, in the order of files(). */
+    LinkedHashMap<String, BasicFileAttributes> stat() {
+        List<Map.Entry<String, BasicFileAttributes>> found =
+            ForkJoinPool.commonPool().invoke(new Walk(_root.toPath(), ""));
+        LinkedHashMap<String, BasicFileAttributes> result =
+            new LinkedHashMap<>(2 * found.size());
+        for (Map.Entry<String, BasicFileAttributes> e : found) {
+            result.put(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    /** delete a file of the working tree, and then each directory above
+     * it that is left empty.
+     * @param root the root directory.
+     * @param path the path of the file.
+     * @return whether the file was deleted. */
+    static boolean delete(File root, String path) {
+        File file = new File(root, path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        for (File dir = file.getParentFile(); dir != null && !dir.equals(root);
+             dir = dir.getParentFile()) {
+            if (!dir.delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** check whether a path is ignored.
+     * @param path the path from the root.
+     * @param name its last component.
+     * @param isDir whether it is a directory.
+     * @return whether some rule matches it. */
+    private boolean ignored(String path, String name, boolean isDir) {
+        if (isDir && path.equals(GITLET_DIR)) {
+            return true;
+        }
+        for (Rule rule : _rules) {
+            if (rule.matches(path, name, isDir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Lists the files under one directory, with their attributes,
+     * forking a task for each of its subdirectories. */
+    private class Walk
+        extends RecursiveTask<List<Map.Entry<String, BasicFileAttributes>>> {
+
+        /** a walk of a directory.
+         * @param dir the directory.
+         * @param prefix its path from the root, ending in SEPARATOR, or
+         * empty for the root. */
+        Walk(Path dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected List<Map.Entry<String, BasicFileAttributes>> compute() {
+            List<Map.Entry<String, BasicFileAttributes>> files =
+                new ArrayList<>();
+            TreeMap<String, Path> entries = new TreeMap<>();
+            try (DirectoryStream<Path> dir =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path entry : dir) {
+                    entries.put(entry.getFileName().toString(), entry);
+                }
+            } catch (IOException | DirectoryIteratorException excp) {
+                return files;
+            }
+            if (!_prefix.isEmpty() && entries.containsKey(GITLET_DIR)) {
+                return files;
+            }
+            List<Walk> subdirs = new ArrayList<>();
+            List<Integer> places = new ArrayList<>();
+            for (Map.Entry<String, Path> e : entries.entrySet()) {
+                String name = e.getKey();
+                String path = _prefix + name;
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(e.getValue(),
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isSymbolicLink()) {
+                        attrs = Files.readAttributes(e.getValue(),
+                                BasicFileAttributes.class);
+                        if (!attrs.isRegularFile()) {
+                            continue;
+                        }
+                    }
+                } catch (IOException excp) {
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    if (!ignored(path, name, true)) {
+                        subdirs.add(new Walk(e.getValue(),
+                                path + Tree.SEPARATOR));
+                        places.add(files.size());
+                    }
+                } else if (attrs.isRegularFile()
+                           && !ignored(path, name, false)) {
+                    files.add(new AbstractMap.SimpleImmutableEntry<>(path,
+                            attrs));
+                }
+            }
+            invokeAll(subdirs);
+            if (subdirs.isEmpty()) {
+                return files;
+            }
+            List<Map.Entry<String, BasicFileAttributes>> result =
+                new ArrayList<>();
+            int next = 0;
+            for (int i = 0; i < subdirs.size(); i += 1) {
+                result.addAll(files.subList(next, places.get(i)));
+                result.addAll(subdirs.get(i).join());
+                next = places.get(i);
+            }
+            result.addAll(files.subList(next, files.size()));
+            return result;
+        }
+
+        /** serial version, which is never used: tasks are not saved. */
+        private static final long serialVersionUID = 1L;
+
+        /** the directory. */
+        private final Path _dir;
+
+        /** its path from the root. */
+        private final String _prefix;
+    }
+
+    /** One line of the ignore file. */
+    private static class Rule {
+
+        /** a rule from a glob.
+         * @param glob the line of the ignore file. */
+        Rule(String glob) {
+            _dirOnly = glob.endsWith(Tree.SEPARATOR);
+            if (_dirOnly) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            if (glob.startsWith(Tree.SEPARATOR)) {
+                glob = glob.substring(1);
+            }
+            _wholePath = glob.contains(Tree.SEPARATOR);
+            String rest = glob.startsWith("*") ? glob.substring(1) : glob;
+            if (!hasWildcard(rest)) {
+                _suffix = glob.startsWith("*");
+                _literal = rest;
+                _pattern = null;
+            } else {
+                _suffix = false;
+                _literal = null;
+                _pattern = Pattern.compile(toRegex(glob));
+            }
+        }
+
+        /** check whether the rule matches a path. Globs that are a plain
+         * name, or '*' and a plain suffix, are matched without a regular
+         * expression, since they are checked against every file.
+         * @param path the path from the root.
+         * @param name its last component.
+         * @param isDir whether it is a directory.
+         * @return whether it matches. */
+        boolean matches(String path, String name, boolean isDir) {
+            if (_dirOnly && !isDir) {
+                return false;
+            }
+            String s = _wholePath ? path : name;
+            if (_pattern != null) {
+                return _pattern.matcher(s).matches();
+            }
+            return _suffix ? s.endsWith(_literal) : s.equals(_literal);
+        }
+
+        /** check whether a glob has wildcards.
+         * @param glob the glob.
+         * @return whether it has '*', '?' or '['. */
+        private static boolean hasWildcard(String glob) {
+            return glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0
+                || glob.indexOf('[') >= 0;
+        }
+
+        /** translate a glob into a regular expression: '**' matches
+         * anything, '*' and '?' anything within one directory, and
+         * brackets a class of characters.
+         * @param glob the glob.
+         * @return the regular expression. */
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i += 1) {
+                char c = glob.charAt(i);
+                if (c == '*' && i + 1 < glob.length()
+                        && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i += 1;
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i) > i) {
+                    int end = glob.indexOf(']', i);
+                    regex.append(glob, i, end + 1);
+                    i = end;
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+
+        /** whether the rule matches only directories. */
+        private final boolean _dirOnly;
+
+        /** whether the glob is matched against the whole path. */
+        private final boolean _wholePath;
+
+        /** whether _literal is a suffix rather than the whole name. */
+        private final boolean _suffix;
+
+        /** the glob without its leading '*', if it has no other
+         * wildcards; otherwise null. */
+        private final String _literal;
+
+        /** the glob as a regular expression, or null if _literal is
+         * used. */
+        private final Pattern _pattern;
+    }
+
+    /** name of the repository directory. */
+    private static final String GITLET_DIR = ".gitlet";
+
+    /** name of the ignore file at the root. */
+    private static final String IGNORE_FILE = ".gitletignore";
+
+    /** the root directory. */
+    private final File _root;
+
+    /** the rules of the ignore file. */
+    private final List<Rule> _rules = new ArrayList<>();
+}
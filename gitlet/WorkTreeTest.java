@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/** Tests of walking the working tree.
+ *  @author Grace Chen
+ */
+public class WorkTreeTest {
+
+    /** a scratch working tree for each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** write a file of the working tree, and the directories above it.
+     * @param path its path from the root.
+     * @param contents its contents. */
+    private void write(String path, String contents) {
+        File file = new File(tmp.getRoot(), path);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, contents);
+    }
+
+    @Test
+    public void filesComeInTreeOrder() {
+        write("b", "b");
+        write("a/z", "z");
+        write("a/b/c", "c");
+        write("a.txt", "a");
+        assertEquals(List.of("a/b/c", "a/z", "a.txt", "b"),
+                new WorkTree(tmp.getRoot()).files());
+    }
+
+    @Test
+    public void repositoriesAreNotWalked() {
+        write(".gitlet/HEAD", "head");
+        write("f", "f");
+        write("nested/.gitlet/HEAD", "head");
+        write("nested/g", "g");
+        assertEquals(List.of("f"), new WorkTree(tmp.getRoot()).files());
+    }
+
+    @Test
+    public void ignoreRulesPruneFilesAndDirectories() {
+        write(".gitletignore", "# comment\n*.log\nbuild/\ndocs/*.tmp\n");
+        write("a.log", "a");
+        write("src/b.log", "b");
+        write("src/c.java", "c");
+        write("build/out", "o");
+        write("src/build", "file, not a directory");
+        write("docs/x.tmp", "x");
+        write("docs/sub/y.tmp", "y");
+        assertEquals(List.of(".gitletignore", "docs/sub/y.tmp", "src/build",
+                "src/c.java"), new WorkTree(tmp.getRoot()).files());
+    }
+
+    @Test
+    public void statGivesTheAttributesOfEachFile() {
+        write("a/b", "12345");
+        write("c", "");
+        Map<String, BasicFileAttributes> stat =
+            new WorkTree(tmp.getRoot()).stat();
+        assertEquals(List.of("a/b", "c"), List.copyOf(stat.keySet()));
+        assertEquals(5, stat.get("a/b").size());
+        assertTrue(stat.get("c").isRegularFile());
+    }
+
+    @Test
+    public void deleteRemovesEmptiedDirectories() {
+        write("a/b/c", "c");
+        write("a/d", "d");
+        assertTrue(WorkTree.delete(tmp.getRoot(), "a/b/c"));
+        assertFalse(new File(tmp.getRoot(), "a/b").exists());
+        assertTrue(new File(tmp.getRoot(), "a/d").exists());
+        assertFalse(WorkTree.delete(tmp.getRoot(), "a"));
+        assertFalse(WorkTree.delete(tmp.getRoot(), "none"));
+    }
+}